@@ -1,53 +1,204 @@
 package filunderscore.improvedhordes;
 
-import java.io.DataInput;
-import java.net.Socket;
-
-import com.google.common.io.LittleEndianDataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import filunderscore.improvedhordes.alert.AlertRule;
 import filunderscore.improvedhordes.gui.ImprovedHordesFrame;
+import filunderscore.improvedhordes.headless.CaptureAnalyzer;
+import filunderscore.improvedhordes.gui.ReplayControls;
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.net.ViewerConnection;
+import filunderscore.improvedhordes.record.CaptureReader;
+import filunderscore.improvedhordes.record.SessionRecorder;
+import filunderscore.improvedhordes.replay.ReplaySession;
 import filunderscore.improvedhordes.util.Vector2i;
 import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
-import filunderscore.improvedhordes.world.ImprovedHordesSimulation.ConnectionStatus;
 
 public class Main 
 {
 	private static final Vector2i SIZE = new Vector2i(1000, 1000);
+	private static final InetSocketAddress DEFAULT_ADDRESS = new InetSocketAddress("127.0.0.1", 9000);
+	private static final DateTimeFormatter SESSION_NAME = DateTimeFormatter.ofPattern("'session-'yyyyMMdd-HHmmss");
 	
 	public static void main(String[] args) throws Exception
 	{
-		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation();
-		ImprovedHordesFrame frame = new ImprovedHordesFrame(SIZE, simulation);
+		Path recordDirectory = null;
+		Path replayDirectory = null;
+		Path headlessDirectory = null;
+		Path outputDirectory = null;
+		int imageSize = SIZE.x;
+		int imageStride = 1;
+		boolean latestWins = true;
+		boolean offerCompression = true;
+		int offerProtocols = 1 << Protocol.DELTA | 1 << Protocol.SECTIONED;
+		List<InetSocketAddress> addresses = new ArrayList<>();
+		List<AlertRule> alertRules = new ArrayList<>();
 		
-		simulation.setFrame(frame);
-
-		while(true)
+		for(int i = 0; i < args.length; i++)
+		{
+			switch(args[i])
+			{
+			case "--connect":
+				addresses.add(parseAddress(args[++i]));
+				break;
+			case "--record":
+				recordDirectory = Path.of(args[++i]);
+				break;
+			case "--replay":
+				replayDirectory = Path.of(args[++i]);
+				break;
+			case "--decode-all":
+				latestWins = false;
+				break;
+			case "--no-compression":
+				offerCompression = false;
+				break;
+			case "--legacy-protocol":
+				offerProtocols = 0;
+				break;
+			case "--headless":
+				headlessDirectory = Path.of(args[++i]);
+				break;
+			case "--out":
+				outputDirectory = Path.of(args[++i]);
+				break;
+			case "--image-size":
+				imageSize = Integer.parseInt(args[++i]);
+				break;
+			case "--every":
+				imageStride = Integer.parseInt(args[++i]);
+				break;
+			case "--alert":
+				alertRules.add(AlertRule.parse(args[++i]));
+				break;
+			default:
+				System.err.println("Unknown argument " + args[i]);
+				System.err.println("Usage: IHDebugViewer [--connect <host:port>]... [--record <directory>] [--decode-all] [--no-compression] [--legacy-protocol]");
+				System.err.println("                     [--alert <type|any>:<radius>[:<min clusters>[:<min density>]]]... | --replay <session directory> [--alert ...]...");
+				System.err.println("       IHDebugViewer --headless <session directory> [--out <directory>] [--image-size <pixels>] [--every <frames, 0 for none>]");
+				return;
+			}
+		}
+		
+		if(headlessDirectory != null)
+		{
+			analyze(headlessDirectory, outputDirectory != null ? outputDirectory : headlessDirectory.resolve("analysis"), imageSize, imageStride);
+			return;
+		}
+		
+		if(replayDirectory != null)
+		{
+			replay(replayDirectory, alertRules);
+			return;
+		}
+		
+		if(addresses.isEmpty())
+			addresses.add(DEFAULT_ADDRESS);
+		
+		Path sessionDirectory = recordDirectory != null ? recordDirectory.resolve(SESSION_NAME.format(LocalDateTime.now())) : null;
+		ImprovedHordesFrame frame = new ImprovedHordesFrame(SIZE);
+		List<Thread> connections = new ArrayList<>();
+		
+		for(InetSocketAddress address : addresses)
+		{
+			String name = address.getHostString() + ":" + address.getPort();
+			
+			// Each server records into its own directory once there is more than one.
+			SessionRecorder recorder = sessionDirectory != null ?
+					openRecorder(addresses.size() > 1 ? sessionDirectory.resolve(name.replace(':', '_')) : sessionDirectory) : null;
+			
+			ImprovedHordesSimulation simulation = new ImprovedHordesSimulation(name);
+			alertRules.forEach(simulation.getAlerts()::addRule);
+			simulation.getMetrics().register();
+			frame.addView(name, simulation);
+			
+			connections.add(new ViewerConnection(address, simulation, recorder, latestWins, offerCompression, offerProtocols).start());
+		}
+		
+		for(Thread connection : connections)
+		{
+			connection.join();
+		}
+	}
+	
+	private static InetSocketAddress parseAddress(String address)
+	{
+		int separator = address.lastIndexOf(':');
+		
+		if(separator < 0)
+			return new InetSocketAddress(address, DEFAULT_ADDRESS.getPort());
+		
+		return new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+	}
+	
+	private static void analyze(Path directory, Path output, int imageSize, int imageStride) throws IOException
+	{
+		System.setProperty("java.awt.headless", "true");
+		
+		try(CaptureReader capture = new CaptureReader(directory))
 		{
-			if(simulation.status != ConnectionStatus.RECONNECTING)
+			if(!Protocol.isSupported(capture.getProtocol()))
 			{
-				Thread.sleep(1000);
-				continue;
+				System.err.println("Unsupported capture protocol " + capture.getProtocol());
+				return;
 			}
 			
+			long start = System.nanoTime();
+			new CaptureAnalyzer(capture, output, imageSize, imageStride).run(ForkJoinPool.commonPool());
+			
+			System.out.println(String.format("Analyzed %d frames (%.1fs recorded) into %s in %.1fs", capture.getFrameCount(),
+					capture.getDuration() / 1e9, output, (System.nanoTime() - start) / 1e9));
+		}
+	}
+	
+	private static void replay(Path directory, List<AlertRule> alertRules) throws Exception
+	{
+		CaptureReader capture = new CaptureReader(directory);
+		
+		if(!Protocol.isSupported(capture.getProtocol()))
+		{
+			System.err.println("Unsupported capture protocol " + capture.getProtocol());
+			return;
+		}
+		
+		System.out.println("Replaying " + capture.getFrameCount() + " frames from " + directory);
+		
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation(directory.getFileName().toString());
+		alertRules.forEach(simulation.getAlerts()::addRule);
+		ImprovedHordesFrame frame = new ImprovedHordesFrame(SIZE);
+		ReplaySession session = new ReplaySession(capture, simulation);
+		
+		simulation.getMetrics().register();
+		frame.addView(simulation.getMetrics().getSource(), simulation).setReplayControls(new ReplayControls(session.getClock()));
+		
+		session.start().join();
+	}
+	
+	private static SessionRecorder openRecorder(Path directory) throws IOException
+	{
+		SessionRecorder recorder = new SessionRecorder(directory, SessionRecorder.DEFAULT_SEGMENT_SIZE, Protocol.LEGACY);
+		System.out.println("Recording to " + recorder.getDirectory());
+		
+		Runtime.getRuntime().addShutdownHook(new Thread(() ->
+		{
 			try
 			{
-				Socket socket = new Socket("127.0.0.1", 9000);
-				System.out.println("Connected");
-
-				simulation.status = ConnectionStatus.CONNECTED;
-				
-				DataInput in = new LittleEndianDataInputStream(socket.getInputStream());
-				
-				while(true)
-				{
-					simulation.read(in);
-				}
+				recorder.close();
 			}
-			catch(Exception e)
+			catch(IOException e)
 			{
-				simulation.status = ConnectionStatus.LOST_CONNECTION;
-				frame.update();
+				throw new UncheckedIOException(e);
 			}
-		}
+		}));
+		
+		return recorder;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package filunderscore.improvedhordes.alert;
+
+import java.util.Locale;
+
+/**
+ * A rule that currently holds for a player, as of the frame it was evaluated on.
+ */
+public final class Alert
+{
+	private final AlertRule rule;
+	private final int player;
+	private final float x, z;
+	private final int clusters;
+	private final float density;
+
+	Alert(AlertRule rule, int player, float x, float z, int clusters, float density)
+	{
+		this.rule = rule;
+		this.player = player;
+		this.x = x;
+		this.z = z;
+		this.clusters = clusters;
+		this.density = density;
+	}
+
+	public AlertRule getRule()
+	{
+		return this.rule;
+	}
+
+	/**
+	 * Index of the player in the frame. Players carry no id on the wire, so this is their position in the server's list.
+	 */
+	public int getPlayer()
+	{
+		return this.player;
+	}
+
+	public float getX()
+	{
+		return this.x;
+	}
+
+	public float getZ()
+	{
+		return this.z;
+	}
+
+	public int getClusters()
+	{
+		return this.clusters;
+	}
+
+	public float getDensity()
+	{
+		return this.density;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(Locale.ROOT, "player %d at (%.0f, %.0f): %d clusters, density %.1f [%s]", this.player, this.x, this.z, this.clusters, this.density, this.rule);
+	}
+}
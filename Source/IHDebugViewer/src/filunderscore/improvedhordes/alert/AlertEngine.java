@@ -0,0 +1,287 @@
+package filunderscore.improvedhordes.alert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import filunderscore.improvedhordes.util.IntList;
+import filunderscore.improvedhordes.world.SpatialQuery;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Evaluates standing {@link AlertRule}s against every player of each new world state, on the thread that decodes them.
+ * The clusters around a player are gathered once, out to the largest radius of any rule, and sorted by distance. One
+ * sweep outwards through them, keeping running totals per type, then answers every rule in order of radius, so the cost
+ * grows with the clusters near players rather than with the world or the number of rules. Only changes are reported:
+ * an alert is raised when its rule starts holding for a player and cleared when it stops.
+ */
+public final class AlertEngine
+{
+	private final String source;
+
+	private volatile AlertRule[] rules = new AlertRule[0];
+	private volatile List<Alert> active = Collections.emptyList();
+
+	private final SpatialQuery query = new SpatialQuery();
+	private final IntList candidates = new IntList();
+	// Squared distance bits in the high half and cluster in the low half, so sorting orders by distance.
+	private long[] sortedCandidates = new long[0];
+	private boolean[] typeMatches = new boolean[0];
+
+	private AlertRule[] sortedRulesFor;
+	private int[] rulesByRadius = new int[0];
+
+	private int[] typeClusters = new int[0];
+	private float[] typeDensities = new float[0];
+	private int[] ruleClusters = new int[0];
+	private float[] ruleDensities = new float[0];
+
+	// Whether each rule held for each player on the previous state, rule major.
+	private boolean[] held = new boolean[0];
+	private int heldPlayers;
+
+	private long lastSequence = -1;
+
+	public AlertEngine(String source)
+	{
+		this.source = source;
+	}
+
+	/**
+	 * Adds a rule, taking effect from the next state.
+	 */
+	public synchronized void addRule(AlertRule rule)
+	{
+		AlertRule[] rules = Arrays.copyOf(this.rules, this.rules.length + 1);
+		rules[rules.length - 1] = rule;
+
+		this.rules = rules;
+	}
+
+	public List<AlertRule> getRules()
+	{
+		return List.of(this.rules);
+	}
+
+	/**
+	 * Alerts that held on the last evaluated state. Safe to call from any thread.
+	 */
+	public List<Alert> getActive()
+	{
+		return this.active;
+	}
+
+	public void evaluate(WorldHordeState world)
+	{
+		AlertRule[] rules = this.rules;
+
+		if(rules.length == 0 || world.getSequence() == this.lastSequence)
+			return;
+
+		this.lastSequence = world.getSequence();
+
+		int players = world.getPlayerCount();
+		int types = world.getClusterTypeCount();
+
+		this.resolveTypes(world, rules, types);
+		this.resizeHeld(rules.length, players);
+		this.sortRules(rules);
+
+		float maxRadius = rules[this.rulesByRadius[rules.length - 1]].getRadius();
+
+		List<Alert> active = null;
+
+		for(int player = 0; player < players; player++)
+		{
+			float x = world.getPlayerX(player), z = world.getPlayerZ(player);
+
+			int candidates = this.gather(world, x, z, maxRadius);
+			this.sweep(world, rules, types, candidates);
+
+			for(int r = 0; r < rules.length; r++)
+			{
+				AlertRule rule = rules[r];
+
+				int clusters = this.ruleClusters[r];
+				float density = this.ruleDensities[r];
+
+				boolean holds = clusters >= rule.getMinClusters() && density >= rule.getMinDensity();
+				int slot = r * this.heldPlayers + player;
+
+				if(holds)
+				{
+					Alert alert = new Alert(rule, player, x, z, clusters, density);
+
+					if(active == null)
+						active = new ArrayList<>();
+
+					active.add(alert);
+
+					if(!this.held[slot])
+						this.log("raised", alert);
+				}
+				else if(this.held[slot])
+				{
+					this.log("cleared", new Alert(rule, player, x, z, clusters, density));
+				}
+
+				this.held[slot] = holds;
+			}
+		}
+
+		this.active = active != null ? Collections.unmodifiableList(active) : Collections.emptyList();
+	}
+
+	private int gather(WorldHordeState world, float x, float z, float radius)
+	{
+		this.candidates.clear();
+		this.query.clustersWithin(world, x, z, radius, this.candidates);
+
+		int count = this.candidates.size();
+
+		if(this.sortedCandidates.length < count)
+			this.sortedCandidates = new long[Math.max(count, this.sortedCandidates.length * 2)];
+
+		for(int c = 0; c < count; c++)
+		{
+			int cluster = this.candidates.get(c);
+
+			float dx = world.getClusterX(cluster) - x, dz = world.getClusterZ(cluster) - z;
+
+			// Non-negative floats order the same as their bits.
+			this.sortedCandidates[c] = (long)Float.floatToRawIntBits(dx * dx + dz * dz) << 32 | cluster;
+		}
+
+		Arrays.sort(this.sortedCandidates, 0, count);
+
+		return count;
+	}
+
+	/**
+	 * Walks the sorted candidates outwards, stopping at each rule's radius in turn to total the types it matches.
+	 */
+	private void sweep(WorldHordeState world, AlertRule[] rules, int types, int candidates)
+	{
+		if(this.typeClusters.length < types)
+		{
+			this.typeClusters = new int[types];
+			this.typeDensities = new float[types];
+		}
+
+		Arrays.fill(this.typeClusters, 0, types, 0);
+		Arrays.fill(this.typeDensities, 0, types, 0.0f);
+
+		int c = 0;
+
+		for(int r : this.rulesByRadius)
+		{
+			AlertRule rule = rules[r];
+			float radiusSquared = rule.getRadius() * rule.getRadius();
+
+			for(; c < candidates; c++)
+			{
+				long candidate = this.sortedCandidates[c];
+
+				if(Float.intBitsToFloat((int)(candidate >>> 32)) > radiusSquared)
+					break;
+
+				int cluster = (int)candidate;
+				int type = world.getClusterType(cluster);
+
+				this.typeClusters[type]++;
+				this.typeDensities[type] += world.getClusterDensity(cluster);
+			}
+
+			int clusters = 0;
+			float density = 0.0f;
+
+			for(int type = 0; type < types; type++)
+			{
+				if(this.typeMatches[r * types + type])
+				{
+					clusters += this.typeClusters[type];
+					density += this.typeDensities[type];
+				}
+			}
+
+			this.ruleClusters[r] = clusters;
+			this.ruleDensities[r] = density;
+		}
+	}
+
+	private void sortRules(AlertRule[] rules)
+	{
+		if(this.sortedRulesFor == rules)
+			return;
+
+		Integer[] order = new Integer[rules.length];
+
+		for(int r = 0; r < rules.length; r++)
+		{
+			order[r] = r;
+		}
+
+		Arrays.sort(order, (a, b) -> Float.compare(rules[a].getRadius(), rules[b].getRadius()));
+
+		this.rulesByRadius = new int[rules.length];
+
+		for(int r = 0; r < rules.length; r++)
+		{
+			this.rulesByRadius[r] = order[r];
+		}
+
+		this.ruleClusters = new int[rules.length];
+		this.ruleDensities = new float[rules.length];
+		this.sortedRulesFor = rules;
+	}
+
+	private void resolveTypes(WorldHordeState world, AlertRule[] rules, int types)
+	{
+		if(this.typeMatches.length < rules.length * types)
+			this.typeMatches = new boolean[rules.length * types];
+
+		for(int r = 0; r < rules.length; r++)
+		{
+			for(int type = 0; type < types; type++)
+			{
+				this.typeMatches[r * types + type] = rules[r].matchesType(world.getClusterTypeNameByOrdinal(type));
+			}
+		}
+	}
+
+	/**
+	 * Keeps the held flags of every rule and player that is still there. Players that left clear their alerts.
+	 */
+	private void resizeHeld(int rules, int players)
+	{
+		int oldRules = this.heldPlayers > 0 ? this.held.length / this.heldPlayers : 0;
+
+		if(oldRules == rules && this.heldPlayers == players)
+			return;
+
+		for(int r = 0; r < oldRules; r++)
+		{
+			for(int player = players; player < this.heldPlayers; player++)
+			{
+				if(this.held[r * this.heldPlayers + player])
+					System.out.println("[" + this.source + "] Alert cleared, player " + player + " left [" + this.rules[r] + "]");
+			}
+		}
+
+		boolean[] held = new boolean[rules * players];
+
+		for(int r = 0; r < Math.min(rules, oldRules); r++)
+		{
+			System.arraycopy(this.held, r * this.heldPlayers, held, r * players, Math.min(players, this.heldPlayers));
+		}
+
+		this.held = held;
+		this.heldPlayers = players;
+	}
+
+	private void log(String change, Alert alert)
+	{
+		System.out.println("[" + this.source + "] Alert " + change + ", " + alert);
+	}
+}
@@ -0,0 +1,84 @@
+package filunderscore.improvedhordes.alert;
+
+import java.util.Locale;
+
+/**
+ * A standing condition on the hordes around each player: at least {@code minClusters} clusters of a type, or of any
+ * type, within {@code radius} blocks, with at least {@code minDensity} density between them.
+ */
+public final class AlertRule
+{
+	public static final String ANY_TYPE = "any";
+
+	private final String clusterType;
+	private final float radius;
+	private final int minClusters;
+	private final float minDensity;
+
+	/**
+	 * @param clusterType horde type name, matched ignoring case, or null for any type.
+	 */
+	public AlertRule(String clusterType, float radius, int minClusters, float minDensity)
+	{
+		if(!(radius > 0) || minClusters < 1 || minDensity < 0)
+			throw new IllegalArgumentException("Alert rules need a positive radius, at least one cluster and a non-negative density.");
+
+		this.clusterType = clusterType;
+		this.radius = radius;
+		this.minClusters = minClusters;
+		this.minDensity = minDensity;
+	}
+
+	/**
+	 * Parses {@code <type|any>:<radius>[:<min clusters>[:<min density>]]}, such as {@code WanderingEnemyHorde:200}.
+	 */
+	public static AlertRule parse(String rule)
+	{
+		String[] parts = rule.split(":");
+
+		if(parts.length < 2 || parts.length > 4)
+			throw new IllegalArgumentException("Expected <type|any>:<radius>[:<min clusters>[:<min density>]] but got " + rule);
+
+		try
+		{
+			return new AlertRule(parts[0].equalsIgnoreCase(ANY_TYPE) ? null : parts[0], Float.parseFloat(parts[1]),
+					parts.length > 2 ? Integer.parseInt(parts[2]) : 1, parts.length > 3 ? Float.parseFloat(parts[3]) : 0.0f);
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Invalid number in alert rule " + rule, e);
+		}
+	}
+
+	public boolean matchesType(String clusterType)
+	{
+		return this.clusterType == null || this.clusterType.equalsIgnoreCase(clusterType);
+	}
+
+	public String getClusterType()
+	{
+		return this.clusterType;
+	}
+
+	public float getRadius()
+	{
+		return this.radius;
+	}
+
+	public int getMinClusters()
+	{
+		return this.minClusters;
+	}
+
+	public float getMinDensity()
+	{
+		return this.minDensity;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(Locale.ROOT, "%d+ %s within %.0f%s", this.minClusters, this.clusterType != null ? this.clusterType : "clusters",
+				this.radius, this.minDensity > 0 ? String.format(Locale.ROOT, ", density %.1f+", this.minDensity) : "");
+	}
+}
@@ -0,0 +1,71 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.util.List;
+
+import filunderscore.improvedhordes.alert.Alert;
+import filunderscore.improvedhordes.alert.AlertEngine;
+import filunderscore.improvedhordes.util.Vector2i;
+
+/**
+ * Rings every player an alert holds for with the alert's radius, and lists the active alerts in the bottom left corner.
+ */
+public final class AlertOverlay
+{
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+	private static final Color RING = new Color(255, 64, 64, 200);
+	private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+	private static final Color TEXT = new Color(255, 160, 160);
+	private static final int MAX_LINES = 10;
+	private static final int PADDING = 4;
+
+	public void draw(AlertEngine alerts, IHRenderer renderer, Graphics g)
+	{
+		List<Alert> active = alerts.getActive();
+
+		if(active.isEmpty())
+			return;
+
+		g.setColor(RING);
+
+		for(Alert alert : active)
+		{
+			int x = renderer.toScreenX(alert.getX());
+			int y = renderer.toScreenY(alert.getZ());
+			int width = renderer.scaleX(alert.getRule().getRadius());
+			int height = renderer.scaleY(alert.getRule().getRadius());
+
+			g.drawOval(x - width, y - height, width * 2, height * 2);
+		}
+
+		int lines = Math.min(MAX_LINES, active.size()) + (active.size() > MAX_LINES ? 1 : 0);
+
+		g.setFont(FONT);
+		FontMetrics metrics = g.getFontMetrics();
+
+		int lineHeight = metrics.getHeight();
+		int width = 0;
+
+		for(int i = 0; i < Math.min(MAX_LINES, active.size()); i++)
+		{
+			width = Math.max(width, metrics.stringWidth(active.get(i).toString()));
+		}
+
+		Vector2i panelSize = renderer.getPanelSize();
+		int top = panelSize.y - lines * lineHeight - 2 * PADDING;
+
+		g.setColor(BACKGROUND);
+		g.fillRect(0, top, width + 2 * PADDING, lines * lineHeight + 2 * PADDING);
+
+		g.setColor(TEXT);
+
+		for(int i = 0; i < lines; i++)
+		{
+			String line = i < MAX_LINES ? active.get(i).toString() : "+" + (active.size() - MAX_LINES) + " more";
+			g.drawString(line, PADDING, top + PADDING + i * lineHeight + metrics.getAscent());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import filunderscore.improvedhordes.util.Vector2i;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Off-screen copy of everything that does not change between frames: the border, axes, chunk grid and POI zones.
+ */
+public final class BackgroundLayer
+{
+	private BufferedImage image;
+	private Color background;
+	
+	private int rendererVersion;
+	private int worldWidth, worldHeight;
+	private int zoneCount;
+	private long zoneChecksum;
+	
+	public void draw(WorldHordeState world, IHRenderer renderer, Graphics g, Color background)
+	{
+		if(this.isStale(world, renderer, background))
+			this.rebuild(world, renderer, background);
+		
+		g.drawImage(this.image, 0, 0, null);
+	}
+	
+	private boolean isStale(WorldHordeState world, IHRenderer renderer, Color background)
+	{
+		Vector2i worldSize = world.GetWorldSize();
+		
+		return this.image == null || !background.equals(this.background) ||
+				this.rendererVersion != renderer.getVersion() ||
+				this.worldWidth != worldSize.x || this.worldHeight != worldSize.y ||
+				this.zoneCount != world.getZoneCount() || this.zoneChecksum != world.getZoneChecksum();
+	}
+	
+	private void rebuild(WorldHordeState world, IHRenderer renderer, Color background)
+	{
+		Vector2i panelSize = renderer.getPanelSize();
+		Vector2i worldSize = world.GetWorldSize();
+		
+		this.background = background;
+		this.rendererVersion = renderer.getVersion();
+		this.worldWidth = worldSize.x;
+		this.worldHeight = worldSize.y;
+		this.zoneCount = world.getZoneCount();
+		this.zoneChecksum = world.getZoneChecksum();
+		
+		// The border is drawn on the last row and column, so leave room for it.
+		int width = Math.max(1, panelSize.x + 1);
+		int height = Math.max(1, panelSize.y + 1);
+		
+		if(this.image == null || this.image.getWidth() != width || this.image.getHeight() != height)
+			this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		
+		Graphics2D g = this.image.createGraphics();
+		
+		try
+		{
+			g.setColor(this.background);
+			g.fillRect(0, 0, width, height);
+			
+			world.drawBackground(renderer, g);
+		}
+		finally
+		{
+			g.dispose();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import filunderscore.improvedhordes.util.IntList;
+import filunderscore.improvedhordes.util.Vector2i;
+import filunderscore.improvedhordes.world.ClusterSnapshot;
+import filunderscore.improvedhordes.world.SpatialGrid;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Level of detail for clusters once their markers shrink below a few pixels. Clusters are binned into
+ * fixed screen-space cells, and each occupied cell is drawn once as a heat cell. The cell is split into
+ * one band per horde type, sized by that type's share of the cell's density, with its opacity scaled by
+ * the cell's summed density and its cluster count drawn on top.
+ */
+public final class ClusterAggregateLayer
+{
+	public static final int DEFAULT_MIN_MARKER_PIXELS = Integer.getInteger("ihdebugviewer.lodMarkerPixels", 6);
+
+	private static final int CELL_SIZE = 24;
+	private static final int ALPHA_LEVELS = 16;
+	private static final int MAX_COUNT_LABEL = 999;
+	private static final Font COUNT_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+
+	private static final String[] COUNT_LABELS = new String[MAX_COUNT_LABEL + 2];
+
+	private final int minMarkerPixels;
+
+	private int columns, rows, types;
+	private int[] typeCounts = new int[0];
+	private float[] typeDensities = new float[0];
+	private int[] cellCounts = new int[0];
+	private float[] cellDensities = new float[0];
+	private final IntList occupied = new IntList();
+
+	private Color[][] typeRamps = new Color[0][];
+	private final Map<Color, Color[]> ramps = new HashMap<>();
+
+	public ClusterAggregateLayer(int minMarkerPixels)
+	{
+		this.minMarkerPixels = minMarkerPixels;
+	}
+
+	public boolean isActive(IHRenderer renderer)
+	{
+		return renderer.scaleX(ClusterSnapshot.MARKER_SIZE) < this.minMarkerPixels;
+	}
+
+	public void draw(WorldHordeState world, IHRenderer renderer, Graphics g)
+	{
+		Vector2i panelSize = renderer.getPanelSize();
+
+		this.reset(panelSize, Math.max(1, world.getClusterTypeCount()));
+		this.resolveColors(world);
+
+		float maxDensity = this.bin(world, renderer, panelSize);
+
+		if(this.occupied.size() == 0)
+			return;
+
+		float maxLevel = (float)Math.log1p(maxDensity);
+
+		g.setFont(COUNT_FONT);
+		FontMetrics metrics = g.getFontMetrics();
+
+		for(int i = 0; i < this.occupied.size(); i++)
+		{
+			int cell = this.occupied.get(i);
+			int x = (cell % this.columns) * CELL_SIZE;
+			int y = (cell / this.columns) * CELL_SIZE;
+
+			int count = this.cellCounts[cell];
+			float density = this.cellDensities[cell];
+
+			int level = maxLevel > 0 ? (int)((ALPHA_LEVELS - 1) * Math.log1p(density) / maxLevel) : ALPHA_LEVELS - 1;
+			int offset = 0;
+
+			for(int type = 0; type < this.types; type++)
+			{
+				int slot = cell * this.types + type;
+
+				if(this.typeCounts[slot] == 0)
+					continue;
+
+				float share = density > 0 ? this.typeDensities[slot] / density : this.typeCounts[slot] / (float)count;
+				int height = Math.max(1, Math.round(share * CELL_SIZE));
+
+				g.setColor(this.typeRamps[type][level]);
+				g.fillRect(x, y + offset, CELL_SIZE - 1, Math.min(height, CELL_SIZE - 1 - offset));
+
+				offset += height;
+			}
+
+			if(count > 1)
+			{
+				String label = getCountLabel(count);
+
+				g.setColor(Color.white);
+				g.drawString(label, x + (CELL_SIZE - metrics.stringWidth(label)) / 2, y + (CELL_SIZE + metrics.getAscent()) / 2 - 1);
+			}
+		}
+	}
+
+	private void reset(Vector2i panelSize, int types)
+	{
+		this.columns = panelSize.x / CELL_SIZE + 1;
+		this.rows = panelSize.y / CELL_SIZE + 1;
+		this.types = types;
+
+		int cells = this.columns * this.rows;
+
+		if(this.cellCounts.length < cells)
+		{
+			this.cellCounts = new int[cells];
+			this.cellDensities = new float[cells];
+		}
+		else
+		{
+			Arrays.fill(this.cellCounts, 0, cells, 0);
+			Arrays.fill(this.cellDensities, 0, cells, 0.0f);
+		}
+
+		if(this.typeCounts.length < cells * types)
+		{
+			this.typeCounts = new int[cells * types];
+			this.typeDensities = new float[cells * types];
+		}
+		else
+		{
+			Arrays.fill(this.typeCounts, 0, cells * types, 0);
+			Arrays.fill(this.typeDensities, 0, cells * types, 0.0f);
+		}
+
+		this.occupied.clear();
+	}
+
+	private void resolveColors(WorldHordeState world)
+	{
+		if(this.typeRamps.length < this.types)
+			this.typeRamps = new Color[this.types][];
+
+		for(int type = 0; type < world.getClusterTypeCount(); type++)
+		{
+			this.typeRamps[type] = this.ramps.computeIfAbsent(world.getClusterTypeStyle(type).getColor(), ClusterAggregateLayer::createRamp);
+		}
+	}
+
+	private float bin(WorldHordeState world, IHRenderer renderer, Vector2i panelSize)
+	{
+		SpatialGrid clusterIndex = world.getClusterIndex();
+		int minColumn = clusterIndex.getColumn(renderer.getViewMinX()), maxColumn = clusterIndex.getColumn(renderer.getViewMaxX());
+		int minRow = clusterIndex.getRow(renderer.getViewMinZ()), maxRow = clusterIndex.getRow(renderer.getViewMaxZ());
+
+		float maxDensity = 0.0f;
+
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			int end = clusterIndex.getCellEnd(maxColumn, row);
+
+			for(int i = clusterIndex.getCellStart(minColumn, row); i < end; i++)
+			{
+				int cluster = clusterIndex.getEntry(i);
+
+				int x = renderer.toScreenX(world.getClusterX(cluster));
+				int y = renderer.toScreenY(world.getClusterZ(cluster));
+
+				if(x < 0 || y < 0 || x > panelSize.x || y > panelSize.y)
+					continue;
+
+				int cell = (y / CELL_SIZE) * this.columns + x / CELL_SIZE;
+				int slot = cell * this.types + world.getClusterType(cluster);
+				float density = world.getClusterDensity(cluster);
+
+				if(this.cellCounts[cell]++ == 0)
+					this.occupied.add(cell);
+
+				this.typeCounts[slot]++;
+				this.typeDensities[slot] += density;
+
+				maxDensity = Math.max(maxDensity, this.cellDensities[cell] += density);
+			}
+		}
+
+		return maxDensity;
+	}
+
+	private static Color[] createRamp(Color color)
+	{
+		Color[] ramp = new Color[ALPHA_LEVELS];
+
+		for(int level = 0; level < ALPHA_LEVELS; level++)
+		{
+			ramp[level] = new Color(color.getRed(), color.getGreen(), color.getBlue(), 64 + (191 * level) / (ALPHA_LEVELS - 1));
+		}
+
+		return ramp;
+	}
+
+	private static String getCountLabel(int count)
+	{
+		int slot = Math.min(count, MAX_COUNT_LABEL + 1);
+		String label = COUNT_LABELS[slot];
+
+		if(label == null)
+			label = COUNT_LABELS[slot] = count > MAX_COUNT_LABEL ? MAX_COUNT_LABEL + "+" : Integer.toString(count);
+
+		return label;
+	}
+}
@@ -0,0 +1,21 @@
+package filunderscore.improvedhordes.gui;
+
+import filunderscore.improvedhordes.world.ClusterSnapshot;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+public final class ClusterListModel extends WorldListModel<ClusterSnapshot>
+{
+	private static final long serialVersionUID = 3410936752271806512L;
+	
+	@Override
+	protected int getSize(WorldHordeState world)
+	{
+		return world.getClusterCount();
+	}
+	
+	@Override
+	protected ClusterSnapshot createElement(WorldHordeState world, int index)
+	{
+		return new ClusterSnapshot(world, index);
+	}
+}
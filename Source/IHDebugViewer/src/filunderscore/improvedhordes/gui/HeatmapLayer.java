@@ -0,0 +1,144 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import filunderscore.improvedhordes.world.DensityHeatmap;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Draws a {@link DensityHeatmap} as a colour-mapped overlay, one pixel per heatmap cell, stretched over the world.
+ * Pixels are written straight into the image's backing array: only cells an update touched are recoloured, and the
+ * whole image only when the heatmap's scale changes or its peak outgrows the one the colours were mapped against.
+ */
+public final class HeatmapLayer
+{
+	public static final boolean DEFAULT_VISIBLE = Boolean.getBoolean("ihdebugviewer.heatmap");
+
+	private static final int LEVELS = 256;
+	private static final float DYNAMIC_RANGE_DECADES = 3.0f;
+	private static final float PEAK_HEADROOM = 1.5f;
+
+	private static final int[] PALETTE = createPalette();
+
+	private final DensityHeatmap heatmap;
+	private final DensityHeatmap.Snapshot snapshot = new DensityHeatmap.Snapshot();
+
+	private BufferedImage image;
+	private int[] pixels;
+	private float peak;
+
+	private boolean visible = DEFAULT_VISIBLE;
+
+	/**
+	 * @param heatmap a heatmap fed by the decoding thread, so turning this on shows everything since the session started.
+	 */
+	public HeatmapLayer(DensityHeatmap heatmap)
+	{
+		this.heatmap = heatmap;
+	}
+
+	public boolean isVisible()
+	{
+		return this.visible;
+	}
+
+	public void toggle()
+	{
+		this.visible = !this.visible;
+	}
+
+	/**
+	 * Recolours the cells the heatmap added to since the last call. Cells keep collecting changes while this is hidden,
+	 * so nothing is missed once it is shown again.
+	 */
+	public void update()
+	{
+		if(!this.visible)
+			return;
+
+		this.heatmap.copyTo(this.snapshot);
+
+		int columns = this.snapshot.getColumns(), rows = this.snapshot.getRows();
+		boolean full = this.snapshot.isFull();
+
+		if(this.image == null || this.image.getWidth() != columns || this.image.getHeight() != rows)
+		{
+			this.image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB);
+
+			// Taking the backing array keeps the image from being cached in video memory, which would go stale on every write.
+			this.pixels = ((DataBufferInt)this.image.getRaster().getDataBuffer()).getData();
+			full = true;
+		}
+
+		float max = this.snapshot.getRawMaxValue();
+
+		if(full || max > this.peak)
+		{
+			this.peak = max * PEAK_HEADROOM;
+
+			for(int cell = 0; cell < columns * rows; cell++)
+			{
+				this.recolor(cell, columns, rows);
+			}
+		}
+		else
+		{
+			for(int i = 0; i < this.snapshot.getChangedCount(); i++)
+			{
+				this.recolor(this.snapshot.getChangedCell(i), columns, rows);
+			}
+		}
+	}
+
+	private void recolor(int cell, int columns, int rows)
+	{
+		float value = this.snapshot.getRawValue(cell);
+		int color = 0;
+
+		if(value > 0.0f)
+		{
+			float level = 1.0f + (float)Math.log10(value / this.peak) / DYNAMIC_RANGE_DECADES;
+			color = PALETTE[Math.max(1, Math.min(LEVELS - 1, (int)(level * (LEVELS - 1))))];
+		}
+
+		// Heatmap rows run northwards, image rows southwards.
+		this.pixels[(rows - 1 - cell / columns) * columns + cell % columns] = color;
+	}
+
+	public void draw(WorldHordeState world, IHRenderer renderer, Graphics g)
+	{
+		if(!this.visible || this.image == null || this.snapshot.getMaxValue() <= 0.0f)
+			return;
+
+		float width = this.snapshot.getColumns() * this.snapshot.getCellSize();
+		float height = this.snapshot.getRows() * this.snapshot.getCellSize();
+		float minX = -(world.GetWorldSize().x / 2), minZ = -(world.GetWorldSize().y / 2);
+
+		g.drawImage(this.image, renderer.toScreenX(minX), renderer.toScreenY(minZ + height), renderer.toScreenX(minX + width), renderer.toScreenY(minZ),
+				0, 0, this.image.getWidth(), this.image.getHeight(), null);
+	}
+
+	/**
+	 * Translucent blue for cells hordes barely passed through, through red, to opaque yellow for where they stay.
+	 */
+	private static int[] createPalette()
+	{
+		int[] palette = new int[LEVELS];
+
+		for(int level = 1; level < LEVELS; level++)
+		{
+			float t = level / (float)(LEVELS - 1);
+
+			int red = (int)(255 * Math.min(1.0f, t * 2.0f));
+			int green = (int)(255 * Math.max(0.0f, t * 2.0f - 1.0f));
+			int blue = (int)(255 * Math.max(0.0f, 1.0f - t * 2.0f));
+			int alpha = 48 + (int)(160 * t);
+
+			palette[level] = alpha << 24 | red << 16 | green << 8 | blue;
+		}
+
+		return palette;
+	}
+}
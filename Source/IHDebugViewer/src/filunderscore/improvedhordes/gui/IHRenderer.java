@@ -1,111 +1,181 @@
 package filunderscore.improvedhordes.gui;
 
 import filunderscore.improvedhordes.util.Vector2i;
-import filunderscore.improvedhordes.util.Vector3;
 
-public class IHRenderer 
+public class IHRenderer
 {
-	private Vector2i worldSize;
+	public static final float MAX_ZOOM = 64.0f;
+
 	private Vector2i panelSize;
-	
+
+	private int worldWidth, worldHeight;
+	private int panelWidth, panelHeight;
+
+	private float zoom = 1.0f;
+	private float centerX, centerZ;
+
+	private float minWorldX, minWorldZ;
+	private float viewMinX, viewMinZ;
+	private float viewWidth, viewHeight;
+	private float scaleX, scaleY;
+
+	private int version;
+
 	public IHRenderer()
 	{
 	}
-	
+
 	public void setSizes(Vector2i worldSize, Vector2i panelSize)
 	{
-		this.worldSize = worldSize;
 		this.panelSize = panelSize;
+
+		if(this.worldWidth == worldSize.x && this.worldHeight == worldSize.y && this.panelWidth == panelSize.x && this.panelHeight == panelSize.y)
+			return;
+
+		this.worldWidth = worldSize.x;
+		this.worldHeight = worldSize.y;
+		this.panelWidth = panelSize.x;
+		this.panelHeight = panelSize.y;
+
+		this.updateView();
 	}
-	
-	public Vector2i rescaleBlocksToScreen(int blocks)
-	{
-		return worldToScreen(new Vector2i(blocks, blocks), false);
-	}
-	
-	public Vector2i worldToScreen(Vector2i absoluteWorldPos, boolean flip)
-	{
-		int localX = (int)((absoluteWorldPos.x / (float)this.worldSize.x) * panelSize.x);
-		int localY = (int)((absoluteWorldPos.y / (float)this.worldSize.y) * panelSize.y);
-		
-		if(flip)
-			localY = panelSize.y - localY;
-		
-		return new Vector2i(localX, localY);
-	}
-	
-	private Vector2i worldToAbsoluteWorld(Vector2i worldPos)
-	{
-		int maxWW = (this.worldSize.x / 2);
-		int maxWH = (this.worldSize.y / 2);
-		
-		worldPos.x += maxWW;
-		worldPos.y += maxWH;
-		
-		worldPos.x = Math.max(0, worldPos.x);
-		worldPos.y = Math.max(0, worldPos.y);
-		
-		return worldPos;
-	}
-	
-	private Vector2i worldToScreen(Vector3 pos)
-	{
-		return worldToScreen(new Vector2i((int)pos.x, (int)pos.z), true);
-	}
-	
-	public ScaledVector rescale(Vector2i pos, Vector2i markerSize)
-	{
-		pos = worldToAbsoluteWorld(pos.clone());
-		pos = worldToScreen(pos.clone(), true);
-		
-		markerSize = worldToScreen(markerSize.clone(), false);
-		
-		return new ScaledVector(pos, markerSize);
-	}
-	
-	public static class ScaledVector
-	{
-		public Vector2i scaledPosition;
-		public Vector2i scaledSize;
-		
-		public ScaledVector(Vector2i scaledPosition, Vector2i scaledSize)
-		{
-			this.scaledPosition = scaledPosition;
-			this.scaledSize = scaledSize;
-		}
-		
-		public boolean inView()
-		{
-			return true;
-		}
+
+	public void zoomAt(int screenX, int screenY, float factor)
+	{
+		float worldX = this.screenToWorldX(screenX);
+		float worldZ = this.screenToWorldZ(screenY);
+
+		this.zoom = Math.max(1.0f, Math.min(MAX_ZOOM, this.zoom * factor));
+
+		// Keep the world position under the cursor fixed.
+		float scaleX = this.panelWidth / (float)this.worldWidth * this.zoom;
+		float scaleY = this.panelHeight / (float)this.worldHeight * this.zoom;
+
+		this.centerX = worldX - screenX / scaleX + this.worldWidth / 2 / this.zoom;
+		this.centerZ = worldZ - (this.panelHeight - screenY) / scaleY + this.worldHeight / 2 / this.zoom;
+
+		this.updateView();
 	}
-	
-	private class Rect
+
+	public void pan(int screenDeltaX, int screenDeltaY)
 	{
-		private Vector2i bottomLeft, topRight;
-		
-		public Rect(Vector2i bottomLeft, Vector2i topRight)
-		{
-			this.bottomLeft = bottomLeft;
-			this.topRight = topRight;
-		}
-		
-		public boolean inRect(Vector2i pos)
+		this.centerX -= screenDeltaX / this.scaleX;
+		this.centerZ += screenDeltaY / this.scaleY;
+
+		this.updateView();
+	}
+
+	public void resetView()
+	{
+		this.zoom = 1.0f;
+		this.centerX = 0.0f;
+		this.centerZ = 0.0f;
+
+		this.updateView();
+	}
+
+	private void updateView()
+	{
+		this.minWorldX = -(this.worldWidth / 2);
+		this.minWorldZ = -(this.worldHeight / 2);
+
+		this.viewWidth = this.worldWidth / this.zoom;
+		this.viewHeight = this.worldHeight / this.zoom;
+
+		float maxCenterX = (this.worldWidth - this.viewWidth) / 2;
+		float maxCenterZ = (this.worldHeight - this.viewHeight) / 2;
+
+		this.centerX = Math.max(-maxCenterX, Math.min(maxCenterX, this.centerX));
+		this.centerZ = Math.max(-maxCenterZ, Math.min(maxCenterZ, this.centerZ));
+
+		this.viewMinX = this.centerX - this.viewWidth / 2;
+		this.viewMinZ = this.centerZ - this.viewHeight / 2;
+
+		this.scaleX = this.panelWidth / this.viewWidth;
+		this.scaleY = this.panelHeight / this.viewHeight;
+
+		this.version++;
+	}
+
+	public int toScreenX(float worldX)
+	{
+		return (int)((Math.max(this.minWorldX, worldX) - this.viewMinX) * this.scaleX);
+	}
+
+	public int toScreenY(float worldZ)
+	{
+		return this.panelHeight - (int)((Math.max(this.minWorldZ, worldZ) - this.viewMinZ) * this.scaleY);
+	}
+
+	public int scaleX(float blocks)
+	{
+		return (int)(blocks * this.scaleX);
+	}
+
+	public int scaleY(float blocks)
+	{
+		return (int)(blocks * this.scaleY);
+	}
+
+	public void transform(float[] worldX, float[] worldZ, int count, int[] screenX, int[] screenY)
+	{
+		float minWorldX = this.minWorldX, minWorldZ = this.minWorldZ;
+		float viewMinX = this.viewMinX, viewMinZ = this.viewMinZ;
+		float scaleX = this.scaleX, scaleY = this.scaleY;
+		int panelHeight = this.panelHeight;
+
+		for(int i = 0; i < count; i++)
 		{
-			return pos.x >= this.bottomLeft.x && pos.x <= this.topRight.x && pos.y >= this.bottomLeft.y && pos.y <= this.topRight.y;
+			screenX[i] = (int)((Math.max(minWorldX, worldX[i]) - viewMinX) * scaleX);
+			screenY[i] = panelHeight - (int)((Math.max(minWorldZ, worldZ[i]) - viewMinZ) * scaleY);
 		}
 	}
-	
-	private Vector2i screenToWorld(Vector2i screenPos)
+
+	public float screenToWorldX(int screenX)
+	{
+		return this.viewMinX + screenX / this.scaleX;
+	}
+
+	public float screenToWorldZ(int screenY)
+	{
+		return this.viewMinZ + (this.panelHeight - screenY) / this.scaleY;
+	}
+
+	public float getViewMinX()
+	{
+		return this.viewMinX;
+	}
+
+	public float getViewMinZ()
 	{
-		int localX = (int)(((float)screenPos.x / panelSize.x) * this.worldSize.x);
-		int localY = (int)(((float)screenPos.y / panelSize.y) * this.worldSize.y);
-		
-		return new Vector2i(localX, this.worldSize.y - localY);
+		return this.viewMinZ;
 	}
-	
+
+	public float getViewMaxX()
+	{
+		return this.viewMinX + this.viewWidth;
+	}
+
+	public float getViewMaxZ()
+	{
+		return this.viewMinZ + this.viewHeight;
+	}
+
+	public float getZoom()
+	{
+		return this.zoom;
+	}
+
+	/**
+	 * Incremented whenever the sizes or the view change, so cached renders can tell when they are stale.
+	 */
+	public int getVersion()
+	{
+		return this.version;
+	}
+
 	public Vector2i getPanelSize()
 	{
 		return this.panelSize;
 	}
-}
\ No newline at end of file
+}
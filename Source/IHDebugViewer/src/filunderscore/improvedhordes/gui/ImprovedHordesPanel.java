@@ -2,22 +2,43 @@ package filunderscore.improvedhordes.gui;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
+import java.awt.event.ActionEvent;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.concurrent.ForkJoinPool;
 
+import javax.swing.AbstractAction;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 
+import filunderscore.improvedhordes.metrics.PaintEvent;
 import filunderscore.improvedhordes.util.Vector2i;
-import filunderscore.improvedhordes.util.Vector3;
+import filunderscore.improvedhordes.world.HordeTracker;
 import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
 import filunderscore.improvedhordes.world.ImprovedHordesSimulation.ConnectionStatus;
+import filunderscore.improvedhordes.world.WorldHordeState;
 
-public class ImprovedHordesPanel extends JPanel// implements MouseWheelListener
+public class ImprovedHordesPanel extends JPanel
 {
+	private static final float ZOOM_STEP = 1.25f;
+	
 	private ImprovedHordesSimulation simulation;
+	private WorldHordeState world;
 	
     private Vector2i size;
     private IHRenderer renderer;
+    private RenderScheduler scheduler;
+    private BackgroundLayer backgroundLayer;
+    private ClusterAggregateLayer clusterAggregateLayer;
+    private MetricsOverlay metricsOverlay;
+    private TrailLayer trailLayer;
+    private HeatmapLayer heatmapLayer;
+    private RasterEntityLayer rasterEntityLayer;
+    private AlertOverlay alertOverlay;
+    private ProbeOverlay probeOverlay;
     
 	public ImprovedHordesPanel(ImprovedHordesSimulation simulation, Vector2i panelSize)
 	{
@@ -25,26 +46,174 @@ public class ImprovedHordesPanel extends JPanel// implements MouseWheelListener
 		
 		this.simulation = simulation;
 		this.renderer = new IHRenderer();
+		this.scheduler = new RenderScheduler(this, RenderScheduler.DEFAULT_MAX_FPS);
+		this.backgroundLayer = new BackgroundLayer();
+		this.clusterAggregateLayer = new ClusterAggregateLayer(ClusterAggregateLayer.DEFAULT_MIN_MARKER_PIXELS);
+		this.metricsOverlay = new MetricsOverlay();
+		this.trailLayer = new TrailLayer(new HordeTracker(HordeTracker.DEFAULT_TRAIL_LENGTH, HordeTracker.DEFAULT_MAX_SPEED));
+		this.heatmapLayer = new HeatmapLayer(simulation.getHeatmap());
+		this.rasterEntityLayer = new RasterEntityLayer(ForkJoinPool.commonPool());
+		this.alertOverlay = new AlertOverlay();
+		this.probeOverlay = new ProbeOverlay();
 		this.setSize(panelSize);
 		this.setFocusable(true);
+		
+		// Trails stop while the panel is not painted, as behind another tab, so start them over once it is hidden.
+		this.addHierarchyListener(e ->
+		{
+			if((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && !this.isShowing())
+				this.trailLayer.reset();
+		});
+		
+		ViewController controller = new ViewController();
+		this.addMouseListener(controller);
+		this.addMouseMotionListener(controller);
+		this.addMouseWheelListener(controller);
+		
+		this.getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('h'), "toggleHud");
+		this.getActionMap().put("toggleHud", new AbstractAction()
+		{
+			private static final long serialVersionUID = 2795316734089512617L;
+			
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				metricsOverlay.toggle();
+				requestRender();
+			}
+		});
+		
+		this.getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('t'), "toggleTrails");
+		this.getActionMap().put("toggleTrails", new AbstractAction()
+		{
+			private static final long serialVersionUID = -4390628374626815071L;
+			
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				trailLayer.toggle();
+				requestRender();
+			}
+		});
+		
+		this.getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('m'), "toggleHeatmap");
+		this.getActionMap().put("toggleHeatmap", new AbstractAction()
+		{
+			private static final long serialVersionUID = 6120853997412765038L;
+			
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				heatmapLayer.toggle();
+				requestRender();
+			}
+		});
+		
+		this.getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('r'), "toggleRaster");
+		this.getActionMap().put("toggleRaster", new AbstractAction()
+		{
+			private static final long serialVersionUID = -1873309528466072940L;
+			
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				rasterEntityLayer.toggle();
+				requestRender();
+			}
+		});
+		
+		this.getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("ESCAPE"), "clearProbe");
+		this.getActionMap().put("clearProbe", new AbstractAction()
+		{
+			private static final long serialVersionUID = 4418093365207712539L;
+			
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				probeOverlay.clear();
+				requestRender();
+			}
+		});
 	}
 	
 	public void setSize(Vector2i panelSize)
 	{
 		this.size = panelSize;
 		this.setSize(this.size.x, this.size.y);
-		
-		if(this.simulation.world != null)
-			this.renderer.setSizes(this.simulation.world.GetWorldSize(), panelSize);
+		this.requestRender();
+	}
+	
+	public void requestRender()
+	{
+		this.scheduler.requestRender();
+	}
+	
+	/**
+	 * Sets the state to paint, which must be the one the view last acquired so the exchange never hands it back to the writer.
+	 */
+	public void setWorld(WorldHordeState world)
+	{
+		this.world = world;
 	}
 	
 	public void paintComponent(Graphics g)
 	{
 		super.paintComponent(g);
 		
-		if(simulation.world != null && simulation.status == ConnectionStatus.CONNECTED)
+		PaintEvent event = new PaintEvent();
+		event.begin();
+		
+		long start = System.nanoTime();
+		
+		WorldHordeState world = this.world;
+		ConnectionStatus status = simulation.getStatus();
+		
+		if(world != null && (status == ConnectionStatus.CONNECTED || status == ConnectionStatus.REPLAYING))
 		{
-			simulation.world.draw(this.renderer, g);
+			this.renderer.setSizes(world.GetWorldSize(), this.size);
+			this.backgroundLayer.draw(world, this.renderer, g, this.getBackground());
+			
+			this.heatmapLayer.update();
+			this.heatmapLayer.draw(world, this.renderer, g);
+			
+			boolean aggregated = this.clusterAggregateLayer.isActive(this.renderer);
+			
+			// Keep tracking while zoomed out, so trails are whole again once they are drawn.
+			this.trailLayer.update(world);
+			
+			if(aggregated)
+				this.clusterAggregateLayer.draw(world, this.renderer, g);
+			else
+				this.trailLayer.draw(world, this.renderer, g);
+			
+			if(this.rasterEntityLayer.isEnabled())
+			{
+				this.rasterEntityLayer.draw(world, this.renderer, g, !aggregated);
+			}
+			else
+			{
+				if(!aggregated)
+					world.drawClusters(this.renderer, g);
+				
+				world.drawPlayers(this.renderer, g);
+			}
+			
+			this.alertOverlay.draw(simulation.getAlerts(), this.renderer, g);
+			this.probeOverlay.draw(world, this.renderer, g);
+			
+			simulation.getMetrics().recordPaint(System.nanoTime() - start);
+			event.end();
+			
+			if(event.shouldCommit())
+			{
+				event.source = simulation.getMetrics().getSource();
+				event.sequence = world.getSequence();
+				event.aggregated = aggregated;
+				event.raster = this.rasterEntityLayer.isEnabled();
+				event.commit();
+			}
+			
+			this.metricsOverlay.draw(simulation.getMetrics(), g);
 		}
 		else
 		{			
@@ -52,7 +221,7 @@ public class ImprovedHordesPanel extends JPanel// implements MouseWheelListener
 			
 			String message = "";
 			
-			switch(simulation.status)
+			switch(status)
 			{
 			case CONNECTED:
 				message = "World has not been loaded yet.";
@@ -66,12 +235,101 @@ public class ImprovedHordesPanel extends JPanel// implements MouseWheelListener
 			case RECONNECTING:
 				message = "Reconnecting.";
 				break;
+			case REPLAYING:
+				message = "Capture has no frames to replay.";
+				break;
 			}
 			
 			int width = g.getFontMetrics().stringWidth(message);
 			g.drawString(message, (size.x - width) / 2, size.y / 2);
+			
+			this.metricsOverlay.draw(simulation.getMetrics(), g);
+		}
+	}
+	
+	private class ViewController extends MouseAdapter
+	{
+		private int lastX, lastY;
+		
+		// Shift dragging marks out a box to query instead of panning.
+		private boolean boxing;
+		private float boxX, boxZ;
+		
+		private boolean hasView()
+		{
+			return renderer.getPanelSize() != null;
+		}
+		
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e)
+		{
+			if(!hasView())
+				return;
+			
+			renderer.zoomAt(e.getX(), e.getY(), (float)Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()));
+			requestRender();
+		}
+		
+		@Override
+		public void mousePressed(MouseEvent e)
+		{
+			this.lastX = e.getX();
+			this.lastY = e.getY();
+			this.boxing = e.isShiftDown() && SwingUtilities.isLeftMouseButton(e) && hasView();
+			
+			if(this.boxing)
+			{
+				this.boxX = renderer.screenToWorldX(e.getX());
+				this.boxZ = renderer.screenToWorldZ(e.getY());
+			}
+		}
+		
+		@Override
+		public void mouseReleased(MouseEvent e)
+		{
+			this.boxing = false;
+		}
+		
+		@Override
+		public void mouseDragged(MouseEvent e)
+		{
+			if(!hasView())
+				return;
+			
+			if(this.boxing)
+			{
+				probeOverlay.setBox(this.boxX, this.boxZ, renderer.screenToWorldX(e.getX()), renderer.screenToWorldZ(e.getY()));
+				requestRender();
+				return;
+			}
+			
+			renderer.pan(e.getX() - this.lastX, e.getY() - this.lastY);
+			
+			this.lastX = e.getX();
+			this.lastY = e.getY();
+			
+			requestRender();
+		}
+		
+		@Override
+		public void mouseClicked(MouseEvent e)
+		{
+			if(!hasView())
+				return;
+			
+			// Right clicking asks what is around that point, until escape is pressed.
+			if(SwingUtilities.isRightMouseButton(e))
+			{
+				probeOverlay.setPoint(renderer.screenToWorldX(e.getX()), renderer.screenToWorldZ(e.getY()));
+				requestRender();
+				return;
+			}
+			
+			if(e.getClickCount() != 2)
+				return;
+			
+			renderer.resetView();
+			requestRender();
 		}
-
-		this.repaint();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.util.Locale;
+
+import filunderscore.improvedhordes.metrics.ViewerMetrics;
+
+/**
+ * Heads-up display of the viewer's own ingest and paint metrics, drawn in the top left corner of the panel.
+ */
+public final class MetricsOverlay
+{
+	public static final boolean DEFAULT_VISIBLE = Boolean.getBoolean("ihdebugviewer.hud");
+	
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+	private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+	private static final int PADDING = 4;
+	
+	private boolean visible = DEFAULT_VISIBLE;
+	
+	public boolean isVisible()
+	{
+		return this.visible;
+	}
+	
+	public void toggle()
+	{
+		this.visible = !this.visible;
+	}
+	
+	public void draw(ViewerMetrics metrics, Graphics g)
+	{
+		if(!this.visible)
+			return;
+		
+		String[] lines = {
+				String.format(Locale.ROOT, "ingest  %6.1f fps %8.2f MiB/s", metrics.getFramesPerSecond(), metrics.getBytesPerSecond() / (1024 * 1024)),
+				String.format(Locale.ROOT, "decode  p50 %7.2f ms  p99 %7.2f ms", metrics.getDecodeMillisP50(), metrics.getDecodeMillisP99()),
+				String.format(Locale.ROOT, "paint   p50 %7.2f ms  p99 %7.2f ms", metrics.getPaintMillisP50(), metrics.getPaintMillisP99()),
+				String.format(Locale.ROOT, "lists   p99 %7.2f ms", metrics.getListUpdateMillisP99()),
+				String.format(Locale.ROOT, "frames  %d decoded %d dropped %d skipped %d corrupt", metrics.getFramesDecoded(), metrics.getFramesDropped(),
+						metrics.getFramesSkipped(), metrics.getFramesCorrupt()),
+				String.format(Locale.ROOT, "errors  %d connection", metrics.getConnectionErrors()),
+				String.format(Locale.ROOT, "alloc   %d KiB/frame", metrics.getAllocatedBytesPerFrame() / 1024)
+		};
+		
+		g.setFont(FONT);
+		FontMetrics fontMetrics = g.getFontMetrics();
+		
+		int width = 0;
+		
+		for(String line : lines)
+		{
+			width = Math.max(width, fontMetrics.stringWidth(line));
+		}
+		
+		int lineHeight = fontMetrics.getHeight();
+		
+		g.setColor(BACKGROUND);
+		g.fillRect(0, 0, width + PADDING * 2, lineHeight * lines.length + PADDING * 2);
+		
+		g.setColor(Color.white);
+		
+		for(int i = 0; i < lines.length; i++)
+		{
+			g.drawString(lines[i], PADDING, PADDING + i * lineHeight + fontMetrics.getAscent());
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package filunderscore.improvedhordes.gui;
+
+import filunderscore.improvedhordes.world.PlayerSnapshot;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+public final class PlayerListModel extends WorldListModel<PlayerSnapshot>
+{
+	private static final long serialVersionUID = -6130485517322196086L;
+	
+	@Override
+	protected int getSize(WorldHordeState world)
+	{
+		return world.getPlayerCount();
+	}
+	
+	@Override
+	protected PlayerSnapshot createElement(WorldHordeState world, int index)
+	{
+		return new PlayerSnapshot(world, index);
+	}
+}
@@ -0,0 +1,199 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import filunderscore.improvedhordes.util.IntList;
+import filunderscore.improvedhordes.util.Vector2i;
+import filunderscore.improvedhordes.world.SpatialQuery;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Answers what is around a point picked on the map: lines to the nearest hordes, labelled with their distance, and a
+ * summary of the hordes and players within a fixed radius in the top right corner. A box dragged out on the map gets
+ * the hordes inside it outlined and summarized as well. The queries run against every painted state, so the answer
+ * follows the hordes as they move.
+ */
+public final class ProbeOverlay
+{
+	private static final int NEAREST = 8;
+	private static final float RADIUS = Float.parseFloat(System.getProperty("ihdebugviewer.probeRadius", "150"));
+
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+	private static final Color MARKER = new Color(64, 255, 255, 220);
+	private static final Color BOX = new Color(255, 224, 64, 220);
+	private static final Color LINE = new Color(64, 255, 255, 120);
+	private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+	private static final Color TEXT = new Color(160, 255, 255);
+	private static final int MARKER_SIZE = 5;
+	private static final int PADDING = 4;
+
+	private final SpatialQuery query = new SpatialQuery();
+	private final IntList nearest = new IntList(), clusters = new IntList(), players = new IntList(), boxed = new IntList();
+	private final List<String> lines = new ArrayList<>();
+
+	private boolean active;
+	private float x, z;
+
+	private boolean boxActive;
+	private float boxMinX, boxMinZ, boxMaxX, boxMaxZ;
+
+	public boolean isActive()
+	{
+		return this.active || this.boxActive;
+	}
+
+	public void setPoint(float x, float z)
+	{
+		this.x = x;
+		this.z = z;
+		this.active = true;
+	}
+
+	/**
+	 * Sets the box from two opposite corners, in either order.
+	 */
+	public void setBox(float x1, float z1, float x2, float z2)
+	{
+		this.boxMinX = Math.min(x1, x2);
+		this.boxMinZ = Math.min(z1, z2);
+		this.boxMaxX = Math.max(x1, x2);
+		this.boxMaxZ = Math.max(z1, z2);
+		this.boxActive = true;
+	}
+
+	public void clear()
+	{
+		this.active = false;
+		this.boxActive = false;
+	}
+
+	public void draw(WorldHordeState world, IHRenderer renderer, Graphics g)
+	{
+		if(!this.isActive())
+			return;
+
+		g.setFont(FONT);
+		this.lines.clear();
+
+		if(this.active)
+			this.drawProbe(world, renderer, g);
+
+		if(this.boxActive)
+			this.drawBox(world, renderer, g);
+
+		this.drawSummary(renderer, g);
+	}
+
+	private void drawProbe(WorldHordeState world, IHRenderer renderer, Graphics g)
+	{
+		this.nearest.clear();
+		this.clusters.clear();
+		this.players.clear();
+
+		this.query.nearestClusters(world, this.x, this.z, NEAREST, this.nearest);
+		this.query.clustersWithin(world, this.x, this.z, RADIUS, this.clusters);
+		this.query.playersWithin(world, this.x, this.z, RADIUS, this.players);
+
+		int screenX = renderer.toScreenX(this.x), screenY = renderer.toScreenY(this.z);
+
+		for(int i = 0; i < this.nearest.size(); i++)
+		{
+			int cluster = this.nearest.get(i);
+			int clusterX = renderer.toScreenX(world.getClusterX(cluster)), clusterY = renderer.toScreenY(world.getClusterZ(cluster));
+
+			g.setColor(LINE);
+			g.drawLine(screenX, screenY, clusterX, clusterY);
+
+			g.setColor(TEXT);
+			g.drawString(String.format(Locale.ROOT, "%.0f", this.distanceTo(world, cluster)), clusterX + 3, clusterY - 3);
+		}
+
+		int width = renderer.scaleX(RADIUS), height = renderer.scaleY(RADIUS);
+
+		g.setColor(MARKER);
+		g.drawOval(screenX - width, screenY - height, width * 2, height * 2);
+		g.drawLine(screenX - MARKER_SIZE, screenY, screenX + MARKER_SIZE, screenY);
+		g.drawLine(screenX, screenY - MARKER_SIZE, screenX, screenY + MARKER_SIZE);
+
+		float density = 0.0f;
+
+		for(int i = 0; i < this.clusters.size(); i++)
+		{
+			density += world.getClusterDensity(this.clusters.get(i));
+		}
+
+		this.lines.add(String.format(Locale.ROOT, "probe   %.0f, %.0f", this.x, this.z));
+		this.lines.add(String.format(Locale.ROOT, "within  %.0f blocks: %d hordes, %.2f density, %d players", RADIUS, this.clusters.size(), density, this.players.size()));
+		this.lines.add(this.nearest.size() == 0 ? "nearest none" : String.format(Locale.ROOT, "nearest %s at %.0f blocks",
+				world.getClusterTypeName(this.nearest.get(0)), this.distanceTo(world, this.nearest.get(0))));
+	}
+
+	private void drawBox(WorldHordeState world, IHRenderer renderer, Graphics g)
+	{
+		this.boxed.clear();
+		this.query.clustersInBox(world, this.boxMinX, this.boxMinZ, this.boxMaxX, this.boxMaxZ, this.boxed);
+
+		int x1 = renderer.toScreenX(this.boxMinX), y1 = renderer.toScreenY(this.boxMinZ);
+		int x2 = renderer.toScreenX(this.boxMaxX), y2 = renderer.toScreenY(this.boxMaxZ);
+
+		g.setColor(BOX);
+		g.drawRect(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1), Math.abs(y2 - y1));
+
+		float density = 0.0f;
+		int densest = -1;
+
+		for(int i = 0; i < this.boxed.size(); i++)
+		{
+			int cluster = this.boxed.get(i);
+			density += world.getClusterDensity(cluster);
+
+			if(densest < 0 || world.getClusterDensity(cluster) > world.getClusterDensity(densest))
+				densest = cluster;
+
+			int clusterX = renderer.toScreenX(world.getClusterX(cluster)), clusterY = renderer.toScreenY(world.getClusterZ(cluster));
+			g.drawRect(clusterX - MARKER_SIZE, clusterY - MARKER_SIZE, MARKER_SIZE * 2, MARKER_SIZE * 2);
+		}
+
+		this.lines.add(String.format(Locale.ROOT, "box     %.0f x %.0f blocks: %d hordes, %.2f density",
+				this.boxMaxX - this.boxMinX, this.boxMaxZ - this.boxMinZ, this.boxed.size(), density));
+		this.lines.add(densest < 0 ? "densest none" : String.format(Locale.ROOT, "densest %s at %.0f, %.0f, %.2f density",
+				world.getClusterTypeName(densest), world.getClusterX(densest), world.getClusterZ(densest), world.getClusterDensity(densest)));
+	}
+
+	private void drawSummary(IHRenderer renderer, Graphics g)
+	{
+		FontMetrics metrics = g.getFontMetrics();
+		int boxWidth = 0;
+
+		for(String line : this.lines)
+		{
+			boxWidth = Math.max(boxWidth, metrics.stringWidth(line));
+		}
+
+		Vector2i panelSize = renderer.getPanelSize();
+		int lineHeight = metrics.getHeight();
+		int left = panelSize.x - boxWidth - 2 * PADDING;
+
+		g.setColor(BACKGROUND);
+		g.fillRect(left, 0, boxWidth + 2 * PADDING, this.lines.size() * lineHeight + 2 * PADDING);
+
+		g.setColor(TEXT);
+
+		for(int i = 0; i < this.lines.size(); i++)
+		{
+			g.drawString(this.lines.get(i), left + PADDING, PADDING + i * lineHeight + metrics.getAscent());
+		}
+	}
+
+	private float distanceTo(WorldHordeState world, int cluster)
+	{
+		float dx = world.getClusterX(cluster) - this.x, dz = world.getClusterZ(cluster) - this.z;
+		return (float)Math.sqrt(dx * dx + dz * dz);
+	}
+}
@@ -0,0 +1,538 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import filunderscore.improvedhordes.util.IntList;
+import filunderscore.improvedhordes.util.Vector2i;
+import filunderscore.improvedhordes.world.HordeTypeStyle;
+import filunderscore.improvedhordes.world.PlayerSnapshot;
+import filunderscore.improvedhordes.world.SpatialGrid;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Draws clusters and players by writing straight into an image's pixel array instead of going through {@link Graphics}.
+ * Markers are stamped from sprites rasterized once per colour and on-screen size, stored as one span per row, and
+ * density labels from glyph masks rasterized once per font. The image is split into strips of rows that are filled in
+ * parallel, each entity being stamped into every strip it overlaps, in the same order the {@link Graphics} path draws
+ * them in, so the two produce the same picture.
+ */
+public final class RasterEntityLayer
+{
+	public static final boolean DEFAULT_ENABLED = Boolean.getBoolean("ihdebugviewer.raster");
+
+	private static final int STRIP_ROWS = 32;
+	private static final int MIN_PARALLEL_ENTITIES = 256;
+	private static final float ENTITY_MARGIN = 100.0f;
+	private static final String LABEL_CHARACTERS = "0123456789.-EInfinityNa";
+
+	private final ForkJoinPool pool;
+
+	private BufferedImage image;
+	private int[] pixels;
+	private int width, height;
+
+	private int rendererVersion = -1;
+	private final List<Sprite> sprites = new ArrayList<>();
+	private final Map<Object, Integer> spriteIndices = new IdentityHashMap<>();
+	private final Map<Font, Glyphs> glyphs = new HashMap<>();
+
+	private int entityCount;
+	private int[] entitySprite = new int[0], entityX = new int[0], entityY = new int[0];
+	private int[] entityLabelX = new int[0], entityLabelY = new int[0];
+	private String[] entityLabel = new String[0];
+
+	private int stripCount;
+	private int[] stripStart = new int[1];
+	private int[] stripEntities = new int[0];
+	private int[] stripMinX = new int[0], stripMaxX = new int[0];
+
+	private boolean enabled = DEFAULT_ENABLED;
+
+	public RasterEntityLayer(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	public boolean isEnabled()
+	{
+		return this.enabled;
+	}
+
+	public void toggle()
+	{
+		this.enabled = !this.enabled;
+	}
+
+	/**
+	 * Draws the players, and the clusters unless another layer stands in for them.
+	 */
+	public void draw(WorldHordeState world, IHRenderer renderer, Graphics g, boolean clusters)
+	{
+		Vector2i panelSize = renderer.getPanelSize();
+
+		this.resize(panelSize.x + 1, panelSize.y + 1);
+
+		if(this.rendererVersion != renderer.getVersion())
+		{
+			this.rendererVersion = renderer.getVersion();
+			this.sprites.clear();
+			this.spriteIndices.clear();
+		}
+
+		Glyphs glyphs = this.glyphs.computeIfAbsent(g.getFont(), font -> new Glyphs(font, g.getFontMetrics(font)));
+
+		this.entityCount = 0;
+
+		if(clusters)
+			this.addClusters(world, renderer, glyphs);
+
+		this.addPlayers(world, renderer);
+		this.bin(glyphs);
+
+		StripTask task = new StripTask(glyphs, 0, this.stripCount);
+
+		if(this.entityCount < MIN_PARALLEL_ENTITIES)
+			task.compute();
+		else
+			this.pool.invoke(task);
+
+		// Only composite what was drawn, since blending a whole transparent panel is not free.
+		for(int strip = 0; strip < this.stripCount; strip++)
+		{
+			int minX = this.stripMinX[strip], maxX = this.stripMaxX[strip];
+
+			if(minX >= maxX)
+				continue;
+
+			int minY = strip * STRIP_ROWS, maxY = Math.min(this.height, minY + STRIP_ROWS);
+			g.drawImage(this.image, minX, minY, maxX, maxY, minX, minY, maxX, maxY, null);
+		}
+	}
+
+	private void resize(int width, int height)
+	{
+		if(this.image != null && this.width == width && this.height == height)
+			return;
+
+		this.width = width;
+		this.height = height;
+		this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		this.pixels = ((DataBufferInt)this.image.getRaster().getDataBuffer()).getData();
+		this.stripCount = (height + STRIP_ROWS - 1) / STRIP_ROWS;
+		this.stripMinX = new int[this.stripCount];
+		this.stripMaxX = new int[this.stripCount];
+	}
+
+	private void addClusters(WorldHordeState world, IHRenderer renderer, Glyphs glyphs)
+	{
+		float minX = renderer.getViewMinX() - ENTITY_MARGIN, maxX = renderer.getViewMaxX() + ENTITY_MARGIN;
+		float minZ = renderer.getViewMinZ() - ENTITY_MARGIN, maxZ = renderer.getViewMaxZ() + ENTITY_MARGIN;
+
+		SpatialGrid clusterIndex = world.getClusterIndex();
+		int minColumn = clusterIndex.getColumn(minX), maxColumn = clusterIndex.getColumn(maxX);
+		int minRow = clusterIndex.getRow(minZ), maxRow = clusterIndex.getRow(maxZ);
+
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			int end = clusterIndex.getCellEnd(maxColumn, row);
+
+			for(int i = clusterIndex.getCellStart(minColumn, row); i < end; i++)
+			{
+				int cluster = clusterIndex.getEntry(i);
+				HordeTypeStyle style = world.getClusterStyle(cluster);
+
+				int x = renderer.toScreenX(world.getClusterX(cluster));
+				int y = renderer.toScreenY(world.getClusterZ(cluster));
+				int width = renderer.scaleX(style.getMarkerSize());
+				int height = renderer.scaleY(style.getMarkerSize());
+
+				String label = width >= style.getLabelMinPixels() ? Float.toString(world.getClusterDensity(cluster)) : null;
+
+				this.addEntity(this.getSprite(style, style.getColor(), width, height), (int)(x - width / 1.5), (int)(y - height / 1.5), label, x - width, y - height);
+			}
+		}
+	}
+
+	private void addPlayers(WorldHordeState world, IHRenderer renderer)
+	{
+		float minX = renderer.getViewMinX() - ENTITY_MARGIN, maxX = renderer.getViewMaxX() + ENTITY_MARGIN;
+		float minZ = renderer.getViewMinZ() - ENTITY_MARGIN, maxZ = renderer.getViewMaxZ() + ENTITY_MARGIN;
+
+		SpatialGrid playerIndex = world.getPlayerIndex();
+		int minColumn = playerIndex.getColumn(minX), maxColumn = playerIndex.getColumn(maxX);
+		int minRow = playerIndex.getRow(minZ), maxRow = playerIndex.getRow(maxZ);
+
+		int width = renderer.scaleX(PlayerSnapshot.MARKER_SIZE);
+		int height = renderer.scaleY(PlayerSnapshot.MARKER_SIZE);
+
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			int end = playerIndex.getCellEnd(maxColumn, row);
+
+			for(int i = playerIndex.getCellStart(minColumn, row); i < end; i++)
+			{
+				int player = playerIndex.getEntry(i);
+
+				int x = renderer.toScreenX(world.getPlayerX(player));
+				int y = renderer.toScreenY(world.getPlayerZ(player));
+
+				this.addEntity(this.getSprite(PlayerSnapshot.class, PlayerSnapshot.COLOR, width, height), (int)(x - width / 1.5), (int)(y - height / 1.5), null, 0, 0);
+			}
+		}
+	}
+
+	private void addEntity(int sprite, int x, int y, String label, int labelX, int labelY)
+	{
+		if(this.entityCount == this.entitySprite.length)
+		{
+			int capacity = Math.max(64, this.entityCount * 2);
+
+			this.entitySprite = Arrays.copyOf(this.entitySprite, capacity);
+			this.entityX = Arrays.copyOf(this.entityX, capacity);
+			this.entityY = Arrays.copyOf(this.entityY, capacity);
+			this.entityLabelX = Arrays.copyOf(this.entityLabelX, capacity);
+			this.entityLabelY = Arrays.copyOf(this.entityLabelY, capacity);
+			this.entityLabel = Arrays.copyOf(this.entityLabel, capacity);
+		}
+
+		int i = this.entityCount++;
+
+		this.entitySprite[i] = sprite;
+		this.entityX[i] = x;
+		this.entityY[i] = y;
+		this.entityLabel[i] = label;
+		this.entityLabelX[i] = labelX;
+		this.entityLabelY[i] = labelY;
+	}
+
+	/**
+	 * Sprites are kept per style until the zoom changes, which changes every marker's size.
+	 */
+	private int getSprite(Object style, Color color, int width, int height)
+	{
+		Integer index = this.spriteIndices.get(style);
+
+		if(index == null)
+		{
+			index = this.sprites.size();
+
+			this.sprites.add(new Sprite(color, width, height));
+			this.spriteIndices.put(style, index);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Lists the entities overlapping each strip, in drawing order, by counting sort.
+	 */
+	private void bin(Glyphs glyphs)
+	{
+		if(this.stripStart.length < this.stripCount + 1)
+			this.stripStart = new int[this.stripCount + 1];
+		else
+			Arrays.fill(this.stripStart, 0, this.stripCount + 1, 0);
+
+		int total = 0;
+
+		for(int pass = 0; pass < 2; pass++)
+		{
+			for(int i = 0; i < this.entityCount; i++)
+			{
+				Sprite sprite = this.sprites.get(this.entitySprite[i]);
+
+				int top = this.entityY[i], bottom = this.entityY[i] + sprite.height;
+
+				if(this.entityLabel[i] != null)
+				{
+					top = Math.min(top, this.entityLabelY[i] - glyphs.ascent);
+					bottom = Math.max(bottom, this.entityLabelY[i] + glyphs.descent);
+				}
+
+				if(top >= this.height || bottom <= 0)
+					continue;
+
+				int first = Math.max(0, top / STRIP_ROWS), last = Math.min(this.stripCount - 1, (bottom - 1) / STRIP_ROWS);
+
+				for(int strip = first; strip <= last; strip++)
+				{
+					if(pass == 0)
+						this.stripStart[strip + 1]++;
+					else
+						this.stripEntities[this.stripStart[strip]++] = i;
+				}
+			}
+
+			if(pass == 0)
+			{
+				for(int strip = 0; strip < this.stripCount; strip++)
+				{
+					this.stripStart[strip + 1] += this.stripStart[strip];
+				}
+
+				total = this.stripStart[this.stripCount];
+
+				if(this.stripEntities.length < total)
+					this.stripEntities = new int[Math.max(total, this.stripEntities.length * 2)];
+			}
+		}
+
+		// Filling moved every start up to the next strip's, so shift them back.
+		System.arraycopy(this.stripStart, 0, this.stripStart, 1, this.stripCount);
+		this.stripStart[0] = 0;
+	}
+
+	private void drawStrip(Glyphs glyphs, int strip)
+	{
+		int minY = strip * STRIP_ROWS, maxY = Math.min(this.height, minY + STRIP_ROWS);
+
+		// Only what was drawn last time needs clearing.
+		for(int row = minY; row < maxY && this.stripMinX[strip] < this.stripMaxX[strip]; row++)
+		{
+			Arrays.fill(this.pixels, row * this.width + this.stripMinX[strip], row * this.width + this.stripMaxX[strip], 0);
+		}
+
+		int minX = this.width, maxX = 0;
+
+		for(int e = this.stripStart[strip]; e < this.stripStart[strip + 1]; e++)
+		{
+			int i = this.stripEntities[e];
+			Sprite sprite = this.sprites.get(this.entitySprite[i]);
+
+			sprite.stamp(this.pixels, this.width, this.entityX[i], this.entityY[i], minY, maxY);
+
+			minX = Math.min(minX, this.entityX[i]);
+			maxX = Math.max(maxX, this.entityX[i] + sprite.width);
+
+			if(this.entityLabel[i] != null)
+			{
+				int end = glyphs.stamp(this.pixels, this.width, this.entityLabel[i], sprite.color, this.entityLabelX[i], this.entityLabelY[i], minY, maxY);
+
+				minX = Math.min(minX, this.entityLabelX[i] - Glyphs.PADDING);
+				maxX = Math.max(maxX, end + Glyphs.PADDING);
+			}
+		}
+
+		this.stripMinX[strip] = Math.max(0, minX);
+		this.stripMaxX[strip] = Math.min(this.width, maxX);
+	}
+
+	private final class StripTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 4410387541935187226L;
+
+		private final Glyphs glyphs;
+		private final int from, to;
+
+		private StripTask(Glyphs glyphs, int from, int to)
+		{
+			this.glyphs = glyphs;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(this.to - this.from > 1 && entityCount >= MIN_PARALLEL_ENTITIES)
+			{
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new StripTask(this.glyphs, this.from, middle), new StripTask(this.glyphs, middle, this.to));
+				return;
+			}
+
+			for(int strip = this.from; strip < this.to; strip++)
+			{
+				drawStrip(this.glyphs, strip);
+			}
+		}
+	}
+
+	/**
+	 * A filled oval as {@link Graphics#fillOval} rasterizes it, kept as the span it covers on each row.
+	 */
+	private static final class Sprite
+	{
+		private final int color;
+		private final int width, height;
+		private final int[] spanStart, spanEnd;
+
+		private Sprite(Color color, int width, int height)
+		{
+			this.color = color.getRGB();
+			this.width = width + 1;
+			this.height = height + 1;
+			this.spanStart = new int[this.height];
+			this.spanEnd = new int[this.height];
+
+			int[] mask = rasterize(width + 1, this.height, g -> g.fillOval(0, 0, width, height));
+
+			for(int y = 0; y < this.height; y++)
+			{
+				int start = width + 1, end = 0;
+
+				for(int x = 0; x <= width; x++)
+				{
+					if(mask[y * (width + 1) + x] != 0)
+					{
+						start = Math.min(start, x);
+						end = x + 1;
+					}
+				}
+
+				this.spanStart[y] = start;
+				this.spanEnd[y] = Math.max(start, end);
+			}
+		}
+
+		private void stamp(int[] pixels, int stride, int x, int y, int minY, int maxY)
+		{
+			for(int row = Math.max(minY, y); row < Math.min(maxY, y + this.height); row++)
+			{
+				int start = Math.max(0, x + this.spanStart[row - y]);
+				int end = Math.min(stride, x + this.spanEnd[row - y]);
+
+				if(start < end)
+					Arrays.fill(pixels, row * stride + start, row * stride + end, this.color);
+			}
+		}
+	}
+
+	/**
+	 * The characters a density label can contain, as {@link Graphics#drawString} draws them in one font, each kept as the
+	 * horizontal runs of pixels it covers.
+	 */
+	private static final class Glyphs
+	{
+		private static final int PADDING = 2;
+
+		private final int ascent, descent;
+		private final int[] advances = new int[128];
+
+		// Runs as row, start and end triples relative to the pen position on the baseline.
+		private final int[][] runs = new int[128][];
+
+		private Glyphs(Font font, FontMetrics metrics)
+		{
+			this.ascent = metrics.getAscent() + PADDING;
+			this.descent = metrics.getDescent() + PADDING;
+
+			for(int i = 0; i < LABEL_CHARACTERS.length(); i++)
+			{
+				char character = LABEL_CHARACTERS.charAt(i);
+
+				if(this.runs[character] != null)
+					continue;
+
+				int width = metrics.charWidth(character) + 2 * PADDING;
+				int height = this.ascent + this.descent;
+				String text = String.valueOf(character);
+
+				int[] mask = rasterize(width, height, g ->
+				{
+					g.setFont(font);
+					g.drawString(text, PADDING, this.ascent);
+				});
+
+				IntList runs = new IntList();
+
+				for(int y = 0; y < height; y++)
+				{
+					for(int x = 0; x < width; x++)
+					{
+						if(mask[y * width + x] == 0)
+							continue;
+
+						int start = x;
+
+						while(x < width && mask[y * width + x] != 0)
+							x++;
+
+						runs.add(y - this.ascent);
+						runs.add(start - PADDING);
+						runs.add(x - PADDING);
+					}
+				}
+
+				this.advances[character] = metrics.charWidth(character);
+				this.runs[character] = runs.toArray();
+			}
+		}
+
+		/**
+		 * Returns where the pen ends up, past the last character.
+		 */
+		private int stamp(int[] pixels, int stride, String text, int color, int x, int baseline, int minY, int maxY)
+		{
+			if(baseline + this.descent <= minY || baseline - this.ascent >= maxY)
+				return x;
+
+			for(int c = 0; c < text.length(); c++)
+			{
+				char character = text.charAt(c);
+
+				if(character >= 128 || this.runs[character] == null)
+					continue;
+
+				int[] runs = this.runs[character];
+
+				for(int r = 0; r < runs.length; r += 3)
+				{
+					int row = baseline + runs[r];
+
+					if(row < minY || row >= maxY)
+						continue;
+
+					int start = Math.max(0, x + runs[r + 1]);
+					int end = Math.min(stride, x + runs[r + 2]);
+
+					for(int i = row * stride + start; i < row * stride + end; i++)
+					{
+						pixels[i] = color;
+					}
+				}
+
+				x += this.advances[character];
+			}
+
+			return x;
+		}
+	}
+
+	private interface Painter
+	{
+		void paint(Graphics2D g);
+	}
+
+	private static int[] rasterize(int width, int height, Painter painter)
+	{
+		BufferedImage image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+
+		try
+		{
+			g.setColor(Color.white);
+			painter.paint(g);
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		return ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+	}
+}
@@ -0,0 +1,71 @@
+package filunderscore.improvedhordes.gui;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Repaints a component only after something asked for it, at most once per frame interval.
+ * Requests made while a repaint is already pending are coalesced into that repaint.
+ */
+public final class RenderScheduler
+{
+	public static final int DEFAULT_MAX_FPS = Integer.getInteger("ihdebugviewer.maxFps", 60);
+	
+	private final JComponent target;
+	private final AtomicBoolean dirty = new AtomicBoolean();
+	private final Timer timer;
+	
+	private volatile long frameIntervalNanos;
+	private long lastRenderNanos;
+	
+	public RenderScheduler(JComponent target, int maxFps)
+	{
+		this.target = target;
+		this.setMaxFps(maxFps);
+		
+		this.timer = new Timer(0, e -> this.render());
+		this.timer.setRepeats(false);
+	}
+	
+	public void setMaxFps(int maxFps)
+	{
+		this.frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxFps);
+	}
+	
+	public void requestRender()
+	{
+		if(!this.dirty.compareAndSet(false, true))
+			return;
+		
+		if(SwingUtilities.isEventDispatchThread())
+			this.schedule();
+		else
+			SwingUtilities.invokeLater(this::schedule);
+	}
+	
+	private void schedule()
+	{
+		long wait = this.lastRenderNanos + this.frameIntervalNanos - System.nanoTime();
+		
+		if(wait <= 0)
+		{
+			this.render();
+		}
+		else
+		{
+			this.timer.setInitialDelay((int)Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+			this.timer.restart();
+		}
+	}
+	
+	private void render()
+	{
+		this.lastRenderNanos = System.nanoTime();
+		this.dirty.set(false);
+		this.target.repaint();
+	}
+}
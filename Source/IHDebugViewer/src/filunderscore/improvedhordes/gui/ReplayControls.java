@@ -0,0 +1,104 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+
+import filunderscore.improvedhordes.replay.ReplayClock;
+
+public final class ReplayControls extends JPanel
+{
+	private static final long serialVersionUID = 4471306395318250946L;
+	
+	private static final String[] SPEEDS = { "0.25x", "0.5x", "1x", "2x", "4x", "8x", "16x", "64x" };
+	private static final int DEFAULT_SPEED = 2;
+	
+	private final ReplayClock clock;
+	
+	private final JButton playButton;
+	private final JComboBox<String> speedBox;
+	private final JSlider timeline;
+	private final JLabel timeLabel;
+	
+	private boolean refreshing;
+	
+	public ReplayControls(ReplayClock clock)
+	{
+		super(new BorderLayout(4, 0));
+		
+		this.clock = clock;
+		
+		this.playButton = new JButton("Play");
+		this.playButton.addActionListener(e ->
+		{
+			if(clock.isPaused())
+				clock.play();
+			else
+				clock.pause();
+			
+			this.refresh();
+		});
+		
+		this.speedBox = new JComboBox<>(SPEEDS);
+		this.speedBox.setSelectedIndex(DEFAULT_SPEED);
+		this.speedBox.addActionListener(e ->
+		{
+			String speed = (String)this.speedBox.getSelectedItem();
+			clock.setSpeed(Double.parseDouble(speed.substring(0, speed.length() - 1)));
+		});
+		
+		this.timeline = new JSlider(0, (int)TimeUnit.NANOSECONDS.toMillis(clock.getDuration()), 0);
+		this.timeline.addChangeListener(e ->
+		{
+			if(!this.refreshing)
+				clock.seek(TimeUnit.MILLISECONDS.toNanos(this.timeline.getValue()));
+		});
+		
+		this.timeLabel = new JLabel();
+		
+		JPanel buttons = new JPanel(new BorderLayout(4, 0));
+		buttons.add(this.playButton, BorderLayout.WEST);
+		buttons.add(this.speedBox, BorderLayout.EAST);
+		
+		this.add(buttons, BorderLayout.WEST);
+		this.add(this.timeline, BorderLayout.CENTER);
+		this.add(this.timeLabel, BorderLayout.EAST);
+		
+		for(JPanel panel : new JPanel[] { this, buttons })
+		{
+			panel.setBackground(Color.darkGray);
+		}
+		
+		this.timeline.setBackground(Color.darkGray);
+		this.timeLabel.setForeground(Color.white);
+		
+		this.refresh();
+	}
+	
+	public void refresh()
+	{
+		long position = this.clock.getPosition();
+		
+		this.playButton.setText(this.clock.isPaused() ? "Play" : "Pause");
+		this.timeLabel.setText(formatTime(position) + " / " + formatTime(this.clock.getDuration()));
+		
+		if(!this.timeline.getValueIsAdjusting())
+		{
+			this.refreshing = true;
+			this.timeline.setValue((int)TimeUnit.NANOSECONDS.toMillis(position));
+			this.refreshing = false;
+		}
+	}
+	
+	private static String formatTime(long nanos)
+	{
+		long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+		return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+	}
+}
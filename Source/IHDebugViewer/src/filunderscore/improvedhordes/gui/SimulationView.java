@@ -0,0 +1,246 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JButton;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+
+import filunderscore.improvedhordes.metrics.ListUpdateEvent;
+import filunderscore.improvedhordes.util.Vector2i;
+import filunderscore.improvedhordes.world.ClusterSnapshot;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation.ConnectionStatus;
+import filunderscore.improvedhordes.world.PlayerSnapshot;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+public final class SimulationView extends JPanel
+{
+	private static final long serialVersionUID = 5513826602749163810L;
+	private static final int LIST_CELL_CHARACTERS = 90;
+	
+	private ImprovedHordesSimulation simulation;
+	private ImprovedHordesPanel panel;
+	private Vector2i size;
+	
+	private final float LIST_PERCENT = 0.0f;
+	private final float PANEL_PERCENT = 1.0f;
+	private final int CONTROLS_HEIGHT = 32;
+	
+	private final ClusterListModel clustersModel = new ClusterListModel();
+	private final PlayerListModel playersModel = new PlayerListModel();
+	
+	private JList<ClusterSnapshot> clustersList;
+	private JList<PlayerSnapshot> playersList;
+	
+	private JScrollPane clustersListScrollPane;
+	private JScrollPane playersListScrollPane;
+	
+	private JButton reconnectButton;
+	private ReplayControls replayControls;
+	
+	private final AtomicBoolean updatePending = new AtomicBoolean();
+	
+	public SimulationView(Vector2i size, ImprovedHordesSimulation simulation)
+	{
+		this.simulation = simulation;
+		this.size = size;
+		
+		this.setSize(new Dimension(size.x, size.y));
+		
+		this.addComponentListener(new ComponentAdapter()
+		{
+			public void componentResized(ComponentEvent componentEvent)
+			{
+				Dimension size = componentEvent.getComponent().getSize();
+				SimulationView.this.size = new Vector2i(size.width, size.height);
+				
+				setSizes();
+			}
+		});
+		
+		this.setupComponents();
+		this.setSizes();
+	}
+	
+	public ImprovedHordesSimulation getSimulation()
+	{
+		return this.simulation;
+	}
+	
+	private void setupComponents()
+	{
+		setLayout(null);
+		setBackground(Color.darkGray);
+		
+		this.panel = new ImprovedHordesPanel(simulation, new Vector2i(this.size.x * PANEL_PERCENT, this.size.y * PANEL_PERCENT));
+		add(panel);
+		
+		panel.setBackground(Color.darkGray);
+		panel.setForeground(Color.white);
+		
+		this.clustersList = new JList<ClusterSnapshot>(this.clustersModel);
+		this.playersList = new JList<PlayerSnapshot>(this.playersModel);
+		
+		// Fixed cell sizes keep the list from measuring every row whenever the model changes.
+		setFixedCellSize(this.clustersList);
+		setFixedCellSize(this.playersList);
+		
+		this.clustersList.setBackground(Color.darkGray);
+		this.playersList.setBackground(Color.darkGray);
+		
+		this.clustersList.setForeground(Color.white);
+		this.playersList.setForeground(Color.white);
+
+		this.clustersListScrollPane = new JScrollPane(this.clustersList);
+		this.playersListScrollPane = new JScrollPane(this.playersList);
+
+		this.reconnectButton = new JButton("Reconnect");
+		this.reconnectButton.setBackground(Color.darkGray);
+		this.reconnectButton.setForeground(Color.white);
+		
+		this.reconnectButton.addActionListener(new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e) 
+			{
+				simulation.requestReconnect();
+			}			
+		});
+		
+		add(this.clustersListScrollPane);
+		add(this.playersListScrollPane);
+		add(this.reconnectButton);
+	}
+	
+	private static void setFixedCellSize(JList<?> list)
+	{
+		FontMetrics metrics = list.getFontMetrics(list.getFont());
+		
+		list.setFixedCellHeight(metrics.getHeight() + 2);
+		list.setFixedCellWidth(metrics.charWidth('m') * LIST_CELL_CHARACTERS);
+	}
+	
+	public void setSizes()
+	{
+		if(panel != null)
+		{
+			panel.setLocation((int)(this.size.x * LIST_PERCENT), 0);
+			
+			int maxSizeX = (int)(this.size.x * PANEL_PERCENT);
+			int maxSizeY = (int)(this.size.y - this.getControlsHeight());
+
+			int maxSize = Math.min(maxSizeX, maxSizeY);
+			
+			panel.setSize(new Vector2i(maxSize, maxSize));
+		}
+
+		if(this.clustersListScrollPane != null)
+		{
+			this.clustersListScrollPane.setLocation(0, 0);
+			this.clustersListScrollPane.setSize((int)(this.size.x * LIST_PERCENT), this.size.y / 2);
+		}
+		
+		if(this.playersListScrollPane != null)
+		{
+			this.playersListScrollPane.setLocation(0, this.size.y / 2);
+			this.playersListScrollPane.setSize((int)(this.size.x * LIST_PERCENT), this.size.y / 2);
+		}
+		
+		if(this.reconnectButton != null)
+		{
+			this.reconnectButton.setLocation((int)(this.size.x * LIST_PERCENT), (int)(2 * this.size.y / 3));
+			this.reconnectButton.setSize((int)(this.size.x * PANEL_PERCENT), (int)(this.size.y / 3));
+			
+			this.reconnectButton.setVisible(isDisconnected());
+		}
+		
+		if(this.replayControls != null)
+		{
+			this.replayControls.setLocation(0, this.size.y - CONTROLS_HEIGHT);
+			this.replayControls.setSize(this.size.x, CONTROLS_HEIGHT);
+		}
+	}
+	
+	private int getControlsHeight()
+	{
+		return this.replayControls != null ? CONTROLS_HEIGHT : 0;
+	}
+	
+	public void setReplayControls(ReplayControls replayControls)
+	{
+		if(this.replayControls != null)
+			remove(this.replayControls);
+		
+		this.replayControls = replayControls;
+		add(replayControls);
+		
+		setSizes();
+		revalidate();
+	}
+	
+	private boolean isDisconnected()
+	{
+		ConnectionStatus status = simulation.getStatus();
+		return status == ConnectionStatus.LOST_CONNECTION || status == ConnectionStatus.NOT_CONNECTED;
+	}
+	
+	public void requestUpdate()
+	{
+		if(this.updatePending.compareAndSet(false, true))
+		{
+			SwingUtilities.invokeLater(() ->
+			{
+				this.updatePending.set(false);
+				this.update();
+			});
+		}
+	}
+
+	/**
+	 * Acquires the latest state once and shares it between the panel and the lists. Acquiring again would let the exchange
+	 * hand the state they still show back to the writer.
+	 */
+	public void update()
+	{
+		WorldHordeState world = simulation.getWorld();
+		
+		if(world != null)
+		{
+			ListUpdateEvent event = new ListUpdateEvent();
+			event.begin();
+			
+			long start = System.nanoTime();
+			
+			this.playersModel.setWorld(world);
+			this.clustersModel.setWorld(world);
+			
+			simulation.getMetrics().recordListUpdate(System.nanoTime() - start);
+			event.end();
+			
+			if(event.shouldCommit())
+			{
+				event.source = simulation.getMetrics().getSource();
+				event.rows = world.getPlayerCount() + world.getClusterCount();
+				event.commit();
+			}
+		}
+		
+		this.reconnectButton.setVisible(isDisconnected());
+		
+		if(this.replayControls != null)
+			this.replayControls.refresh();
+		
+		this.panel.setWorld(world);
+		this.panel.requestRender();
+	}
+}
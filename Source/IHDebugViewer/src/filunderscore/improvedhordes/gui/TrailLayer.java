@@ -0,0 +1,176 @@
+package filunderscore.improvedhordes.gui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import filunderscore.improvedhordes.world.HordeTracker;
+import filunderscore.improvedhordes.world.HordeTypeStyle;
+import filunderscore.improvedhordes.world.SpatialGrid;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Draws where each visible horde has been as a trail that fades with age, with a heading line scaled by its speed.
+ * Speed and heading labels are only drawn while few enough hordes are on screen to read them.
+ * <p>
+ * Tracks follow the states the panel paints, so trails only cover the time it was painted, and speeds come from the
+ * states' own timestamps rather than the paint times. They start over once the panel is hidden or a replay seeks, rather
+ * than joining positions from before and after.
+ */
+public final class TrailLayer
+{
+	public static final boolean DEFAULT_VISIBLE = Boolean.parseBoolean(System.getProperty("ihdebugviewer.trails", "true"));
+
+	private static final int MAX_LABELS = 64;
+	private static final float HEADING_SECONDS = 10.0f;
+	private static final float MIN_LABEL_SPEED = 0.1f;
+	private static final float VIEW_MARGIN = 256.0f;
+	private static final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+
+	private final HordeTracker tracker;
+
+	private Color[][] typeRamps = new Color[0][];
+	private final Map<Color, Color[]> ramps = new HashMap<>();
+
+	private boolean visible = DEFAULT_VISIBLE;
+
+	public TrailLayer(HordeTracker tracker)
+	{
+		this.tracker = tracker;
+	}
+
+	public boolean isVisible()
+	{
+		return this.visible;
+	}
+
+	public void toggle()
+	{
+		this.visible = !this.visible;
+
+		// Tracks go stale while hidden, so start over rather than join old trails to new positions.
+		if(!this.visible)
+			this.tracker.reset();
+	}
+
+	public void reset()
+	{
+		this.tracker.reset();
+	}
+
+	public void update(WorldHordeState world)
+	{
+		if(this.visible)
+			this.tracker.update(world);
+	}
+
+	public void draw(WorldHordeState world, IHRenderer renderer, Graphics g)
+	{
+		if(!this.visible)
+			return;
+
+		this.resolveColors();
+
+		float minX = renderer.getViewMinX() - VIEW_MARGIN, maxX = renderer.getViewMaxX() + VIEW_MARGIN;
+		float minZ = renderer.getViewMinZ() - VIEW_MARGIN, maxZ = renderer.getViewMaxZ() + VIEW_MARGIN;
+
+		SpatialGrid clusterIndex = world.getClusterIndex();
+		int minColumn = clusterIndex.getColumn(minX), maxColumn = clusterIndex.getColumn(maxX);
+		int minRow = clusterIndex.getRow(minZ), maxRow = clusterIndex.getRow(maxZ);
+
+		int visibleCount = 0;
+
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			visibleCount += clusterIndex.getCellEnd(maxColumn, row) - clusterIndex.getCellStart(minColumn, row);
+		}
+
+		boolean labels = visibleCount <= MAX_LABELS;
+
+		if(labels)
+			g.setFont(LABEL_FONT);
+
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			int end = clusterIndex.getCellEnd(maxColumn, row);
+
+			for(int i = clusterIndex.getCellStart(minColumn, row); i < end; i++)
+			{
+				this.drawTrack(this.tracker.getClusterTrack(clusterIndex.getEntry(i)), renderer, g, labels);
+			}
+		}
+	}
+
+	private void drawTrack(int slot, IHRenderer renderer, Graphics g, boolean labels)
+	{
+		Color[] ramp = this.typeRamps[this.tracker.getTrackType(slot)];
+		int size = this.tracker.getTrailSize(slot);
+
+		int x = renderer.toScreenX(this.tracker.getTrailX(slot, 0));
+		int y = renderer.toScreenY(this.tracker.getTrailZ(slot, 0));
+
+		for(int age = 1, lastX = x, lastY = y; age < size; age++)
+		{
+			int nextX = renderer.toScreenX(this.tracker.getTrailX(slot, age));
+			int nextY = renderer.toScreenY(this.tracker.getTrailZ(slot, age));
+
+			g.setColor(ramp[(age - 1) * ramp.length / this.tracker.getTrailLength()]);
+			g.drawLine(lastX, lastY, nextX, nextY);
+
+			lastX = nextX;
+			lastY = nextY;
+		}
+
+		float speed = this.tracker.getSpeed(slot);
+
+		if(speed < MIN_LABEL_SPEED)
+			return;
+
+		int headingX = renderer.toScreenX(this.tracker.getX(slot) + this.tracker.getVelocityX(slot) * HEADING_SECONDS);
+		int headingY = renderer.toScreenY(this.tracker.getZ(slot) + this.tracker.getVelocityZ(slot) * HEADING_SECONDS);
+
+		g.setColor(ramp[0]);
+		g.drawLine(x, y, headingX, headingY);
+
+		if(labels)
+		{
+			g.setColor(Color.white);
+			g.drawString(String.format(Locale.ROOT, "%.1f b/s %03.0f°", speed, this.tracker.getHeading(slot)), headingX + 2, headingY);
+		}
+	}
+
+	private void resolveColors()
+	{
+		// The tracker only ever adds types, so colors resolved for earlier ones stay valid.
+		if(this.typeRamps.length < this.tracker.getTypeCount())
+		{
+			Color[][] typeRamps = new Color[this.tracker.getTypeCount()][];
+
+			for(int type = 0; type < typeRamps.length; type++)
+			{
+				Color color = HordeTypeStyle.forType(this.tracker.getTypeName(type)).getColor();
+				typeRamps[type] = this.ramps.computeIfAbsent(color, TrailLayer::createRamp);
+			}
+
+			this.typeRamps = typeRamps;
+		}
+	}
+
+	/**
+	 * Colors from opaque for the newest segment down to faint for the oldest.
+	 */
+	private static Color[] createRamp(Color color)
+	{
+		Color[] ramp = new Color[8];
+
+		for(int level = 0; level < ramp.length; level++)
+		{
+			ramp[level] = new Color(color.getRed(), color.getGreen(), color.getBlue(), 255 - level * 224 / (ramp.length - 1));
+		}
+
+		return ramp;
+	}
+}
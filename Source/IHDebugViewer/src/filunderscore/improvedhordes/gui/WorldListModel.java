@@ -0,0 +1,55 @@
+package filunderscore.improvedhordes.gui;
+
+import javax.swing.AbstractListModel;
+
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * List model backed directly by the published world state, without copying its rows. Elements are only created when
+ * the list asks for them, which with fixed cell sizes is just the rows on screen. Only use this from the event dispatch thread.
+ */
+public abstract class WorldListModel<E> extends AbstractListModel<E>
+{
+	private static final long serialVersionUID = -2817446032958271447L;
+	
+	private transient WorldHordeState world;
+	private int size;
+	
+	/**
+	 * Switches to another world state, firing one event for the rows both share and one for the rows added or removed.
+	 */
+	public void setWorld(WorldHordeState world)
+	{
+		int oldSize = this.size;
+		int newSize = world != null ? this.getSize(world) : 0;
+		
+		this.world = world;
+		this.size = newSize;
+		
+		int shared = Math.min(oldSize, newSize);
+		
+		if(shared > 0)
+			this.fireContentsChanged(this, 0, shared - 1);
+		
+		if(newSize > oldSize)
+			this.fireIntervalAdded(this, oldSize, newSize - 1);
+		else if(newSize < oldSize)
+			this.fireIntervalRemoved(this, newSize, oldSize - 1);
+	}
+	
+	@Override
+	public int getSize()
+	{
+		return this.size;
+	}
+	
+	@Override
+	public E getElementAt(int index)
+	{
+		return this.createElement(this.world, index);
+	}
+	
+	protected abstract int getSize(WorldHordeState world);
+	
+	protected abstract E createElement(WorldHordeState world, int index);
+}
@@ -0,0 +1,222 @@
+package filunderscore.improvedhordes.headless;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+import filunderscore.improvedhordes.gui.ClusterAggregateLayer;
+import filunderscore.improvedhordes.gui.IHRenderer;
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.record.CaptureReader;
+import filunderscore.improvedhordes.util.Vector2i;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Renders a recorded session to PNG frames and writes per-frame statistics without a display.
+ * The capture is split at keyframes into runs that decode independently, and the runs are processed on a
+ * fork-join pool, each with its own decoder, renderer and image.
+ */
+public final class CaptureAnalyzer
+{
+	public static final String STATS_FILE = "stats.csv";
+	
+	private static final int MIN_RUN_FRAMES = 64;
+	private static final Color BACKGROUND = Color.darkGray;
+	
+	private final CaptureReader capture;
+	private final Path output;
+	private final int imageSize;
+	private final int imageStride;
+	
+	private final int[] lengths;
+	private final long[] decodeNanos;
+	private final int[] players, clusters, clusterTypes, zones;
+	private final float[] totalDensities, maxDensities;
+	
+	/**
+	 * @param imageStride renders every n-th frame, or none at all when 0.
+	 */
+	public CaptureAnalyzer(CaptureReader capture, Path output, int imageSize, int imageStride)
+	{
+		this.capture = capture;
+		this.output = output;
+		this.imageSize = imageSize;
+		this.imageStride = imageStride;
+		
+		int frames = capture.getFrameCount();
+		
+		this.lengths = new int[frames];
+		this.decodeNanos = new long[frames];
+		this.players = new int[frames];
+		this.clusters = new int[frames];
+		this.clusterTypes = new int[frames];
+		this.zones = new int[frames];
+		this.totalDensities = new float[frames];
+		this.maxDensities = new float[frames];
+	}
+	
+	public void run(ForkJoinPool pool) throws IOException
+	{
+		Files.createDirectories(this.output);
+		
+		try
+		{
+			pool.invoke(new Run(0, this.capture.getFrameCount()));
+		}
+		catch(UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		
+		this.writeStats();
+	}
+	
+	private void writeStats() throws IOException
+	{
+		try(BufferedWriter out = Files.newBufferedWriter(this.output.resolve(STATS_FILE)))
+		{
+			out.write("frame,timestamp_ms,bytes,decode_us,players,clusters,cluster_types,zones,total_density,max_density");
+			out.newLine();
+			
+			for(int frame = 0; frame < this.lengths.length; frame++)
+			{
+				out.write(String.format(Locale.ROOT, "%d,%.3f,%d,%.1f,%d,%d,%d,%d,%.3f,%.3f",
+						frame, this.capture.getTimestamp(frame) / 1e6, this.lengths[frame], this.decodeNanos[frame] / 1e3,
+						this.players[frame], this.clusters[frame], this.clusterTypes[frame], this.zones[frame],
+						this.totalDensities[frame], this.maxDensities[frame]));
+				out.newLine();
+			}
+		}
+	}
+	
+	private void record(int frame, WorldHordeState world, long decodeNanos)
+	{
+		float total = 0.0f, max = 0.0f;
+		
+		for(int i = 0; i < world.getClusterCount(); i++)
+		{
+			float density = world.getClusterDensity(i);
+			
+			total += density;
+			max = Math.max(max, density);
+		}
+		
+		this.lengths[frame] = this.capture.getLength(frame);
+		this.decodeNanos[frame] = decodeNanos;
+		this.players[frame] = world.getPlayerCount();
+		this.clusters[frame] = world.getClusterCount();
+		this.clusterTypes[frame] = world.getClusterTypeCount();
+		this.zones[frame] = world.getZoneCount();
+		this.totalDensities[frame] = total;
+		this.maxDensities[frame] = max;
+	}
+	
+	private final class Run extends RecursiveAction
+	{
+		private static final long serialVersionUID = -2260547870214000315L;
+		
+		private final int from, to;
+		
+		private Run(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(this.to - this.from > MIN_RUN_FRAMES * 2)
+			{
+				// Only split at a keyframe, so the second half can be decoded without the first.
+				int split = capture.findKeyframe((this.from + this.to) >>> 1);
+				
+				if(split > this.from)
+				{
+					invokeAll(new Run(this.from, split), new Run(split, this.to));
+					return;
+				}
+			}
+			
+			try
+			{
+				this.process();
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		private void process() throws IOException
+		{
+			ImprovedHordesSimulation simulation = new ImprovedHordesSimulation();
+			IHRenderer renderer = new IHRenderer();
+			ClusterAggregateLayer clusterAggregateLayer = new ClusterAggregateLayer(ClusterAggregateLayer.DEFAULT_MIN_MARKER_PIXELS);
+			Vector2i imageBounds = new Vector2i(imageSize, imageSize);
+			BufferedImage image = null;
+			
+			simulation.setProtocol(capture.getProtocol());
+			
+			// Runs after the first start at a keyframe, which leaves the world size and zones to the last world frame before it.
+			int worldFrame = this.from > 0 ? capture.findWorldFrame(this.from - 1) : -1;
+			
+			if(worldFrame >= 0)
+				simulation.read(WireBuffer.wrap(capture.getFrame(worldFrame)));
+			
+			for(int frame = this.from; frame < this.to; frame++)
+			{
+				long start = System.nanoTime();
+				simulation.read(WireBuffer.wrap(capture.getFrame(frame)));
+				long decodeNanos = System.nanoTime() - start;
+				
+				WorldHordeState world = simulation.getWorld();
+				record(frame, world, decodeNanos);
+				
+				if(imageStride <= 0 || frame % imageStride != 0)
+					continue;
+				
+				if(image == null)
+					image = new BufferedImage(imageSize + 1, imageSize + 1, BufferedImage.TYPE_INT_RGB);
+				
+				Graphics2D g = image.createGraphics();
+				
+				try
+				{
+					g.setColor(BACKGROUND);
+					g.fillRect(0, 0, image.getWidth(), image.getHeight());
+					
+					renderer.setSizes(world.GetWorldSize(), imageBounds);
+					
+					if(clusterAggregateLayer.isActive(renderer))
+					{
+						world.drawBackground(renderer, g);
+						clusterAggregateLayer.draw(world, renderer, g);
+						world.drawPlayers(renderer, g);
+					}
+					else
+					{
+						world.draw(renderer, g);
+					}
+				}
+				finally
+				{
+					g.dispose();
+				}
+				
+				ImageIO.write(image, "png", output.resolve(String.format("frame-%06d.png", frame)).toFile());
+			}
+		}
+	}
+}
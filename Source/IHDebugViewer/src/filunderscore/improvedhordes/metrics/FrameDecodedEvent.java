@@ -0,0 +1,32 @@
+package filunderscore.improvedhordes.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("filunderscore.improvedhordes.FrameDecoded")
+@Label("Frame Decoded")
+@Category("IHDebugViewer")
+public final class FrameDecodedEvent extends Event
+{
+	@Label("Source")
+	public String source;
+	
+	@Label("Frame Size")
+	@DataAmount
+	public int bytes;
+	
+	@Label("Players")
+	public int players;
+	
+	@Label("Clusters")
+	public int clusters;
+	
+	@Label("Zones")
+	public int zones;
+	
+	@Label("Superseded Frame Dropped")
+	public boolean dropped;
+}
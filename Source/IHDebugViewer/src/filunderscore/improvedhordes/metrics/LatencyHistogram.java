@@ -0,0 +1,122 @@
+package filunderscore.improvedhordes.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock-free histogram of durations in power of two nanosecond buckets. Percentiles are reported as the upper bound
+ * of the bucket they fall in, so they are accurate to within a factor of two, which is plenty to tell a 1ms decode from a 30ms one.
+ * Besides lifetime totals, {@link #roll()} closes a window so recent percentiles can be read without old samples drowning them out.
+ */
+public final class LatencyHistogram
+{
+	private static final int BUCKETS = 64;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	private final long[] windowStart = new long[BUCKETS];
+	private final long[] window = new long[BUCKETS];
+	
+	public void record(long nanos)
+	{
+		this.counts.incrementAndGet(bucket(nanos));
+		this.max.accumulate(nanos);
+	}
+	
+	private static int bucket(long nanos)
+	{
+		return nanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+	}
+	
+	private static long upperBound(int bucket)
+	{
+		return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+	}
+	
+	public long getCount()
+	{
+		long count = 0;
+		
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			count += this.counts.get(i);
+		}
+		
+		return count;
+	}
+	
+	public long getMax()
+	{
+		return this.max.get();
+	}
+	
+	public long getPercentile(double quantile)
+	{
+		long[] counts = new long[BUCKETS];
+		
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = this.counts.get(i);
+		}
+		
+		return percentile(counts, quantile);
+	}
+	
+	/**
+	 * Percentile over the window closed by the last {@link #roll()}.
+	 */
+	public synchronized long getRecentPercentile(double quantile)
+	{
+		return percentile(this.window, quantile);
+	}
+	
+	public synchronized void roll()
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			long count = this.counts.get(i);
+			
+			this.window[i] = count - this.windowStart[i];
+			this.windowStart[i] = count;
+		}
+	}
+	
+	public synchronized void reset()
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			this.counts.set(i, 0);
+			this.windowStart[i] = 0;
+			this.window[i] = 0;
+		}
+		
+		this.max.reset();
+	}
+	
+	private static long percentile(long[] counts, double quantile)
+	{
+		long total = 0;
+		
+		for(long count : counts)
+		{
+			total += count;
+		}
+		
+		if(total == 0)
+			return 0;
+		
+		long rank = (long)Math.ceil(quantile * total);
+		long seen = 0;
+		
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts[i];
+			
+			if(seen >= rank)
+				return upperBound(i);
+		}
+		
+		return upperBound(BUCKETS - 1);
+	}
+}
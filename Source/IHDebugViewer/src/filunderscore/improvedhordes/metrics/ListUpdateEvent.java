@@ -0,0 +1,18 @@
+package filunderscore.improvedhordes.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("filunderscore.improvedhordes.ListUpdate")
+@Label("List Update")
+@Category("IHDebugViewer")
+public final class ListUpdateEvent extends Event
+{
+	@Label("Source")
+	public String source;
+	
+	@Label("Rows")
+	public int rows;
+}
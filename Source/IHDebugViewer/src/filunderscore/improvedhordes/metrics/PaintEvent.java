@@ -0,0 +1,24 @@
+package filunderscore.improvedhordes.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("filunderscore.improvedhordes.Paint")
+@Label("Paint")
+@Category("IHDebugViewer")
+public final class PaintEvent extends Event
+{
+	@Label("Source")
+	public String source;
+	
+	@Label("Frame Sequence")
+	public long sequence;
+	
+	@Label("Aggregated")
+	public boolean aggregated;
+	
+	@Label("Raster")
+	public boolean raster;
+}
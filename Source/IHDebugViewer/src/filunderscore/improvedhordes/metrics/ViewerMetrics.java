@@ -0,0 +1,270 @@
+package filunderscore.improvedhordes.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for one viewer connection. Writers on the ingest and Swing threads only touch
+ * adders and atomic buckets, rates are derived lazily whenever someone reads them at least a second apart.
+ */
+public final class ViewerMetrics implements ViewerMetricsMXBean
+{
+	private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final com.sun.management.ThreadMXBean THREADS = getAllocationThreadBean();
+	
+	private final String source;
+	
+	private final LongAdder framesDecoded = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final LongAdder framesDropped = new LongAdder();
+	private final LongAdder framesSkipped = new LongAdder();
+	private final LongAdder framesCorrupt = new LongAdder();
+	private final LongAdder connectionErrors = new LongAdder();
+	
+	private final LatencyHistogram decodeLatency = new LatencyHistogram();
+	private final LatencyHistogram paintLatency = new LatencyHistogram();
+	private final LatencyHistogram listUpdateLatency = new LatencyHistogram();
+	
+	private volatile long allocatedBytesPerFrame = -1;
+	
+	private long lastSampleNanos = System.nanoTime();
+	private long lastFrames, lastBytes;
+	private double framesPerSecond, bytesPerSecond;
+	
+	public ViewerMetrics(String source)
+	{
+		this.source = source;
+	}
+	
+	public String getSource()
+	{
+		return this.source;
+	}
+	
+	public void register()
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName("filunderscore.improvedhordes:type=ViewerMetrics,source=" + ObjectName.quote(this.source)));
+		}
+		catch(JMException e)
+		{
+			System.err.println("Failed to register metrics for " + this.source + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Bytes allocated by the calling thread so far, or -1 if the JVM does not track it.
+	 */
+	public static long getThreadAllocatedBytes()
+	{
+		return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+	}
+	
+	public void recordDecode(int bytes, long nanos, long allocatedBytes)
+	{
+		this.framesDecoded.increment();
+		this.bytesReceived.add(bytes);
+		this.decodeLatency.record(nanos);
+		
+		if(allocatedBytes >= 0)
+			this.allocatedBytesPerFrame = allocatedBytes;
+	}
+	
+	public void recordDropped()
+	{
+		this.framesDropped.increment();
+	}
+	
+	public void recordSkipped(int bytes)
+	{
+		this.framesSkipped.increment();
+		this.bytesReceived.add(bytes);
+	}
+	
+	/**
+	 * Records a frame that failed its checks and was dropped, along with any bytes discarded to find the next one.
+	 */
+	public void recordCorrupt(int bytes)
+	{
+		this.framesCorrupt.increment();
+		this.bytesReceived.add(bytes);
+	}
+	
+	/**
+	 * Records a connection that ended in an error, whether the socket closed or the stream could not be decoded.
+	 */
+	public void recordConnectionError()
+	{
+		this.connectionErrors.increment();
+	}
+	
+	public void recordPaint(long nanos)
+	{
+		this.paintLatency.record(nanos);
+	}
+	
+	public void recordListUpdate(long nanos)
+	{
+		this.listUpdateLatency.record(nanos);
+	}
+	
+	private synchronized void sample()
+	{
+		long now = System.nanoTime();
+		long elapsed = now - this.lastSampleNanos;
+		
+		if(elapsed < SAMPLE_INTERVAL_NANOS)
+			return;
+		
+		long frames = this.framesDecoded.sum(), bytes = this.bytesReceived.sum();
+		double seconds = elapsed / 1e9;
+		
+		this.framesPerSecond = (frames - this.lastFrames) / seconds;
+		this.bytesPerSecond = (bytes - this.lastBytes) / seconds;
+		
+		this.lastFrames = frames;
+		this.lastBytes = bytes;
+		this.lastSampleNanos = now;
+		
+		this.decodeLatency.roll();
+		this.paintLatency.roll();
+		this.listUpdateLatency.roll();
+	}
+	
+	@Override
+	public long getFramesDecoded()
+	{
+		return this.framesDecoded.sum();
+	}
+	
+	@Override
+	public long getBytesReceived()
+	{
+		return this.bytesReceived.sum();
+	}
+	
+	@Override
+	public long getFramesDropped()
+	{
+		return this.framesDropped.sum();
+	}
+	
+	@Override
+	public long getFramesSkipped()
+	{
+		return this.framesSkipped.sum();
+	}
+	
+	@Override
+	public long getFramesCorrupt()
+	{
+		return this.framesCorrupt.sum();
+	}
+	
+	@Override
+	public long getConnectionErrors()
+	{
+		return this.connectionErrors.sum();
+	}
+	
+	@Override
+	public synchronized double getFramesPerSecond()
+	{
+		this.sample();
+		return this.framesPerSecond;
+	}
+	
+	@Override
+	public synchronized double getBytesPerSecond()
+	{
+		this.sample();
+		return this.bytesPerSecond;
+	}
+	
+	@Override
+	public double getDecodeMillisP50()
+	{
+		return recentMillis(this.decodeLatency, 0.5);
+	}
+	
+	@Override
+	public double getDecodeMillisP99()
+	{
+		return recentMillis(this.decodeLatency, 0.99);
+	}
+	
+	@Override
+	public double getDecodeMillisMax()
+	{
+		return this.decodeLatency.getMax() / 1e6;
+	}
+	
+	@Override
+	public double getPaintMillisP50()
+	{
+		return recentMillis(this.paintLatency, 0.5);
+	}
+	
+	@Override
+	public double getPaintMillisP99()
+	{
+		return recentMillis(this.paintLatency, 0.99);
+	}
+	
+	@Override
+	public double getListUpdateMillisP99()
+	{
+		return recentMillis(this.listUpdateLatency, 0.99);
+	}
+	
+	private double recentMillis(LatencyHistogram histogram, double quantile)
+	{
+		this.sample();
+		return histogram.getRecentPercentile(quantile) / 1e6;
+	}
+	
+	@Override
+	public long getAllocatedBytesPerFrame()
+	{
+		return this.allocatedBytesPerFrame;
+	}
+	
+	@Override
+	public void reset()
+	{
+		this.framesDecoded.reset();
+		this.bytesReceived.reset();
+		this.framesDropped.reset();
+		this.framesSkipped.reset();
+		this.framesCorrupt.reset();
+		this.connectionErrors.reset();
+		
+		this.decodeLatency.reset();
+		this.paintLatency.reset();
+		this.listUpdateLatency.reset();
+		
+		synchronized(this)
+		{
+			this.lastFrames = this.lastBytes = 0;
+			this.lastSampleNanos = System.nanoTime();
+		}
+	}
+	
+	private static com.sun.management.ThreadMXBean getAllocationThreadBean()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		
+		if(!(threads instanceof com.sun.management.ThreadMXBean allocation) || !allocation.isThreadAllocatedMemorySupported())
+			return null;
+		
+		allocation.setThreadAllocatedMemoryEnabled(true);
+		return allocation;
+	}
+}
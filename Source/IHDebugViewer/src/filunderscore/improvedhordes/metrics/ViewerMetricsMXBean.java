@@ -0,0 +1,36 @@
+package filunderscore.improvedhordes.metrics;
+
+public interface ViewerMetricsMXBean
+{
+	long getFramesDecoded();
+	
+	long getBytesReceived();
+	
+	long getFramesDropped();
+	
+	long getFramesSkipped();
+	
+	long getFramesCorrupt();
+	
+	long getConnectionErrors();
+	
+	double getFramesPerSecond();
+	
+	double getBytesPerSecond();
+	
+	double getDecodeMillisP50();
+	
+	double getDecodeMillisP99();
+	
+	double getDecodeMillisMax();
+	
+	double getPaintMillisP50();
+	
+	double getPaintMillisP99();
+	
+	double getListUpdateMillisP99();
+	
+	long getAllocatedBytesPerFrame();
+	
+	void reset();
+}
@@ -0,0 +1,22 @@
+package filunderscore.improvedhordes.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+@FunctionalInterface
+public interface FrameSink
+{
+	// The frame can be decoded without any frame before it, apart from the last world frame.
+	int FLAG_KEYFRAME = 1;
+	// The frame carries the world size and zones.
+	int FLAG_WORLD = 2;
+	
+	void write(ByteBuffer source, int offset, int length, int flags) throws IOException;
+	
+	/**
+	 * Called whenever a connection is established, before its first frame.
+	 */
+	default void begin(int protocol) throws IOException
+	{
+	}
+}
@@ -0,0 +1,128 @@
+package filunderscore.improvedhordes.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Viewer side of transport negotiation. The viewer offers its codecs and protocols, then tells a negotiating server from
+ * a legacy one by peeking at the first int it receives, and returns the channel frames should be read from.
+ */
+public final class Handshake
+{
+	private final ReadableByteChannel channel;
+	private final int protocol;
+	
+	private Handshake(ReadableByteChannel channel, int protocol)
+	{
+		this.channel = channel;
+		this.protocol = protocol;
+	}
+	
+	public ReadableByteChannel getChannel()
+	{
+		return this.channel;
+	}
+	
+	public int getProtocol()
+	{
+		return this.protocol;
+	}
+	
+	/**
+	 * @param protocols bit mask of the protocols to offer besides the legacy one, which is always offered.
+	 */
+	public static Handshake negotiate(SocketChannel channel, boolean offerCompression, int protocols) throws IOException
+	{
+		if(!offerCompression && protocols == 0)
+			return new Handshake(channel, Protocol.LEGACY);
+		
+		int codecs = offerCompression ? 1 << Protocol.CODEC_DEFLATE : 0;
+		protocols |= 1 << Protocol.LEGACY;
+		
+		ByteBuffer hello = ByteBuffer.allocate(Protocol.CLIENT_HELLO_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		hello.putInt(Protocol.CLIENT_HELLO_MAGIC).putInt(Protocol.HANDSHAKE_VERSION).putInt(codecs).putInt(protocols).flip();
+		
+		while(hello.hasRemaining())
+			channel.write(hello);
+		
+		ByteBuffer peeked = ByteBuffer.allocate(Protocol.SERVER_HELLO_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, peeked, 4);
+		
+		if(peeked.getInt(0) != Protocol.SERVER_HELLO_MAGIC)
+			return new Handshake(new PrefixedChannel(channel, peeked.flip()), Protocol.LEGACY);
+		
+		readFully(channel, peeked, Protocol.SERVER_HELLO_SIZE);
+		int codec = peeked.getInt(4);
+		int protocol = peeked.getInt(8);
+		
+		if(!Protocol.isSupported(protocol))
+			throw new IOException("Server chose unknown protocol " + protocol + ".");
+		
+		switch(codec)
+		{
+		case Protocol.CODEC_NONE:
+			return new Handshake(channel, protocol);
+		case Protocol.CODEC_DEFLATE:
+			return new Handshake(new InflatingChannel(channel), protocol);
+		default:
+			throw new IOException("Server chose unknown codec " + codec + ".");
+		}
+	}
+	
+	private static void readFully(ReadableByteChannel channel, ByteBuffer buffer, int limit) throws IOException
+	{
+		buffer.limit(limit);
+		
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer) < 0)
+				throw new EOFException();
+		}
+	}
+	
+	/**
+	 * Hands back the bytes consumed while peeking before reading on from the channel.
+	 */
+	private static final class PrefixedChannel implements ReadableByteChannel
+	{
+		private final ReadableByteChannel channel;
+		private final ByteBuffer prefix;
+		
+		private PrefixedChannel(ReadableByteChannel channel, ByteBuffer prefix)
+		{
+			this.channel = channel;
+			this.prefix = prefix;
+		}
+		
+		@Override
+		public int read(ByteBuffer destination) throws IOException
+		{
+			if(!this.prefix.hasRemaining())
+				return this.channel.read(destination);
+			
+			int length = Math.min(this.prefix.remaining(), destination.remaining());
+			
+			destination.put(destination.position(), this.prefix, this.prefix.position(), length);
+			destination.position(destination.position() + length);
+			this.prefix.position(this.prefix.position() + length);
+			
+			return length;
+		}
+		
+		@Override
+		public boolean isOpen()
+		{
+			return this.channel.isOpen();
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			this.channel.close();
+		}
+	}
+}
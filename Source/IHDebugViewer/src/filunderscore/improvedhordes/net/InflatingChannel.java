@@ -0,0 +1,79 @@
+package filunderscore.improvedhordes.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates a deflate stream straight into the caller's buffer, so compressed frames land in the {@link WireBuffer}
+ * without an intermediate copy. Like a socket read, a read only blocks when nothing at all can be returned yet.
+ */
+final class InflatingChannel implements ReadableByteChannel
+{
+	private static final int INPUT_SIZE = 1 << 16;
+	
+	private final ReadableByteChannel channel;
+	private final ByteBuffer input = ByteBuffer.allocateDirect(INPUT_SIZE);
+	private final Inflater inflater = new Inflater(true);
+	
+	InflatingChannel(ReadableByteChannel channel)
+	{
+		this.channel = channel;
+		this.input.limit(0);
+		this.inflater.setInput(this.input);
+	}
+	
+	@Override
+	public int read(ByteBuffer destination) throws IOException
+	{
+		int produced = 0;
+		
+		try
+		{
+			while(destination.hasRemaining())
+			{
+				int inflated = this.inflater.inflate(destination);
+				produced += inflated;
+				
+				if(inflated > 0)
+					continue;
+				
+				if(this.inflater.finished())
+					break;
+				
+				if(!this.inflater.needsInput() || produced > 0)
+					break;
+				
+				this.input.clear();
+				int read = this.channel.read(this.input);
+				this.input.flip();
+				
+				if(read < 0)
+					break;
+				
+				this.inflater.setInput(this.input);
+			}
+		}
+		catch(DataFormatException e)
+		{
+			throw new IOException("Corrupt compressed stream.", e);
+		}
+		
+		return produced == 0 && destination.hasRemaining() ? -1 : produced;
+	}
+	
+	@Override
+	public boolean isOpen()
+	{
+		return this.channel.isOpen();
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		this.inflater.end();
+		this.channel.close();
+	}
+}
@@ -0,0 +1,113 @@
+package filunderscore.improvedhordes.net;
+
+import java.io.IOException;
+
+/**
+ * Finds the length of a legacy frame by walking only its counts and string lengths, which is a handful of reads
+ * even for frames with tens of thousands of clusters. The legacy format has no length prefix, so this is how
+ * frame boundaries are found without decoding.
+ */
+public final class LegacyFrameScanner
+{
+	private static final int PLAYER_BYTES = 4 * 4;
+	private static final int CLUSTER_BYTES = 4 * 4;
+	private static final int ZONE_BYTES = 8 * 4;
+	
+	private LegacyFrameScanner()
+	{
+	}
+	
+	/**
+	 * Returns the length of the frame starting {@code offset} bytes past the read position. When {@code wait} is set
+	 * this blocks until the whole frame is buffered, otherwise it returns -1 if any of it has not been received yet.
+	 * Throws if the counts or string lengths make the frame longer than {@link Protocol#FRAME_MAX_LENGTH}.
+	 */
+	public static int scan(WireBuffer in, int offset, boolean wait) throws IOException
+	{
+		int position = offset;
+		
+		if(!available(in, position + 8, wait))
+			return -1;
+		
+		int players = count(in.peekInt(position + 4));
+		position += 8;
+		
+		for(int i = 0; i < players; i++)
+		{
+			if(!available(in, position + PLAYER_BYTES, wait))
+				return -1;
+			
+			position = skipString(in, offset, position + PLAYER_BYTES, wait);
+			
+			if(position < 0)
+				return -1;
+		}
+		
+		if(!available(in, position + 4, wait))
+			return -1;
+		
+		int types = count(in.peekInt(position));
+		position += 4;
+		
+		for(int i = 0; i < types; i++)
+		{
+			position = skipString(in, offset, position, wait);
+			
+			if(position < 0 || !available(in, position + 4, wait))
+				return -1;
+			
+			position = advance(offset, position + 4, (long)count(in.peekInt(position)) * CLUSTER_BYTES);
+		}
+		
+		if(!available(in, position + 4, wait))
+			return -1;
+		
+		position = advance(offset, position + 4, (long)count(in.peekInt(position)) * ZONE_BYTES);
+		
+		if(!available(in, position, wait))
+			return -1;
+		
+		return position - offset;
+	}
+	
+	private static int skipString(WireBuffer in, int offset, int position, boolean wait) throws IOException
+	{
+		if(!available(in, position + 1, wait))
+			return -1;
+		
+		if(in.peekByte(position) == 0)
+			return position + 1;
+		
+		if(!available(in, position + 5, wait))
+			return -1;
+		
+		return advance(offset, position + 5, count(in.peekInt(position + 1)));
+	}
+	
+	private static int advance(int offset, int position, long bytes) throws IOException
+	{
+		long end = Math.addExact((long)position, bytes);
+		
+		if(end - offset > Protocol.FRAME_MAX_LENGTH)
+			throw new IOException("Corrupt frame, longer than " + Protocol.FRAME_MAX_LENGTH + " bytes.");
+		
+		return (int)end;
+	}
+	
+	private static boolean available(WireBuffer in, int bytes, boolean wait) throws IOException
+	{
+		if(!wait)
+			return in.isBuffered(bytes);
+		
+		in.ensure(bytes);
+		return true;
+	}
+	
+	private static int count(int value) throws IOException
+	{
+		if(value < 0)
+			throw new IOException("Corrupt frame, negative count " + value + ".");
+		
+		return value;
+	}
+}
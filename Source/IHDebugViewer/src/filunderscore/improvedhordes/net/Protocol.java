@@ -0,0 +1,82 @@
+package filunderscore.improvedhordes.net;
+
+public final class Protocol
+{
+	// Bare frames as written by WorldHordeState.Encode on the server.
+	public static final int LEGACY = 1;
+	
+	// Length prefixed messages: world size and zones once, then cluster keyframes with stable ids and deltas in between.
+	public static final int DELTA = 2;
+	
+	// Length prefixed, checksummed frames split into sections that can be validated, skipped and decoded independently.
+	public static final int SECTIONED = 3;
+	
+	// Every delta protocol message starts with its type and payload length.
+	public static final int MESSAGE_HEADER_SIZE = 8;
+	
+	// int world size, int zone count, then x, z, width and height per zone.
+	public static final int MESSAGE_WORLD = 1;
+	// Players, the cluster type table, then every cluster as id, type, x, y, z and density.
+	public static final int MESSAGE_KEYFRAME = 2;
+	// Players, cluster types appended to the table, removed ids, added clusters as in a keyframe, then moved clusters as id, x, y, z and density.
+	public static final int MESSAGE_DELTA = 3;
+	
+	// Every sectioned frame starts with magic, version, total length including this header, and the CRC32C of the rest of the frame.
+	public static final int FRAME_MAGIC = 0x46534849; // "IHSF"
+	public static final int FRAME_VERSION = 1;
+	public static final int FRAME_HEADER_SIZE = 16;
+	public static final int FRAME_LENGTH_OFFSET = 8;
+	public static final int FRAME_CHECKSUM_OFFSET = 12;
+	// A longer frame is taken as a corrupt header rather than waited for.
+	public static final int FRAME_MAX_LENGTH = 64 << 20;
+	
+	// After the header: world size, section count, then type, offset from the frame start and length per section.
+	public static final int SECTION_TABLE_OFFSET = FRAME_HEADER_SIZE + 8;
+	public static final int SECTION_ENTRY_SIZE = 12;
+	
+	// Player count, then x, y, z, gamestage and biome per player.
+	public static final int SECTION_PLAYERS = 1;
+	// Type count, then name and cluster count per type, then x, y, z and density per cluster, grouped by type in table order.
+	public static final int SECTION_CLUSTERS = 2;
+	// Zone count, then x, z, width and height per zone.
+	public static final int SECTION_ZONES = 3;
+	
+	// Sent by a viewer right after connecting: magic, version, a bit mask of the codecs it can decode and a bit mask of the protocols it speaks.
+	public static final int CLIENT_HELLO_MAGIC = 0x43564849; // "IHVC"
+	public static final int CLIENT_HELLO_SIZE = 16;
+	
+	// Sent by a server that understood the hello, before any frame: magic, then the codec and protocol the rest of the stream uses.
+	// A legacy server never reads the hello and starts with a frame instead, whose first int is the world size.
+	public static final int SERVER_HELLO_MAGIC = 0x53564849; // "IHVS"
+	public static final int SERVER_HELLO_SIZE = 12;
+	
+	public static final int HANDSHAKE_VERSION = 2;
+	
+	public static final int CODEC_NONE = 0;
+	// One raw deflate stream for the whole connection, sync flushed after every frame.
+	public static final int CODEC_DEFLATE = 1;
+	
+	private Protocol()
+	{
+	}
+	
+	public static boolean isSupported(int protocol)
+	{
+		return protocol == LEGACY || protocol == DELTA || protocol == SECTIONED;
+	}
+	
+	public static String getName(int protocol)
+	{
+		switch(protocol)
+		{
+		case LEGACY:
+			return "legacy";
+		case DELTA:
+			return "delta";
+		case SECTIONED:
+			return "sectioned";
+		default:
+			return "unknown (" + protocol + ")";
+		}
+	}
+}
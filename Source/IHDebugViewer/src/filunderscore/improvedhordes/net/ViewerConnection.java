@@ -0,0 +1,255 @@
+package filunderscore.improvedhordes.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation.ConnectionStatus;
+
+public final class ViewerConnection implements Runnable
+{
+	private static final int RECEIVE_BUFFER_SIZE = 1 << 20;
+	private static final int MAX_BUFFER_SIZE = 64 << 20;
+	private static final int BUFFERED_FRAMES = 3;
+
+	private final InetSocketAddress address;
+	private final ImprovedHordesSimulation simulation;
+	private final FrameSink recorder;
+	private final boolean latestWins;
+	private final boolean offerCompression;
+	private final int offerProtocols;
+
+	/**
+	 * @param latestWins skip any frame that already has a complete successor buffered, instead of decoding every frame in order.
+	 * @param offerCompression let the server choose a compressed stream. Legacy servers ignore the offer.
+	 * @param offerProtocols bit mask of the protocols besides the legacy one that the server may choose. Legacy servers ignore the offer.
+	 */
+	public ViewerConnection(InetSocketAddress address, ImprovedHordesSimulation simulation, FrameSink recorder, boolean latestWins, boolean offerCompression, int offerProtocols)
+	{
+		this.address = address;
+		this.simulation = simulation;
+		this.recorder = recorder;
+		this.latestWins = latestWins;
+		this.offerCompression = offerCompression;
+		this.offerProtocols = offerProtocols;
+	}
+
+	public Thread start()
+	{
+		return Thread.ofVirtual().name("IHDebugViewer-Ingest-" + this.address.getHostString() + ":" + this.address.getPort()).start(this);
+	}
+
+	@Override
+	public void run()
+	{
+		while(!Thread.currentThread().isInterrupted())
+		{
+			try
+			{
+				simulation.awaitStatus(ConnectionStatus.RECONNECTING);
+			}
+			catch(InterruptedException e)
+			{
+				return;
+			}
+
+			try(SocketChannel channel = SocketChannel.open())
+			{
+				channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+				channel.connect(this.address);
+
+				Handshake handshake = Handshake.negotiate(channel, this.offerCompression, this.offerProtocols);
+
+				try(ReadableByteChannel source = handshake.getChannel())
+				{
+					System.out.println("Connected to " + this.address);
+
+					int protocol = handshake.getProtocol();
+
+					simulation.setProtocol(protocol);
+
+					if(this.recorder != null)
+						this.recorder.begin(protocol);
+
+					if(!simulation.connected())
+						continue;
+
+					WireBuffer in = new WireBuffer(source);
+
+					while(true)
+					{
+						if(protocol == Protocol.DELTA)
+						{
+							if(this.latestWins)
+								this.skipSupersededDeltas(in);
+
+							simulation.read(in);
+
+							if(this.recorder != null)
+								in.transferFrame(this.recorder, getMessageFlags(in.getFrameInt(0)));
+						}
+						else if(protocol == Protocol.SECTIONED)
+						{
+							if(this.latestWins)
+								this.skipSupersededFrames(in);
+
+							simulation.read(in);
+
+							if(this.recorder != null)
+								in.transferFrame(this.recorder, FrameSink.FLAG_KEYFRAME);
+						}
+						else
+						{
+							if(this.latestWins)
+								this.skipSuperseded(in);
+
+							simulation.read(in);
+
+							if(this.recorder != null)
+								in.transferFrame(this.recorder, FrameSink.FLAG_KEYFRAME);
+						}
+					}
+				}
+			}
+			catch(Exception e)
+			{
+				System.err.println("Connection to " + this.address.getHostString() + ":" + this.address.getPort() + " failed: " + e);
+				simulation.getMetrics().recordConnectionError();
+				simulation.lostConnection();
+			}
+		}
+	}
+
+	private void skipSuperseded(WireBuffer in) throws IOException
+	{
+		in.beginFrame();
+
+		int length = LegacyFrameScanner.scan(in, 0, true);
+
+		// Waiting never leaves part of the frame unreceived, so anything else means the frame makes no sense.
+		if(length <= 0)
+			throw new IOException("Corrupt legacy frame.");
+
+		// Leave room for a few frames so a single read can pull in whatever backlog the socket holds.
+		in.reserve((int)Math.min(MAX_BUFFER_SIZE, (long)length * BUFFERED_FRAMES));
+
+		int next;
+
+		while((next = LegacyFrameScanner.scan(in, length, false)) >= 0)
+		{
+			in.beginFrame();
+			in.skip(length);
+
+			if(this.recorder != null)
+				in.transferFrame(this.recorder, FrameSink.FLAG_KEYFRAME);
+
+			simulation.getMetrics().recordSkipped(length);
+			length = next;
+		}
+	}
+
+	/**
+	 * Sectioned frames carry their length, so this only looks at headers. A header that does not look like one is left
+	 * for the decoder to resynchronize from.
+	 */
+	private void skipSupersededFrames(WireBuffer in) throws IOException
+	{
+		in.beginFrame();
+		in.ensure(Protocol.FRAME_HEADER_SIZE);
+
+		int length = in.peekInt(Protocol.FRAME_LENGTH_OFFSET);
+
+		if(!isFrameHeader(in, 0, length))
+			return;
+
+		in.reserve((int)Math.min(MAX_BUFFER_SIZE, (long)length * BUFFERED_FRAMES));
+
+		while(in.isBuffered(length + Protocol.FRAME_HEADER_SIZE))
+		{
+			int next = in.peekInt(length + Protocol.FRAME_LENGTH_OFFSET);
+
+			if(!isFrameHeader(in, length, next) || !in.isBuffered(length + next))
+				break;
+
+			in.beginFrame();
+			in.skip(length);
+
+			if(this.recorder != null)
+				in.transferFrame(this.recorder, FrameSink.FLAG_KEYFRAME);
+
+			simulation.getMetrics().recordSkipped(length);
+			length = next;
+		}
+	}
+
+	private static boolean isFrameHeader(WireBuffer in, int offset, int length)
+	{
+		return in.peekInt(offset) == Protocol.FRAME_MAGIC && length >= Protocol.SECTION_TABLE_OFFSET && length <= Protocol.FRAME_MAX_LENGTH;
+	}
+
+	/**
+	 * Delta messages only supersede each other up to a keyframe, so this skips every message before the last keyframe
+	 * that is already completely buffered. World messages are still decoded, since nothing later repeats them.
+	 */
+	private void skipSupersededDeltas(WireBuffer in) throws IOException
+	{
+		in.beginFrame();
+		in.ensure(Protocol.MESSAGE_HEADER_SIZE);
+
+		int keyframe = -1;
+		int offset = 0;
+
+		while(in.isBuffered(offset + Protocol.MESSAGE_HEADER_SIZE))
+		{
+			int length = Protocol.MESSAGE_HEADER_SIZE + in.peekInt(offset + 4);
+
+			if(length < Protocol.MESSAGE_HEADER_SIZE || !in.isBuffered(offset + length))
+				break;
+
+			if(offset > 0 && in.peekInt(offset) == Protocol.MESSAGE_KEYFRAME)
+				keyframe = offset;
+
+			offset += length;
+		}
+
+		while(keyframe > 0)
+		{
+			int type = in.peekInt(0);
+			int length = Protocol.MESSAGE_HEADER_SIZE + in.peekInt(4);
+
+			if(type == Protocol.MESSAGE_WORLD)
+			{
+				simulation.read(in);
+			}
+			else
+			{
+				in.beginFrame();
+				in.skip(length);
+
+				simulation.getMetrics().recordSkipped(length);
+			}
+
+			if(this.recorder != null)
+				in.transferFrame(this.recorder, getMessageFlags(type));
+
+			keyframe -= length;
+			in.beginFrame();
+		}
+	}
+
+	private static int getMessageFlags(int type)
+	{
+		switch(type)
+		{
+		case Protocol.MESSAGE_WORLD:
+			return FrameSink.FLAG_WORLD;
+		case Protocol.MESSAGE_KEYFRAME:
+			return FrameSink.FLAG_KEYFRAME;
+		default:
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package filunderscore.improvedhordes.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import filunderscore.improvedhordes.util.SymbolTable;
+
+public final class WireBuffer
+{
+	private static final int DEFAULT_CAPACITY = 1 << 20;
+
+	private final ReadableByteChannel channel;
+	private ByteBuffer buffer;
+	private int frameStart;
+
+	private byte[] stringBytes = new byte[256];
+
+	public WireBuffer(ReadableByteChannel channel)
+	{
+		this(channel, DEFAULT_CAPACITY);
+	}
+
+	public WireBuffer(ReadableByteChannel channel, int capacity)
+	{
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+		this.buffer.limit(0);
+	}
+
+	private WireBuffer(ByteBuffer data)
+	{
+		this.channel = null;
+		this.buffer = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public static WireBuffer wrap(ByteBuffer data)
+	{
+		return new WireBuffer(data);
+	}
+
+	public void beginFrame()
+	{
+		this.frameStart = this.buffer.position();
+	}
+
+	public int getFrameLength()
+	{
+		return this.buffer.position() - this.frameStart;
+	}
+
+	public void transferFrame(FrameSink sink, int flags) throws IOException
+	{
+		sink.write(this.buffer, this.frameStart, this.getFrameLength(), flags);
+	}
+	
+	/**
+	 * Reads an int at an offset from the start of the current frame, which must already have been read past.
+	 */
+	public int getFrameInt(int offset)
+	{
+		return this.buffer.getInt(this.frameStart + offset);
+	}
+
+	public void ensure(int bytes) throws IOException
+	{
+		if(this.buffer.remaining() < bytes)
+			this.fill(bytes);
+	}
+	
+	/**
+	 * Whether the given number of bytes past the read position has already been received, without reading from the channel.
+	 */
+	public boolean isBuffered(int bytes)
+	{
+		return this.buffer.remaining() >= bytes;
+	}
+	
+	/**
+	 * Grows the buffer so it can hold at least this many bytes, letting reads pull in several frames at once.
+	 */
+	public void reserve(int capacity)
+	{
+		if(this.channel == null || this.buffer.capacity() >= capacity)
+			return;
+		
+		int position = this.buffer.position() - this.frameStart;
+		ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+		
+		this.buffer.position(this.frameStart);
+		grown.put(this.buffer);
+		grown.flip();
+		grown.position(position);
+		
+		this.buffer = grown;
+		this.frameStart = 0;
+	}
+	
+	public byte peekByte(int offset)
+	{
+		return this.buffer.get(this.buffer.position() + offset);
+	}
+	
+	public int peekInt(int offset)
+	{
+		return this.buffer.getInt(this.buffer.position() + offset);
+	}
+	
+	/**
+	 * Returns the next {@code length} bytes, which must already be buffered, without reading past them. The slice shares
+	 * the buffer, so it is only valid until the next read.
+	 */
+	public ByteBuffer peekSlice(int length)
+	{
+		return this.buffer.slice(this.buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	public void skip(int bytes) throws IOException
+	{
+		this.ensure(bytes);
+		this.buffer.position(this.buffer.position() + bytes);
+	}
+
+	public byte readByte() throws IOException
+	{
+		this.ensure(1);
+		return this.buffer.get();
+	}
+
+	public boolean readBoolean() throws IOException
+	{
+		return this.readByte() != 0;
+	}
+
+	public int readInt() throws IOException
+	{
+		this.ensure(4);
+		return this.buffer.getInt();
+	}
+
+	public float readFloat() throws IOException
+	{
+		this.ensure(4);
+		return this.buffer.getFloat();
+	}
+
+	/**
+	 * Reads the count of a list whose entries take at least {@code entryBytes} each. A count that could not fit in a frame
+	 * is taken as corruption rather than allocated for.
+	 */
+	public int readCount(int entryBytes) throws IOException
+	{
+		int count = this.readInt();
+
+		if(count < 0 || (long)count * entryBytes > Protocol.FRAME_MAX_LENGTH)
+			throw new IOException("Corrupt frame, count " + count + " does not fit in a frame.");
+
+		return count;
+	}
+
+	public String readString(int length) throws IOException
+	{
+		checkLength(length);
+		this.ensure(length);
+
+		if(this.stringBytes.length < length)
+			this.stringBytes = new byte[Math.max(length, this.stringBytes.length * 2)];
+
+		this.buffer.get(this.stringBytes, 0, length);
+		return new String(this.stringBytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a string through a symbol table, which only allocates for names it has not seen before.
+	 */
+	public String readString(int length, SymbolTable symbols) throws IOException
+	{
+		checkLength(length);
+		this.ensure(length);
+
+		int position = this.buffer.position();
+		String value = symbols.intern(this.buffer, position, length);
+
+		this.buffer.position(position + length);
+		return value;
+	}
+
+	private static void checkLength(int length) throws IOException
+	{
+		if(length < 0 || length > Protocol.FRAME_MAX_LENGTH)
+			throw new IOException("Corrupt frame, length " + length + " does not fit in a frame.");
+	}
+
+	private void fill(int bytes) throws IOException
+	{
+		if(this.channel == null)
+			throw new EOFException();
+
+		// Keep everything from the start of the current frame so it stays contiguous.
+		int position = this.buffer.position() - this.frameStart;
+
+		if((long)position + bytes > Protocol.FRAME_MAX_LENGTH)
+			throw new IOException("Corrupt frame, " + bytes + " more bytes would exceed the maximum frame length.");
+
+		int required = position + bytes;
+
+		if(required > this.buffer.capacity())
+		{
+			int capacity = Math.max(this.buffer.capacity(), 1);
+
+			while(capacity < required)
+				capacity = (int)Math.min(capacity * 2L, Protocol.FRAME_MAX_LENGTH);
+
+			ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+
+			this.buffer.position(this.frameStart);
+			grown.put(this.buffer);
+			this.buffer = grown;
+		}
+		else
+		{
+			this.buffer.position(this.frameStart);
+			this.buffer.compact();
+		}
+
+		this.frameStart = 0;
+
+		while(this.buffer.position() < required)
+		{
+			if(this.channel.read(this.buffer) < 0)
+				throw new EOFException();
+		}
+
+		this.buffer.flip();
+		this.buffer.position(position);
+	}
+}
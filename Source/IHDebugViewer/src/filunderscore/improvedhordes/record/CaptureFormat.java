@@ -0,0 +1,47 @@
+package filunderscore.improvedhordes.record;
+
+import filunderscore.improvedhordes.net.FrameSink;
+
+/**
+ * Layout of a recorded session directory: numbered segment files holding raw frames back to back,
+ * and a single index file with one fixed-size entry per frame. All values are little-endian.
+ */
+public final class CaptureFormat
+{
+	public static final int VERSION = 1;
+	
+	// "IHCS"
+	public static final int SEGMENT_MAGIC = 0x53434849;
+	// magic, version, segment number, reserved
+	public static final int SEGMENT_HEADER_SIZE = 16;
+	
+	// "IHIX"
+	public static final int INDEX_MAGIC = 0x58494849;
+	// magic, version, protocol, reserved, start time in epoch millis, entry count
+	public static final int INDEX_HEADER_SIZE = 32;
+	public static final int INDEX_PROTOCOL_OFFSET = 8;
+	public static final int INDEX_START_TIME_OFFSET = 16;
+	public static final int INDEX_COUNT_OFFSET = 24;
+	
+	// timestamp in nanos since the start, offset in segment, segment number, length, flags, reserved
+	public static final int INDEX_ENTRY_SIZE = 32;
+	public static final int ENTRY_TIMESTAMP_OFFSET = 0;
+	public static final int ENTRY_OFFSET_OFFSET = 8;
+	public static final int ENTRY_SEGMENT_OFFSET = 16;
+	public static final int ENTRY_LENGTH_OFFSET = 20;
+	public static final int ENTRY_FLAGS_OFFSET = 24;
+	
+	public static final int FLAG_KEYFRAME = FrameSink.FLAG_KEYFRAME;
+	public static final int FLAG_WORLD = FrameSink.FLAG_WORLD;
+	
+	public static final String INDEX_FILE = "index.ihidx";
+	
+	private CaptureFormat()
+	{
+	}
+	
+	public static String getSegmentFile(int segment)
+	{
+		return String.format("segment-%05d.ihcap", segment);
+	}
+}
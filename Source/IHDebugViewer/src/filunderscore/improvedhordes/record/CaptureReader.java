@@ -0,0 +1,211 @@
+package filunderscore.improvedhordes.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import filunderscore.improvedhordes.util.IntList;
+
+/**
+ * Read-only view of a recorded session. Segments are mapped on first use and frames are handed out as
+ * slices of the mapping, so opening and seeking an hours-long capture does not read it into memory.
+ */
+public final class CaptureReader implements Closeable
+{
+	private final Path directory;
+	private final FileChannel indexChannel;
+	private final MappedByteBuffer index;
+
+	private final int protocol;
+	private final long startTime;
+	private final int frameCount;
+	private final int[] keyframes;
+	private final int[] worldFrames;
+
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+	public CaptureReader(Path directory) throws IOException
+	{
+		this.directory = directory;
+		this.indexChannel = FileChannel.open(directory.resolve(CaptureFormat.INDEX_FILE), StandardOpenOption.READ);
+		this.index = this.indexChannel.map(MapMode.READ_ONLY, 0, this.indexChannel.size());
+		this.index.order(ByteOrder.LITTLE_ENDIAN);
+
+		if(this.index.getInt(0) != CaptureFormat.INDEX_MAGIC)
+			throw new IOException(directory + " does not contain a capture index.");
+
+		if(this.index.getInt(4) != CaptureFormat.VERSION)
+			throw new IOException("Unsupported capture version " + this.index.getInt(4) + ".");
+
+		this.protocol = this.index.getInt(CaptureFormat.INDEX_PROTOCOL_OFFSET);
+		this.startTime = this.index.getLong(CaptureFormat.INDEX_START_TIME_OFFSET);
+
+		long entries = (this.index.capacity() - CaptureFormat.INDEX_HEADER_SIZE) / CaptureFormat.INDEX_ENTRY_SIZE;
+		this.frameCount = (int)Math.min(entries, this.index.getLong(CaptureFormat.INDEX_COUNT_OFFSET));
+
+		this.keyframes = this.findFlagged(CaptureFormat.FLAG_KEYFRAME);
+		this.worldFrames = this.findFlagged(CaptureFormat.FLAG_WORLD);
+	}
+
+	private int[] findFlagged(int flag)
+	{
+		IntList frames = new IntList();
+
+		for(int i = 0; i < this.frameCount; i++)
+		{
+			if((this.getFlags(i) & flag) != 0)
+				frames.add(i);
+		}
+
+		int[] result = new int[frames.size()];
+
+		for(int i = 0; i < result.length; i++)
+		{
+			result[i] = frames.get(i);
+		}
+
+		return result;
+	}
+
+	public int getProtocol()
+	{
+		return this.protocol;
+	}
+
+	public long getStartTime()
+	{
+		return this.startTime;
+	}
+
+	public int getFrameCount()
+	{
+		return this.frameCount;
+	}
+
+	public long getDuration()
+	{
+		return this.frameCount > 0 ? this.getTimestamp(this.frameCount - 1) : 0;
+	}
+
+	private int getEntry(int frame)
+	{
+		return CaptureFormat.INDEX_HEADER_SIZE + frame * CaptureFormat.INDEX_ENTRY_SIZE;
+	}
+
+	public long getTimestamp(int frame)
+	{
+		return this.index.getLong(this.getEntry(frame) + CaptureFormat.ENTRY_TIMESTAMP_OFFSET);
+	}
+
+	public int getFlags(int frame)
+	{
+		return this.index.getInt(this.getEntry(frame) + CaptureFormat.ENTRY_FLAGS_OFFSET);
+	}
+
+	public int getLength(int frame)
+	{
+		return this.index.getInt(this.getEntry(frame) + CaptureFormat.ENTRY_LENGTH_OFFSET);
+	}
+
+	public ByteBuffer getFrame(int frame) throws IOException
+	{
+		int entry = this.getEntry(frame);
+
+		MappedByteBuffer segment = this.getSegment(this.index.getInt(entry + CaptureFormat.ENTRY_SEGMENT_OFFSET));
+		int offset = (int)this.index.getLong(entry + CaptureFormat.ENTRY_OFFSET_OFFSET);
+
+		return segment.slice(offset, this.index.getInt(entry + CaptureFormat.ENTRY_LENGTH_OFFSET)).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Index of the last frame recorded at or before the given timestamp, or -1 if there is none.
+	 */
+	public int findFrame(long timestamp)
+	{
+		int low = 0, high = this.frameCount - 1;
+
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+
+			if(this.getTimestamp(mid) <= timestamp)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+
+		return high;
+	}
+
+	/**
+	 * Index of the last keyframe at or before the given frame, or -1 if there is none.
+	 */
+	public int findKeyframe(int frame)
+	{
+		return findLast(this.keyframes, frame);
+	}
+
+	/**
+	 * Index of the last world frame at or before the given frame, or -1 if there is none.
+	 */
+	public int findWorldFrame(int frame)
+	{
+		return findLast(this.worldFrames, frame);
+	}
+
+	private static int findLast(int[] frames, int frame)
+	{
+		int low = 0, high = frames.length - 1;
+
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+
+			if(frames[mid] <= frame)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+
+		return high >= 0 ? frames[high] : -1;
+	}
+
+	private synchronized MappedByteBuffer getSegment(int segment) throws IOException
+	{
+		while(this.segments.size() <= segment)
+		{
+			this.segments.add(null);
+		}
+
+		MappedByteBuffer buffer = this.segments.get(segment);
+
+		if(buffer == null)
+		{
+			try(FileChannel channel = FileChannel.open(this.directory.resolve(CaptureFormat.getSegmentFile(segment)), StandardOpenOption.READ))
+			{
+				buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			}
+
+			if(buffer.order(ByteOrder.LITTLE_ENDIAN).getInt(0) != CaptureFormat.SEGMENT_MAGIC)
+				throw new IOException("Segment " + segment + " is not a capture segment.");
+
+			this.segments.set(segment, buffer);
+		}
+
+		return buffer;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.indexChannel.close();
+	}
+}
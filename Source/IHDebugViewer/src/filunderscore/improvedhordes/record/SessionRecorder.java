@@ -0,0 +1,190 @@
+package filunderscore.improvedhordes.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import filunderscore.improvedhordes.net.FrameSink;
+
+/**
+ * Appends raw frames to memory-mapped capture segments. Each frame is copied once, straight from the
+ * receive buffer into the mapped page cache, so recording never goes through the heap or a write call.
+ */
+public final class SessionRecorder implements FrameSink, Closeable
+{
+	public static final int DEFAULT_SEGMENT_SIZE = 256 << 20;
+
+	private static final int INDEX_CHUNK_ENTRIES = 1 << 16;
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long startNanos;
+
+	private FileChannel segmentChannel;
+	private MappedByteBuffer segment;
+	private int segmentNumber = -1;
+
+	private final FileChannel indexChannel;
+	private final MappedByteBuffer indexHeader;
+	private MappedByteBuffer indexChunk;
+	private long indexChunkFirstEntry;
+	private long entryCount;
+
+	private int protocol;
+	private boolean closed;
+
+	public SessionRecorder(Path directory, int segmentSize, int protocol) throws IOException
+	{
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+		this.startNanos = System.nanoTime();
+
+		this.indexChannel = FileChannel.open(directory.resolve(CaptureFormat.INDEX_FILE),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		this.indexHeader = map(this.indexChannel, 0, CaptureFormat.INDEX_HEADER_SIZE);
+		this.indexHeader.putInt(0, CaptureFormat.INDEX_MAGIC);
+		this.indexHeader.putInt(4, CaptureFormat.VERSION);
+		this.indexHeader.putInt(CaptureFormat.INDEX_PROTOCOL_OFFSET, protocol);
+		this.protocol = protocol;
+		this.indexHeader.putLong(CaptureFormat.INDEX_START_TIME_OFFSET, System.currentTimeMillis());
+		this.indexHeader.putLong(CaptureFormat.INDEX_COUNT_OFFSET, 0);
+
+		this.mapIndexChunk(0);
+	}
+
+	public Path getDirectory()
+	{
+		return this.directory;
+	}
+
+	@Override
+	public synchronized void begin(int protocol) throws IOException
+	{
+		if(this.closed || protocol == this.protocol)
+			return;
+
+		if(this.entryCount == 0)
+		{
+			this.protocol = protocol;
+			this.indexHeader.putInt(CaptureFormat.INDEX_PROTOCOL_OFFSET, protocol);
+			return;
+		}
+
+		// A capture holds a single protocol, so a reconnect that negotiated another one ends the recording.
+		System.err.println("Stopped recording to " + this.directory + ", the server switched from protocol " + this.protocol + " to " + protocol + ".");
+		this.close();
+	}
+
+	@Override
+	public synchronized void write(ByteBuffer source, int offset, int length, int flags) throws IOException
+	{
+		if(this.closed)
+			return;
+
+		if(this.segment == null || this.segment.remaining() < length)
+			this.nextSegment(length);
+
+		int position = this.segment.position();
+		this.segment.put(position, source, offset, length);
+		this.segment.position(position + length);
+
+		if(this.entryCount - this.indexChunkFirstEntry == INDEX_CHUNK_ENTRIES)
+			this.mapIndexChunk(this.entryCount);
+
+		int entry = (int)(this.entryCount - this.indexChunkFirstEntry) * CaptureFormat.INDEX_ENTRY_SIZE;
+
+		this.indexChunk.putLong(entry + CaptureFormat.ENTRY_TIMESTAMP_OFFSET, System.nanoTime() - this.startNanos);
+		this.indexChunk.putLong(entry + CaptureFormat.ENTRY_OFFSET_OFFSET, position);
+		this.indexChunk.putInt(entry + CaptureFormat.ENTRY_SEGMENT_OFFSET, this.segmentNumber);
+		this.indexChunk.putInt(entry + CaptureFormat.ENTRY_LENGTH_OFFSET, length);
+		this.indexChunk.putInt(entry + CaptureFormat.ENTRY_FLAGS_OFFSET, flags);
+
+		// Publish the count last so a reader of a live capture never sees a half written entry.
+		this.indexHeader.putLong(CaptureFormat.INDEX_COUNT_OFFSET, ++this.entryCount);
+	}
+
+	private void nextSegment(int length) throws IOException
+	{
+		this.closeSegment();
+
+		this.segmentNumber++;
+		this.segmentChannel = FileChannel.open(this.directory.resolve(CaptureFormat.getSegmentFile(this.segmentNumber)),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		this.segment = map(this.segmentChannel, 0, Math.max(this.segmentSize, CaptureFormat.SEGMENT_HEADER_SIZE + length));
+		this.segment.putInt(CaptureFormat.SEGMENT_MAGIC);
+		this.segment.putInt(CaptureFormat.VERSION);
+		this.segment.putInt(this.segmentNumber);
+		this.segment.putInt(0);
+	}
+
+	private void closeSegment() throws IOException
+	{
+		if(this.segment == null)
+			return;
+
+		int used = this.segment.position();
+
+		this.segment.force();
+		this.segment = null;
+
+		truncate(this.segmentChannel, used);
+		this.segmentChannel.close();
+	}
+
+	private void mapIndexChunk(long firstEntry) throws IOException
+	{
+		if(this.indexChunk != null)
+			this.indexChunk.force();
+
+		this.indexChunkFirstEntry = firstEntry;
+		this.indexChunk = map(this.indexChannel, CaptureFormat.INDEX_HEADER_SIZE + firstEntry * CaptureFormat.INDEX_ENTRY_SIZE,
+				(long)INDEX_CHUNK_ENTRIES * CaptureFormat.INDEX_ENTRY_SIZE);
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if(this.closed)
+			return;
+
+		this.closed = true;
+		this.closeSegment();
+
+		this.indexChunk.force();
+		this.indexHeader.force();
+		this.indexChunk = null;
+
+		truncate(this.indexChannel, CaptureFormat.INDEX_HEADER_SIZE + this.entryCount * CaptureFormat.INDEX_ENTRY_SIZE);
+		this.indexChannel.close();
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException
+	{
+		MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, position, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		return buffer;
+	}
+
+	private static void truncate(FileChannel channel, long size)
+	{
+		try
+		{
+			channel.truncate(size);
+		}
+		catch(IOException e)
+		{
+			// Some platforms refuse to truncate a file that is still mapped. The index holds every
+			// frame's length, so the zeroed tail is never read back.
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package filunderscore.improvedhordes.replay;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Playback position within a capture in nanoseconds, advancing with wall time scaled by the playback speed.
+ */
+public final class ReplayClock
+{
+	private final long duration;
+	
+	private long anchorPosition;
+	private long anchorNanos;
+	private double speed = 1.0;
+	private boolean paused = true;
+	
+	private long version;
+	
+	public ReplayClock(long duration)
+	{
+		this.duration = duration;
+	}
+	
+	public long getDuration()
+	{
+		return this.duration;
+	}
+	
+	public synchronized long getPosition()
+	{
+		if(this.paused)
+			return this.anchorPosition;
+		
+		return Math.min(this.duration, this.anchorPosition + (long)((System.nanoTime() - this.anchorNanos) * this.speed));
+	}
+	
+	public synchronized boolean isPaused()
+	{
+		return this.paused;
+	}
+	
+	public synchronized double getSpeed()
+	{
+		return this.speed;
+	}
+	
+	public synchronized void play()
+	{
+		if(!this.paused)
+			return;
+		
+		if(this.anchorPosition >= this.duration)
+			this.anchorPosition = 0;
+		
+		this.anchorNanos = System.nanoTime();
+		this.paused = false;
+		this.changed();
+	}
+	
+	public synchronized void pause()
+	{
+		if(this.paused)
+			return;
+		
+		this.anchorPosition = this.getPosition();
+		this.paused = true;
+		this.changed();
+	}
+	
+	public synchronized void setSpeed(double speed)
+	{
+		this.anchorPosition = this.getPosition();
+		this.anchorNanos = System.nanoTime();
+		this.speed = speed;
+		this.changed();
+	}
+	
+	public synchronized void seek(long position)
+	{
+		this.anchorPosition = Math.max(0, Math.min(this.duration, position));
+		this.anchorNanos = System.nanoTime();
+		this.changed();
+	}
+	
+	private void changed()
+	{
+		this.version++;
+		this.notifyAll();
+	}
+	
+	/**
+	 * Blocks until playback reaches the given position, or until the clock is paused, seeked or changes speed.
+	 * A negative position waits for the next change only.
+	 */
+	public synchronized void await(long position) throws InterruptedException
+	{
+		long version = this.version;
+		
+		while(version == this.version)
+		{
+			if(this.paused || position < 0)
+			{
+				this.wait();
+				continue;
+			}
+			
+			long remaining = (long)((position - this.getPosition()) / this.speed);
+			
+			if(remaining <= 0)
+				return;
+			
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+	}
+}
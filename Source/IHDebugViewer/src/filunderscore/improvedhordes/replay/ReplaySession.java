@@ -0,0 +1,116 @@
+package filunderscore.improvedhordes.replay;
+
+import java.io.IOException;
+
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.record.CaptureReader;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
+
+/**
+ * Feeds a recorded capture through the simulation in step with a {@link ReplayClock}, in place of a live connection.
+ */
+public final class ReplaySession implements Runnable
+{
+	private final CaptureReader capture;
+	private final ImprovedHordesSimulation simulation;
+	private final ReplayClock clock;
+	
+	private int current = -1;
+	
+	public ReplaySession(CaptureReader capture, ImprovedHordesSimulation simulation)
+	{
+		this.capture = capture;
+		this.simulation = simulation;
+		this.clock = new ReplayClock(capture.getDuration());
+	}
+	
+	public ReplayClock getClock()
+	{
+		return this.clock;
+	}
+	
+	public Thread start()
+	{
+		Thread thread = new Thread(this, "IHDebugViewer-Replay");
+		thread.setDaemon(true);
+		thread.start();
+		
+		return thread;
+	}
+	
+	@Override
+	public void run()
+	{
+		this.simulation.setProtocol(this.capture.getProtocol());
+		this.simulation.startReplay();
+		
+		try
+		{
+			while(!Thread.currentThread().isInterrupted())
+			{
+				int target = Math.max(0, this.capture.findFrame(this.clock.getPosition()));
+				
+				if(target != this.current && target < this.capture.getFrameCount())
+					this.show(target);
+				
+				int next = target + 1;
+				
+				if(next >= this.capture.getFrameCount())
+				{
+					this.clock.pause();
+					this.clock.await(-1);
+				}
+				else
+				{
+					this.clock.await(this.capture.getTimestamp(next));
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(Exception e)
+		{
+			System.err.println("Replay stopped: " + e);
+			this.simulation.lostConnection();
+		}
+	}
+	
+	/**
+	 * Brings the simulation to the state as of the given frame.
+	 */
+	void show(int target) throws IOException
+	{
+		int keyframe = this.capture.findKeyframe(target);
+		
+		// Keep applying frames forward when possible, otherwise restart from the closest keyframe.
+		int start = this.current >= keyframe && this.current < target ? this.current + 1 : Math.max(0, keyframe);
+		
+		if(start != this.current + 1)
+		{
+			this.simulation.startOver();
+			
+			// Keyframes leave the world size and zones to the last world frame before them, which applies as of the keyframe.
+			if(start > 0)
+			{
+				int world = this.capture.findWorldFrame(start - 1);
+				
+				if(world >= 0)
+					this.read(world, this.capture.getTimestamp(start));
+			}
+		}
+		
+		for(int frame = start; frame <= target; frame++)
+		{
+			this.read(frame, this.capture.getTimestamp(frame));
+		}
+		
+		this.current = target;
+	}
+	
+	private void read(int frame, long timestamp) throws IOException
+	{
+		this.simulation.read(WireBuffer.wrap(this.capture.getFrame(frame)), timestamp);
+	}
+}
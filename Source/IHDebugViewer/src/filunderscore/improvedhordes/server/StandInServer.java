@@ -0,0 +1,416 @@
+package filunderscore.improvedhordes.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.synthetic.DeltaFrameEncoder;
+import filunderscore.improvedhordes.synthetic.LegacyFrameEncoder;
+import filunderscore.improvedhordes.synthetic.Movement;
+import filunderscore.improvedhordes.synthetic.SectionedFrameEncoder;
+import filunderscore.improvedhordes.synthetic.SyntheticWorld;
+
+/**
+ * Load generating replacement for the game's HordeViewerDebugServer. It serves a {@link SyntheticWorld} at a fixed frame
+ * rate, to as many viewers as are allowed to connect, in the legacy wire format or, to viewers that offer it, the delta or
+ * sectioned protocol.
+ */
+public final class StandInServer implements Runnable
+{
+	private static final int SEND_BUFFER_SIZE = 1 << 20;
+	private static final int HELLO_TIMEOUT_MILLIS = 1000;
+	private static final int HELLO_V1_SIZE = 12;
+	
+	private final ServerSocketChannel listener;
+	private final SyntheticWorld world;
+	private final int fps;
+	private final int maxClients;
+	private final boolean compression;
+	private final int protocol;
+	private final int keyframeInterval;
+	private final float moveThreshold;
+	
+	private final LegacyFrameEncoder encoder = new LegacyFrameEncoder();
+	private final SectionedFrameEncoder sectionedEncoder = new SectionedFrameEncoder();
+	private final List<Client> clients = new CopyOnWriteArrayList<>();
+	// Connected viewers plus those still handshaking, so slow handshakes cannot exceed the client limit.
+	private final AtomicInteger slots = new AtomicInteger();
+	
+	/**
+	 * @param compression whether to deflate the stream for viewers that offer it. Viewers that send no hello always get bare frames.
+	 * @param protocol the protocol to use for viewers that offer it. The delta protocol sends a keyframe every {@code keyframeInterval}
+	 * frames and resends clusters once they moved more than {@code moveThreshold} blocks.
+	 */
+	public StandInServer(InetSocketAddress address, SyntheticWorld world, int fps, int maxClients, boolean compression, int protocol,
+			int keyframeInterval, float moveThreshold) throws IOException
+	{
+		this.world = world;
+		this.fps = fps;
+		this.maxClients = maxClients;
+		this.compression = compression;
+		this.protocol = protocol;
+		this.keyframeInterval = keyframeInterval;
+		this.moveThreshold = moveThreshold;
+		
+		this.listener = ServerSocketChannel.open();
+		this.listener.bind(address);
+	}
+	
+	public void start()
+	{
+		Thread acceptor = new Thread(this::accept, "StandInServer-Accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	
+	private void accept()
+	{
+		System.out.println("Listening on " + this.listener.socket().getLocalSocketAddress());
+		
+		while(this.listener.isOpen())
+		{
+			try
+			{
+				SocketChannel client = this.listener.accept();
+				
+				if(this.slots.incrementAndGet() > this.maxClients)
+				{
+					this.slots.decrementAndGet();
+					
+					System.out.println("Rejected " + client.getRemoteAddress() + ", already serving " + this.maxClients + " clients.");
+					client.close();
+					continue;
+				}
+				
+				// Waiting for a hello that may never come must not hold up other viewers.
+				Thread.ofVirtual().name("StandInServer-Handshake").start(() -> this.handshake(client));
+			}
+			catch(IOException e)
+			{
+				if(this.listener.isOpen())
+					System.err.println("Failed to accept a client: " + e.getMessage());
+			}
+		}
+	}
+	
+	private void handshake(SocketChannel channel)
+	{
+		try
+		{
+			channel.socket().setSendBufferSize(SEND_BUFFER_SIZE);
+			channel.socket().setTcpNoDelay(true);
+			
+			ByteBuffer hello = this.compression || this.protocol != Protocol.LEGACY ? this.readHello(channel) : null;
+			
+			boolean deflate = this.compression && hello != null && (hello.getInt(8) & (1 << Protocol.CODEC_DEFLATE)) != 0;
+			boolean offered = hello != null && hello.capacity() == Protocol.CLIENT_HELLO_SIZE && (hello.getInt(12) & (1 << this.protocol)) != 0;
+			int protocol = offered ? this.protocol : Protocol.LEGACY;
+			
+			// Viewers that get nothing but bare legacy frames also work without a server hello, like with the game's server.
+			if(deflate || protocol != Protocol.LEGACY)
+			{
+				ByteBuffer reply = ByteBuffer.allocate(Protocol.SERVER_HELLO_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				reply.putInt(Protocol.SERVER_HELLO_MAGIC).putInt(deflate ? Protocol.CODEC_DEFLATE : Protocol.CODEC_NONE).putInt(protocol).flip();
+				
+				while(reply.hasRemaining())
+					channel.write(reply);
+			}
+			
+			this.clients.add(new Client(channel, deflate, protocol, protocol == Protocol.DELTA ? new DeltaFrameEncoder(this.keyframeInterval, this.moveThreshold) : null));
+			System.out.println("New client connected from " + channel.getRemoteAddress() + " using " + Protocol.getName(protocol) + " frames" + (deflate ? " and deflate." : "."));
+		}
+		catch(IOException e)
+		{
+			System.err.println("Handshake failed: " + e.getMessage());
+			close(channel);
+			
+			this.slots.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Waits briefly for a viewer hello. Returns it, or null if none arrived. Version 1 hellos lack the protocol mask.
+	 */
+	private ByteBuffer readHello(SocketChannel channel) throws IOException
+	{
+		byte[] hello = new byte[Protocol.CLIENT_HELLO_SIZE];
+		int length = HELLO_V1_SIZE;
+		
+		channel.socket().setSoTimeout(HELLO_TIMEOUT_MILLIS);
+		
+		try
+		{
+			InputStream in = channel.socket().getInputStream();
+			int read = 0;
+			
+			while(read < length)
+			{
+				int count = in.read(hello, read, length - read);
+				
+				if(count < 0)
+					throw new EOFException();
+				
+				read += count;
+				
+				if(read == HELLO_V1_SIZE && ByteBuffer.wrap(hello).order(ByteOrder.LITTLE_ENDIAN).getInt(4) >= Protocol.HANDSHAKE_VERSION)
+					length = Protocol.CLIENT_HELLO_SIZE;
+			}
+		}
+		catch(SocketTimeoutException e)
+		{
+			return null;
+		}
+		finally
+		{
+			channel.socket().setSoTimeout(0);
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(hello, 0, length).slice().order(ByteOrder.LITTLE_ENDIAN);
+		
+		return buffer.getInt(0) == Protocol.CLIENT_HELLO_MAGIC ? buffer : null;
+	}
+	
+	@Override
+	public void run()
+	{
+		long interval = TimeUnit.SECONDS.toNanos(1) / this.fps;
+		long next = System.nanoTime();
+		
+		long frames = 0, bytes = 0;
+		long reportAt = next + TimeUnit.SECONDS.toNanos(5);
+		
+		while(!Thread.currentThread().isInterrupted())
+		{
+			this.world.step(1.0f / this.fps);
+			ByteBuffer frame = null, sectionedFrame = null;
+			
+			for(Client client : this.clients)
+			{
+				// Legacy and sectioned frames are the same for every viewer, delta frames depend on what each one was sent before.
+				if(client.encoder != null)
+					bytes += this.send(client, client.encoder.encode(this.world));
+				else if(client.protocol == Protocol.SECTIONED)
+				{
+					if(sectionedFrame == null)
+						sectionedFrame = this.sectionedEncoder.encode(this.world);
+					
+					bytes += this.send(client, sectionedFrame.duplicate());
+				}
+				else
+				{
+					if(frame == null)
+						frame = this.encoder.encode(this.world);
+					
+					bytes += this.send(client, frame.duplicate());
+				}
+			}
+			
+			frames++;
+			next += interval;
+			
+			long now = System.nanoTime();
+			
+			if(now >= reportAt)
+			{
+				System.out.println(String.format(Locale.ROOT, "%d frames, %.1f MiB sent to %d clients", frames, bytes / (1024.0 * 1024.0), this.clients.size()));
+				
+				frames = bytes = 0;
+				reportAt = now + TimeUnit.SECONDS.toNanos(5);
+			}
+			
+			if(next > now)
+				LockSupport.parkNanos(next - now);
+			else
+				next = now; // Fell behind, so drop the backlog instead of bursting to catch up.
+		}
+	}
+	
+	private int send(Client client, ByteBuffer frame)
+	{
+		try
+		{
+			return client.send(frame);
+		}
+		catch(IOException e)
+		{
+			System.out.println("Client disconnected.");
+			client.close();
+			
+			if(this.clients.remove(client))
+				this.slots.decrementAndGet();
+			
+			return 0;
+		}
+	}
+	
+	private static void close(SocketChannel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+		catch(IOException ignored)
+		{
+		}
+	}
+	
+	private static final class Client
+	{
+		private static final int OUTPUT_SIZE = 1 << 16;
+		
+		private final SocketChannel channel;
+		private final Deflater deflater;
+		private final ByteBuffer output;
+		private final int protocol;
+		private final DeltaFrameEncoder encoder;
+		
+		private Client(SocketChannel channel, boolean compressed, int protocol, DeltaFrameEncoder encoder)
+		{
+			this.channel = channel;
+			this.protocol = protocol;
+			this.encoder = encoder;
+			this.deflater = compressed ? new Deflater(Deflater.BEST_SPEED, true) : null;
+			this.output = compressed ? ByteBuffer.allocateDirect(OUTPUT_SIZE) : null;
+		}
+		
+		/**
+		 * Writes one frame and returns the number of bytes that went over the wire.
+		 */
+		private int send(ByteBuffer frame) throws IOException
+		{
+			if(this.deflater == null)
+				return this.write(frame);
+			
+			int sent = 0, produced;
+			this.deflater.setInput(frame);
+			
+			// Sync flush after each frame, so the viewer can inflate it completely without waiting for the next one.
+			do
+			{
+				this.output.clear();
+				produced = this.deflater.deflate(this.output, Deflater.SYNC_FLUSH);
+				sent += this.write(this.output.flip());
+			}
+			while(produced == OUTPUT_SIZE || frame.hasRemaining());
+			
+			return sent;
+		}
+		
+		private int write(ByteBuffer buffer) throws IOException
+		{
+			int length = buffer.remaining();
+			
+			while(buffer.hasRemaining())
+				this.channel.write(buffer);
+			
+			return length;
+		}
+		
+		private void close()
+		{
+			if(this.deflater != null)
+				this.deflater.end();
+			
+			StandInServer.close(this.channel);
+		}
+	}
+	
+	public static void main(String[] args) throws IOException
+	{
+		int port = 9000, worldSize = 6144, players = 4, clusters = 2000, zones = 1000, fps = 10, maxClients = 4;
+		int keyframeInterval = 100;
+		float moveThreshold = 0.5f, churn = 0.0f;
+		boolean compression = false;
+		int protocol = Protocol.LEGACY;
+		long seed = 1;
+		Movement movement = Movement.DRIFT;
+		
+		for(int i = 0; i < args.length; i++)
+		{
+			switch(args[i])
+			{
+			case "--port":
+				port = Integer.parseInt(args[++i]);
+				break;
+			case "--world-size":
+				worldSize = Integer.parseInt(args[++i]);
+				break;
+			case "--players":
+				players = Integer.parseInt(args[++i]);
+				break;
+			case "--clusters":
+				clusters = Integer.parseInt(args[++i]);
+				break;
+			case "--zones":
+				zones = Integer.parseInt(args[++i]);
+				break;
+			case "--fps":
+				fps = Integer.parseInt(args[++i]);
+				break;
+			case "--clients":
+				maxClients = Integer.parseInt(args[++i]);
+				break;
+			case "--movement":
+				movement = Movement.valueOf(args[++i].toUpperCase(Locale.ROOT));
+				break;
+			case "--compression":
+				compression = switch(args[++i])
+				{
+				case "deflate" -> true;
+				case "none" -> false;
+				default -> throw new IllegalArgumentException("Unknown compression " + args[i]);
+				};
+				break;
+			case "--protocol":
+				protocol = switch(args[++i])
+				{
+				case "sectioned" -> Protocol.SECTIONED;
+				case "delta" -> Protocol.DELTA;
+				case "legacy" -> Protocol.LEGACY;
+				default -> throw new IllegalArgumentException("Unknown protocol " + args[i]);
+				};
+				break;
+			case "--keyframe-interval":
+				keyframeInterval = Integer.parseInt(args[++i]);
+				break;
+			case "--move-threshold":
+				moveThreshold = Float.parseFloat(args[++i]);
+				break;
+			case "--churn":
+				churn = Float.parseFloat(args[++i]);
+				break;
+			case "--seed":
+				seed = Long.parseLong(args[++i]);
+				break;
+			default:
+				System.err.println("Unknown argument " + args[i]);
+				System.err.println("Usage: StandInServer [--port <port>] [--world-size <blocks>] [--players <n>] [--clusters <n>] [--zones <n>]");
+				System.err.println("                     [--fps <n>] [--clients <n>] [--movement static|drift|swarm] [--compression none|deflate] [--seed <n>]");
+				System.err.println("                     [--protocol legacy|delta|sectioned] [--keyframe-interval <frames>] [--move-threshold <blocks>] [--churn <clusters per second>]");
+				return;
+			}
+		}
+		
+		SyntheticWorld world = new SyntheticWorld(seed, worldSize, players, clusters, zones);
+		world.setMovement(movement);
+		world.setChurn(churn);
+		
+		StandInServer server = new StandInServer(new InetSocketAddress("127.0.0.1", port), world, fps, maxClients, compression, protocol, keyframeInterval, moveThreshold);
+		server.start();
+		server.run();
+	}
+}
@@ -0,0 +1,296 @@
+package filunderscore.improvedhordes.synthetic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import filunderscore.improvedhordes.net.Protocol;
+
+/**
+ * Writes a {@link SyntheticWorld} in the delta protocol, for one receiver. The first call sends the world message and a
+ * keyframe, later calls send a delta against what this encoder last sent, with a keyframe every {@code keyframeInterval} calls.
+ * Cluster rows serve as ids, since {@link SyntheticWorld} keeps a cluster's row when it dies and respawns.
+ */
+public final class DeltaFrameEncoder
+{
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+	private static final float DENSITY_THRESHOLD = 0.01f;
+
+	private final int keyframeInterval;
+	private final float moveThreshold;
+
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+
+	private boolean sentWorld;
+	private int sinceKeyframe;
+
+	private boolean[] sent = new boolean[0];
+	private float[] sentX, sentY, sentZ, sentDensity;
+
+	/**
+	 * @param keyframeInterval number of calls between keyframes, or 0 to only send the first one.
+	 * @param moveThreshold distance a cluster has to move before it is sent again.
+	 */
+	public DeltaFrameEncoder(int keyframeInterval, float moveThreshold)
+	{
+		this.keyframeInterval = keyframeInterval;
+		this.moveThreshold = moveThreshold;
+	}
+
+	/**
+	 * Makes the next call send a keyframe.
+	 */
+	public void requestKeyframe()
+	{
+		this.sinceKeyframe = -1;
+	}
+
+	/**
+	 * Encodes the changes since the previous call. The returned buffer holds one or more messages and is reused by the next call.
+	 */
+	public ByteBuffer encode(SyntheticWorld world)
+	{
+		this.buffer.clear();
+
+		if(!this.sentWorld)
+		{
+			this.writeWorld(world);
+			this.sentWorld = true;
+			this.sinceKeyframe = -1;
+		}
+
+		if(this.sent.length != world.getClusterCount())
+		{
+			int clusters = world.getClusterCount();
+
+			this.sent = new boolean[clusters];
+			this.sentX = new float[clusters];
+			this.sentY = new float[clusters];
+			this.sentZ = new float[clusters];
+			this.sentDensity = new float[clusters];
+			this.sinceKeyframe = -1;
+		}
+
+		if(this.sinceKeyframe < 0 || (this.keyframeInterval > 0 && this.sinceKeyframe >= this.keyframeInterval))
+		{
+			this.writeKeyframe(world);
+			this.sinceKeyframe = 0;
+		}
+		else
+		{
+			this.writeDelta(world);
+			this.sinceKeyframe++;
+		}
+
+		return this.buffer.flip();
+	}
+
+	private void writeWorld(SyntheticWorld world)
+	{
+		int start = this.beginMessage(Protocol.MESSAGE_WORLD);
+
+		this.ensure(8 + world.getZoneCount() * 16);
+		this.buffer.putInt(world.getWorldSize()).putInt(world.getZoneCount());
+
+		for(int i = 0; i < world.getZoneCount(); i++)
+		{
+			this.buffer.putInt(world.getZoneX(i)).putInt(world.getZoneZ(i)).putInt(world.getZoneWidth(i)).putInt(world.getZoneHeight(i));
+		}
+
+		this.endMessage(start);
+	}
+
+	private void writeKeyframe(SyntheticWorld world)
+	{
+		int start = this.beginMessage(Protocol.MESSAGE_KEYFRAME);
+
+		this.writePlayers(world);
+
+		this.ensure(4);
+		this.buffer.putInt(world.getClusterTypeCount());
+
+		for(int type = 0; type < world.getClusterTypeCount(); type++)
+		{
+			this.putString(world.getClusterTypeName(type));
+		}
+
+		int count = this.beginCount();
+		int added = 0;
+
+		for(int type = 0; type < world.getClusterTypeCount(); type++)
+		{
+			for(int i = world.getTypeStart(type); i < world.getTypeStart(type + 1); i++)
+			{
+				this.sent[i] = world.isClusterAlive(i);
+
+				if(this.sent[i])
+				{
+					this.putCluster(world, i, type);
+					added++;
+				}
+			}
+		}
+
+		this.buffer.putInt(count, added);
+		this.endMessage(start);
+	}
+
+	private void writeDelta(SyntheticWorld world)
+	{
+		int start = this.beginMessage(Protocol.MESSAGE_DELTA);
+
+		this.writePlayers(world);
+
+		// The type table never grows, so no types are appended.
+		this.ensure(4);
+		this.buffer.putInt(0);
+
+		int count = this.beginCount();
+		int removed = 0;
+
+		for(int i = 0; i < this.sent.length; i++)
+		{
+			if(this.sent[i] && !world.isClusterAlive(i))
+			{
+				this.ensure(4);
+				this.buffer.putInt(i);
+				this.sent[i] = false;
+				removed++;
+			}
+		}
+
+		this.buffer.putInt(count, removed);
+
+		count = this.beginCount();
+		int added = 0;
+
+		for(int type = 0; type < world.getClusterTypeCount(); type++)
+		{
+			for(int i = world.getTypeStart(type); i < world.getTypeStart(type + 1); i++)
+			{
+				if(!this.sent[i] && world.isClusterAlive(i))
+				{
+					this.putCluster(world, i, type);
+					this.sent[i] = true;
+					added++;
+				}
+			}
+		}
+
+		this.buffer.putInt(count, added);
+
+		count = this.beginCount();
+		int moved = 0;
+		float threshold = this.moveThreshold * this.moveThreshold;
+
+		for(int i = 0; i < this.sent.length; i++)
+		{
+			if(!this.sent[i])
+				continue;
+
+			float dx = world.getClusterX(i) - this.sentX[i];
+			float dy = world.getClusterY(i) - this.sentY[i];
+			float dz = world.getClusterZ(i) - this.sentZ[i];
+
+			if(dx * dx + dy * dy + dz * dz < threshold && Math.abs(world.getClusterDensity(i) - this.sentDensity[i]) < DENSITY_THRESHOLD)
+				continue;
+
+			this.ensure(20);
+			this.buffer.putInt(i);
+			this.putPosition(world, i);
+			moved++;
+		}
+
+		this.buffer.putInt(count, moved);
+		this.endMessage(start);
+	}
+
+	private void writePlayers(SyntheticWorld world)
+	{
+		this.ensure(4);
+		this.buffer.putInt(world.getPlayerCount());
+
+		for(int i = 0; i < world.getPlayerCount(); i++)
+		{
+			this.ensure(16);
+			this.buffer.putFloat(world.getPlayerX(i)).putFloat(world.getPlayerY(i)).putFloat(world.getPlayerZ(i)).putInt(world.getPlayerGamestage(i));
+			this.putString(world.getPlayerBiome(i));
+		}
+	}
+
+	private void putCluster(SyntheticWorld world, int i, int type)
+	{
+		this.ensure(24);
+		this.buffer.putInt(i).putInt(type);
+		this.putPosition(world, i);
+	}
+
+	private void putPosition(SyntheticWorld world, int i)
+	{
+		this.sentX[i] = world.getClusterX(i);
+		this.sentY[i] = world.getClusterY(i);
+		this.sentZ[i] = world.getClusterZ(i);
+		this.sentDensity[i] = world.getClusterDensity(i);
+
+		this.buffer.putFloat(this.sentX[i]).putFloat(this.sentY[i]).putFloat(this.sentZ[i]).putFloat(this.sentDensity[i]);
+	}
+
+	private int beginMessage(int type)
+	{
+		this.ensure(Protocol.MESSAGE_HEADER_SIZE);
+
+		int start = this.buffer.position();
+		this.buffer.putInt(type).putInt(0);
+
+		return start;
+	}
+
+	private void endMessage(int start)
+	{
+		this.buffer.putInt(start + 4, this.buffer.position() - start - Protocol.MESSAGE_HEADER_SIZE);
+	}
+
+	/**
+	 * Writes a placeholder count and returns its position, to be filled in once the entries are written.
+	 */
+	private int beginCount()
+	{
+		this.ensure(4);
+
+		int position = this.buffer.position();
+		this.buffer.putInt(0);
+
+		return position;
+	}
+
+	private void putString(String value)
+	{
+		boolean valid = value != null && !value.isEmpty();
+
+		this.ensure(1);
+		this.buffer.put((byte)(valid ? 1 : 0));
+
+		if(valid)
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+			this.ensure(4 + bytes.length);
+			this.buffer.putInt(bytes.length).put(bytes);
+		}
+	}
+
+	private void ensure(int bytes)
+	{
+		if(this.buffer.remaining() >= bytes)
+			return;
+
+		int capacity = this.buffer.capacity();
+
+		while(capacity - this.buffer.position() < bytes)
+			capacity *= 2;
+
+		ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+		grown.put(this.buffer.flip());
+		this.buffer = grown;
+	}
+}
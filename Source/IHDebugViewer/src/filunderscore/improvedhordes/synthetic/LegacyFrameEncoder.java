@@ -0,0 +1,101 @@
+package filunderscore.improvedhordes.synthetic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a {@link SyntheticWorld} in the legacy wire format sent by the game's debug server.
+ * Players are written as a single group, and strings use their UTF-8 byte length, which is what the viewer reads.
+ */
+public final class LegacyFrameEncoder
+{
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+	
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+	
+	/**
+	 * Encodes the current state of the world. The returned buffer is reused by the next call.
+	 */
+	public ByteBuffer encode(SyntheticWorld world)
+	{
+		this.buffer.clear();
+		this.buffer.putInt(world.getWorldSize());
+		
+		this.buffer.putInt(world.getPlayerCount());
+		
+		for(int i = 0; i < world.getPlayerCount(); i++)
+		{
+			this.ensure(16);
+			this.buffer.putFloat(world.getPlayerX(i)).putFloat(world.getPlayerY(i)).putFloat(world.getPlayerZ(i)).putInt(world.getPlayerGamestage(i));
+			this.putString(world.getPlayerBiome(i));
+		}
+		
+		this.ensure(4);
+		this.buffer.putInt(world.getClusterTypeCount());
+		
+		for(int type = 0; type < world.getClusterTypeCount(); type++)
+		{
+			int start = world.getTypeStart(type), end = world.getTypeStart(type + 1);
+			int count = 0;
+			
+			for(int i = start; i < end; i++)
+			{
+				if(world.isClusterAlive(i))
+					count++;
+			}
+			
+			this.putString(world.getClusterTypeName(type));
+			this.ensure(4 + count * 16);
+			this.buffer.putInt(count);
+			
+			for(int i = start; i < end; i++)
+			{
+				if(world.isClusterAlive(i))
+					this.buffer.putFloat(world.getClusterX(i)).putFloat(world.getClusterY(i)).putFloat(world.getClusterZ(i)).putFloat(world.getClusterDensity(i));
+			}
+		}
+		
+		this.ensure(4 + world.getZoneCount() * 32);
+		this.buffer.putInt(world.getZoneCount());
+		
+		for(int i = 0; i < world.getZoneCount(); i++)
+		{
+			this.buffer.putInt(world.getZoneX(i)).putInt(world.getZoneZ(i)).putInt(world.getZoneWidth(i)).putInt(world.getZoneHeight(i));
+			this.buffer.putFloat(0.0f).putInt(0).putFloat(0.0f).putFloat(0.0f);
+		}
+		
+		return this.buffer.flip();
+	}
+	
+	private void putString(String value)
+	{
+		boolean valid = value != null && !value.isEmpty();
+		
+		this.ensure(1);
+		this.buffer.put((byte)(valid ? 1 : 0));
+		
+		if(valid)
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			
+			this.ensure(4 + bytes.length);
+			this.buffer.putInt(bytes.length).put(bytes);
+		}
+	}
+	
+	private void ensure(int bytes)
+	{
+		if(this.buffer.remaining() >= bytes)
+			return;
+		
+		int capacity = this.buffer.capacity();
+		
+		while(capacity - this.buffer.position() < bytes)
+			capacity *= 2;
+		
+		ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+		grown.put(this.buffer.flip());
+		this.buffer = grown;
+	}
+}
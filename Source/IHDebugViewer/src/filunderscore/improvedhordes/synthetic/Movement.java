@@ -0,0 +1,17 @@
+package filunderscore.improvedhordes.synthetic;
+
+public enum Movement
+{
+	/**
+	 * Clusters never move, so every frame is identical apart from player wandering.
+	 */
+	STATIC,
+	/**
+	 * Clusters keep a fixed heading and bounce off the world border.
+	 */
+	DRIFT,
+	/**
+	 * Clusters head for a player each, so they converge into dense groups over time.
+	 */
+	SWARM;
+}
@@ -0,0 +1,156 @@
+package filunderscore.improvedhordes.synthetic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+import filunderscore.improvedhordes.net.Protocol;
+
+/**
+ * Writes a {@link SyntheticWorld} as sectioned protocol frames, and serves as the reference for servers adopting the format.
+ * Every frame is self-contained, holding players, clusters and zones as one section each.
+ */
+public final class SectionedFrameEncoder
+{
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+	private static final int SECTIONS = 3;
+
+	private final CRC32C checksum = new CRC32C();
+
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * Encodes the current state of the world. The returned buffer is reused by the next call.
+	 */
+	public ByteBuffer encode(SyntheticWorld world)
+	{
+		this.buffer.clear();
+		this.ensure(Protocol.SECTION_TABLE_OFFSET + SECTIONS * Protocol.SECTION_ENTRY_SIZE);
+
+		// Length and checksum are filled in once the sections are written.
+		this.buffer.putInt(Protocol.FRAME_MAGIC).putInt(Protocol.FRAME_VERSION).putInt(0).putInt(0);
+		this.buffer.putInt(world.getWorldSize()).putInt(SECTIONS);
+		this.buffer.position(Protocol.SECTION_TABLE_OFFSET + SECTIONS * Protocol.SECTION_ENTRY_SIZE);
+
+		int start = this.buffer.position();
+		this.writePlayers(world);
+		this.endSection(0, Protocol.SECTION_PLAYERS, start);
+
+		start = this.buffer.position();
+		this.writeClusters(world);
+		this.endSection(1, Protocol.SECTION_CLUSTERS, start);
+
+		start = this.buffer.position();
+		this.writeZones(world);
+		this.endSection(2, Protocol.SECTION_ZONES, start);
+
+		int length = this.buffer.position();
+
+		this.checksum.reset();
+		this.checksum.update(this.buffer.flip().position(Protocol.FRAME_HEADER_SIZE));
+
+		this.buffer.putInt(Protocol.FRAME_LENGTH_OFFSET, length);
+		this.buffer.putInt(Protocol.FRAME_CHECKSUM_OFFSET, (int)this.checksum.getValue());
+
+		return this.buffer.position(0);
+	}
+
+	private void writePlayers(SyntheticWorld world)
+	{
+		this.ensure(4);
+		this.buffer.putInt(world.getPlayerCount());
+
+		for(int i = 0; i < world.getPlayerCount(); i++)
+		{
+			this.ensure(16);
+			this.buffer.putFloat(world.getPlayerX(i)).putFloat(world.getPlayerY(i)).putFloat(world.getPlayerZ(i)).putInt(world.getPlayerGamestage(i));
+			this.putString(world.getPlayerBiome(i));
+		}
+	}
+
+	/**
+	 * Writes the whole type table before any cluster, so a reader knows where every type's records start without walking them.
+	 */
+	private void writeClusters(SyntheticWorld world)
+	{
+		this.ensure(4);
+		this.buffer.putInt(world.getClusterTypeCount());
+
+		int clusters = 0;
+
+		for(int type = 0; type < world.getClusterTypeCount(); type++)
+		{
+			int count = 0;
+
+			for(int i = world.getTypeStart(type); i < world.getTypeStart(type + 1); i++)
+			{
+				if(world.isClusterAlive(i))
+					count++;
+			}
+
+			this.putString(world.getClusterTypeName(type));
+			this.ensure(4);
+			this.buffer.putInt(count);
+
+			clusters += count;
+		}
+
+		this.ensure(clusters * 16);
+
+		for(int i = 0; i < world.getClusterCount(); i++)
+		{
+			if(world.isClusterAlive(i))
+				this.buffer.putFloat(world.getClusterX(i)).putFloat(world.getClusterY(i)).putFloat(world.getClusterZ(i)).putFloat(world.getClusterDensity(i));
+		}
+	}
+
+	private void writeZones(SyntheticWorld world)
+	{
+		this.ensure(4 + world.getZoneCount() * 16);
+		this.buffer.putInt(world.getZoneCount());
+
+		for(int i = 0; i < world.getZoneCount(); i++)
+		{
+			this.buffer.putInt(world.getZoneX(i)).putInt(world.getZoneZ(i)).putInt(world.getZoneWidth(i)).putInt(world.getZoneHeight(i));
+		}
+	}
+
+	private void endSection(int index, int type, int start)
+	{
+		int entry = Protocol.SECTION_TABLE_OFFSET + index * Protocol.SECTION_ENTRY_SIZE;
+
+		this.buffer.putInt(entry, type).putInt(entry + 4, start).putInt(entry + 8, this.buffer.position() - start);
+	}
+
+	private void putString(String value)
+	{
+		boolean valid = value != null && !value.isEmpty();
+
+		this.ensure(1);
+		this.buffer.put((byte)(valid ? 1 : 0));
+
+		if(valid)
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+			this.ensure(4 + bytes.length);
+			this.buffer.putInt(bytes.length).put(bytes);
+		}
+	}
+
+	private void ensure(int bytes)
+	{
+		if(this.buffer.remaining() >= bytes)
+			return;
+
+		int capacity = this.buffer.capacity();
+
+		while(capacity - this.buffer.position() < bytes)
+			capacity *= 2;
+
+		ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+		grown.put(this.buffer.flip());
+		this.buffer = grown;
+	}
+}
@@ -0,0 +1,295 @@
+package filunderscore.improvedhordes.synthetic;
+
+import java.util.Random;
+
+/**
+ * Deterministic stand-in for a game world, with configurable player, cluster and zone counts.
+ * Clusters are kept grouped by horde type, in the same order the server sends them, and drift across the world on {@link #step(float)}.
+ * With churn enabled, clusters also die and respawn elsewhere, keeping their row so it can serve as a stable id.
+ */
+public final class SyntheticWorld
+{
+	public static final String[] HORDE_TYPES = { "WanderingAnimalHorde", "WanderingEnemyHorde", "ScreamerHorde", "WanderingAnimalEnemyHorde" };
+	public static final String[] BIOMES = { "pine_forest", "desert", "snow", "wasteland", "burnt_forest" };
+	
+	private static final float MAX_CLUSTER_SPEED = 8.0f;
+	private static final float MAX_PLAYER_SPEED = 6.0f;
+	private static final int MIN_ZONE_SIZE = 16, MAX_ZONE_SIZE = 160;
+	
+	private final Random random;
+	private final int worldSize;
+	private final float halfSize;
+	
+	private final float[] playerX, playerY, playerZ;
+	private final int[] playerGamestage;
+	private final String[] playerBiome;
+	
+	private final float[] clusterX, clusterY, clusterZ, clusterDensity;
+	private final float[] clusterVelocityX, clusterVelocityZ;
+	private final boolean[] clusterAlive;
+	private final int[] typeStart;
+	
+	private final int[] zoneX, zoneZ, zoneWidth, zoneHeight;
+	
+	private Movement movement = Movement.DRIFT;
+	private float churn;
+	private float pendingChurn;
+	
+	public SyntheticWorld(long seed, int worldSize, int players, int clusters, int zones)
+	{
+		this.random = new Random(seed);
+		this.worldSize = worldSize;
+		this.halfSize = worldSize / 2.0f;
+		
+		this.playerX = new float[players];
+		this.playerY = new float[players];
+		this.playerZ = new float[players];
+		this.playerGamestage = new int[players];
+		this.playerBiome = new String[players];
+		
+		for(int i = 0; i < players; i++)
+		{
+			this.playerX[i] = this.randomCoordinate();
+			this.playerY[i] = 40.0f + this.random.nextFloat() * 80.0f;
+			this.playerZ[i] = this.randomCoordinate();
+			this.playerGamestage[i] = 1 + this.random.nextInt(300);
+			this.playerBiome[i] = BIOMES[this.random.nextInt(BIOMES.length)];
+		}
+		
+		this.clusterX = new float[clusters];
+		this.clusterY = new float[clusters];
+		this.clusterZ = new float[clusters];
+		this.clusterDensity = new float[clusters];
+		this.clusterVelocityX = new float[clusters];
+		this.clusterVelocityZ = new float[clusters];
+		this.clusterAlive = new boolean[clusters];
+		
+		for(int i = 0; i < clusters; i++)
+		{
+			this.clusterAlive[i] = true;
+			this.clusterX[i] = this.randomCoordinate();
+			this.clusterY[i] = 40.0f + this.random.nextFloat() * 80.0f;
+			this.clusterZ[i] = this.randomCoordinate();
+			this.clusterDensity[i] = this.random.nextFloat();
+			this.clusterVelocityX[i] = (this.random.nextFloat() * 2.0f - 1.0f) * MAX_CLUSTER_SPEED;
+			this.clusterVelocityZ[i] = (this.random.nextFloat() * 2.0f - 1.0f) * MAX_CLUSTER_SPEED;
+		}
+		
+		this.typeStart = new int[HORDE_TYPES.length + 1];
+		
+		for(int type = 0; type <= HORDE_TYPES.length; type++)
+		{
+			this.typeStart[type] = (int)((long)clusters * type / HORDE_TYPES.length);
+		}
+		
+		this.zoneX = new int[zones];
+		this.zoneZ = new int[zones];
+		this.zoneWidth = new int[zones];
+		this.zoneHeight = new int[zones];
+		
+		for(int i = 0; i < zones; i++)
+		{
+			this.zoneWidth[i] = MIN_ZONE_SIZE + this.random.nextInt(MAX_ZONE_SIZE - MIN_ZONE_SIZE);
+			this.zoneHeight[i] = MIN_ZONE_SIZE + this.random.nextInt(MAX_ZONE_SIZE - MIN_ZONE_SIZE);
+			this.zoneX[i] = (int)this.randomCoordinate() - this.zoneWidth[i] / 2;
+			this.zoneZ[i] = (int)this.randomCoordinate() - this.zoneHeight[i] / 2;
+		}
+	}
+	
+	private float randomCoordinate()
+	{
+		return (this.random.nextFloat() * 2.0f - 1.0f) * this.halfSize;
+	}
+	
+	public void setMovement(Movement movement)
+	{
+		this.movement = movement;
+	}
+	
+	/**
+	 * Sets how many clusters per second die or respawn at a random position.
+	 */
+	public void setChurn(float perSecond)
+	{
+		this.churn = perSecond;
+	}
+	
+	/**
+	 * Moves clusters according to the current {@link Movement} and lets players wander.
+	 */
+	public void step(float seconds)
+	{
+		if(this.movement == Movement.SWARM && this.playerX.length > 0)
+			this.steer();
+		
+		for(int i = 0; this.movement != Movement.STATIC && i < this.clusterX.length; i++)
+		{
+			this.clusterX[i] += this.clusterVelocityX[i] * seconds;
+			this.clusterZ[i] += this.clusterVelocityZ[i] * seconds;
+			
+			if(Math.abs(this.clusterX[i]) > this.halfSize)
+			{
+				this.clusterX[i] = Math.copySign(this.halfSize, this.clusterX[i]);
+				this.clusterVelocityX[i] = -this.clusterVelocityX[i];
+			}
+			
+			if(Math.abs(this.clusterZ[i]) > this.halfSize)
+			{
+				this.clusterZ[i] = Math.copySign(this.halfSize, this.clusterZ[i]);
+				this.clusterVelocityZ[i] = -this.clusterVelocityZ[i];
+			}
+		}
+		
+		for(int i = 0; i < this.playerX.length; i++)
+		{
+			this.playerX[i] = this.clamp(this.playerX[i] + (this.random.nextFloat() * 2.0f - 1.0f) * MAX_PLAYER_SPEED * seconds);
+			this.playerZ[i] = this.clamp(this.playerZ[i] + (this.random.nextFloat() * 2.0f - 1.0f) * MAX_PLAYER_SPEED * seconds);
+		}
+		
+		this.pendingChurn += this.churn * seconds;
+		
+		for(; this.pendingChurn >= 1.0f && this.clusterX.length > 0; this.pendingChurn--)
+		{
+			int i = this.random.nextInt(this.clusterX.length);
+			
+			if(!this.clusterAlive[i])
+			{
+				this.clusterX[i] = this.randomCoordinate();
+				this.clusterZ[i] = this.randomCoordinate();
+			}
+			
+			this.clusterAlive[i] = !this.clusterAlive[i];
+		}
+	}
+	
+	private void steer()
+	{
+		for(int i = 0; i < this.clusterX.length; i++)
+		{
+			int player = i % this.playerX.length;
+			
+			float dx = this.playerX[player] - this.clusterX[i];
+			float dz = this.playerZ[player] - this.clusterZ[i];
+			float distance = (float)Math.sqrt(dx * dx + dz * dz);
+			
+			if(distance < 1.0f)
+				continue;
+			
+			this.clusterVelocityX[i] = dx / distance * MAX_CLUSTER_SPEED;
+			this.clusterVelocityZ[i] = dz / distance * MAX_CLUSTER_SPEED;
+		}
+	}
+	
+	private float clamp(float coordinate)
+	{
+		return Math.max(-this.halfSize, Math.min(this.halfSize, coordinate));
+	}
+	
+	public int getWorldSize()
+	{
+		return this.worldSize;
+	}
+	
+	public int getPlayerCount()
+	{
+		return this.playerX.length;
+	}
+	
+	public float getPlayerX(int i)
+	{
+		return this.playerX[i];
+	}
+	
+	public float getPlayerY(int i)
+	{
+		return this.playerY[i];
+	}
+	
+	public float getPlayerZ(int i)
+	{
+		return this.playerZ[i];
+	}
+	
+	public int getPlayerGamestage(int i)
+	{
+		return this.playerGamestage[i];
+	}
+	
+	public String getPlayerBiome(int i)
+	{
+		return this.playerBiome[i];
+	}
+	
+	public int getClusterCount()
+	{
+		return this.clusterX.length;
+	}
+	
+	public int getClusterTypeCount()
+	{
+		return HORDE_TYPES.length;
+	}
+	
+	public String getClusterTypeName(int type)
+	{
+		return HORDE_TYPES[type];
+	}
+	
+	/**
+	 * Clusters of a type occupy the rows from {@code getTypeStart(type)} up to {@code getTypeStart(type + 1)}.
+	 */
+	public int getTypeStart(int type)
+	{
+		return this.typeStart[type];
+	}
+	
+	public boolean isClusterAlive(int i)
+	{
+		return this.clusterAlive[i];
+	}
+	
+	public float getClusterX(int i)
+	{
+		return this.clusterX[i];
+	}
+	
+	public float getClusterY(int i)
+	{
+		return this.clusterY[i];
+	}
+	
+	public float getClusterZ(int i)
+	{
+		return this.clusterZ[i];
+	}
+	
+	public float getClusterDensity(int i)
+	{
+		return this.clusterDensity[i];
+	}
+	
+	public int getZoneCount()
+	{
+		return this.zoneX.length;
+	}
+	
+	public int getZoneX(int i)
+	{
+		return this.zoneX[i];
+	}
+	
+	public int getZoneZ(int i)
+	{
+		return this.zoneZ[i];
+	}
+	
+	public int getZoneWidth(int i)
+	{
+		return this.zoneWidth[i];
+	}
+	
+	public int getZoneHeight(int i)
+	{
+		return this.zoneHeight[i];
+	}
+}
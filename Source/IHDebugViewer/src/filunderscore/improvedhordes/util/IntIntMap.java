@@ -0,0 +1,133 @@
+package filunderscore.improvedhordes.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from int keys to int values, without boxing. Keys must not be {@link #NO_VALUE}.
+ */
+public final class IntIntMap
+{
+	public static final int NO_VALUE = Integer.MIN_VALUE;
+	
+	private int[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+	
+	public IntIntMap()
+	{
+		this(64);
+	}
+	
+	public IntIntMap(int capacity)
+	{
+		int tableSize = Integer.highestOneBit(Math.max(4, capacity * 2 - 1)) << 1;
+		
+		this.keys = new int[tableSize];
+		this.values = new int[tableSize];
+		this.mask = tableSize - 1;
+		
+		Arrays.fill(this.keys, NO_VALUE);
+	}
+	
+	private static int hash(int key)
+	{
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	public int size()
+	{
+		return this.size;
+	}
+	
+	public int get(int key)
+	{
+		for(int slot = hash(key) & this.mask; ; slot = (slot + 1) & this.mask)
+		{
+			int current = this.keys[slot];
+			
+			if(current == key)
+				return this.values[slot];
+			
+			if(current == NO_VALUE)
+				return NO_VALUE;
+		}
+	}
+	
+	public void put(int key, int value)
+	{
+		if((this.size + 1) * 2 > this.keys.length)
+			this.resize(this.keys.length * 2);
+		
+		int slot = hash(key) & this.mask;
+		
+		while(this.keys[slot] != NO_VALUE && this.keys[slot] != key)
+			slot = (slot + 1) & this.mask;
+		
+		if(this.keys[slot] == NO_VALUE)
+			this.size++;
+		
+		this.keys[slot] = key;
+		this.values[slot] = value;
+	}
+	
+	public int remove(int key)
+	{
+		int slot = hash(key) & this.mask;
+		
+		while(this.keys[slot] != key)
+		{
+			if(this.keys[slot] == NO_VALUE)
+				return NO_VALUE;
+			
+			slot = (slot + 1) & this.mask;
+		}
+		
+		int value = this.values[slot];
+		this.size--;
+		
+		// Shift later entries of the probe chain back, so lookups never stop at the hole.
+		for(int next = (slot + 1) & this.mask; this.keys[next] != NO_VALUE; next = (next + 1) & this.mask)
+		{
+			int home = hash(this.keys[next]) & this.mask;
+			
+			if(((next - home) & this.mask) >= ((next - slot) & this.mask))
+			{
+				this.keys[slot] = this.keys[next];
+				this.values[slot] = this.values[next];
+				slot = next;
+			}
+		}
+		
+		this.keys[slot] = NO_VALUE;
+		return value;
+	}
+	
+	public void clear()
+	{
+		if(this.size == 0)
+			return;
+		
+		Arrays.fill(this.keys, NO_VALUE);
+		this.size = 0;
+	}
+	
+	private void resize(int tableSize)
+	{
+		int[] keys = this.keys, values = this.values;
+		
+		this.keys = new int[tableSize];
+		this.values = new int[tableSize];
+		this.mask = tableSize - 1;
+		this.size = 0;
+		
+		Arrays.fill(this.keys, NO_VALUE);
+		
+		for(int i = 0; i < keys.length; i++)
+		{
+			if(keys[i] != NO_VALUE)
+				this.put(keys[i], values[i]);
+		}
+	}
+}
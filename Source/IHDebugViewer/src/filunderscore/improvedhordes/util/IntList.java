@@ -0,0 +1,52 @@
+package filunderscore.improvedhordes.util;
+
+import java.util.Arrays;
+
+public final class IntList
+{
+	private int[] values;
+	private int size;
+	
+	public IntList()
+	{
+		this(16);
+	}
+	
+	public IntList(int capacity)
+	{
+		this.values = new int[Math.max(1, capacity)];
+	}
+	
+	public void add(int value)
+	{
+		if(this.size == this.values.length)
+			this.values = Arrays.copyOf(this.values, this.size * 2);
+		
+		this.values[this.size++] = value;
+	}
+	
+	public int get(int index)
+	{
+		return this.values[index];
+	}
+	
+	public void set(int index, int value)
+	{
+		this.values[index] = value;
+	}
+	
+	public int size()
+	{
+		return this.size;
+	}
+	
+	public int[] toArray()
+	{
+		return Arrays.copyOf(this.values, this.size);
+	}
+	
+	public void clear()
+	{
+		this.size = 0;
+	}
+}
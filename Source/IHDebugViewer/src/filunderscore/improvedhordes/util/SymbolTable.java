@@ -0,0 +1,140 @@
+package filunderscore.improvedhordes.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns strings by their raw UTF-8 bytes, so a name that has been seen before is resolved straight from the buffer it
+ * arrived in, without allocating. Meant for the small, repetitive vocabularies of the wire format, such as horde types
+ * and biomes: once {@code maxSymbols} distinct names are held, further ones are decoded but no longer kept.
+ * <p>
+ * Not thread-safe. The returned strings are ordinary immutable strings and may be handed to any thread.
+ */
+public final class SymbolTable
+{
+	public static final int DEFAULT_MAX_SYMBOLS = 4096;
+
+	private final int maxSymbols;
+
+	private int size;
+	private byte[][] bytes = new byte[16][];
+	private String[] strings = new String[16];
+	private int[] hashes = new int[16];
+
+	// Open addressing over symbol index + 1, so 0 marks an empty slot.
+	private int[] table = new int[32];
+
+	public SymbolTable()
+	{
+		this(DEFAULT_MAX_SYMBOLS);
+	}
+
+	public SymbolTable(int maxSymbols)
+	{
+		this.maxSymbols = maxSymbols;
+	}
+
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Returns the string for {@code length} bytes of a buffer starting at an absolute offset, leaving its position alone.
+	 */
+	public String intern(ByteBuffer buffer, int offset, int length)
+	{
+		int hash = hash(buffer, offset, length);
+		int mask = this.table.length - 1;
+
+		for(int slot = hash & mask; ; slot = (slot + 1) & mask)
+		{
+			int symbol = this.table[slot] - 1;
+
+			if(symbol < 0)
+				break;
+
+			if(this.hashes[symbol] == hash && equals(this.bytes[symbol], buffer, offset, length))
+				return this.strings[symbol];
+		}
+
+		byte[] value = new byte[length];
+		buffer.get(offset, value);
+
+		String string = new String(value, StandardCharsets.UTF_8);
+
+		if(this.size < this.maxSymbols)
+			this.add(value, string, hash);
+
+		return string;
+	}
+
+	private void add(byte[] value, String string, int hash)
+	{
+		if(this.size == this.strings.length)
+		{
+			this.bytes = Arrays.copyOf(this.bytes, this.size * 2);
+			this.strings = Arrays.copyOf(this.strings, this.size * 2);
+			this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+		}
+
+		this.bytes[this.size] = value;
+		this.strings[this.size] = string;
+		this.hashes[this.size] = hash;
+		this.size++;
+
+		// Keep the table at most half full.
+		if(this.size * 2 > this.table.length)
+		{
+			this.table = new int[this.table.length * 2];
+
+			for(int symbol = 0; symbol < this.size; symbol++)
+			{
+				this.insert(symbol);
+			}
+		}
+		else
+		{
+			this.insert(this.size - 1);
+		}
+	}
+
+	private void insert(int symbol)
+	{
+		int mask = this.table.length - 1;
+		int slot = this.hashes[symbol] & mask;
+
+		while(this.table[slot] != 0)
+			slot = (slot + 1) & mask;
+
+		this.table[slot] = symbol + 1;
+	}
+
+	private static int hash(ByteBuffer buffer, int offset, int length)
+	{
+		int hash = length;
+
+		for(int i = 0; i < length; i++)
+		{
+			hash = 31 * hash + buffer.get(offset + i);
+		}
+
+		// Spread the low bits, since the table is indexed by them.
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean equals(byte[] value, ByteBuffer buffer, int offset, int length)
+	{
+		if(value.length != length)
+			return false;
+
+		for(int i = 0; i < length; i++)
+		{
+			if(value[i] != buffer.get(offset + i))
+				return false;
+		}
+
+		return true;
+	}
+}
@@ -1,49 +1,61 @@
 package filunderscore.improvedhordes.world;
 
-import java.awt.Color;
 import java.awt.Graphics;
 
 import filunderscore.improvedhordes.gui.IHRenderer;
-import filunderscore.improvedhordes.gui.IHRenderer.ScaledVector;
-import filunderscore.improvedhordes.util.Vector2i;
 import filunderscore.improvedhordes.util.Vector3;
 
 public class ClusterSnapshot implements Drawable
 {
-	public String clusterType;
-	public Vector3 location;
-	public float density;
+	public static final int MARKER_SIZE = 30;
 	
-	public ClusterSnapshot(String clusterType, Vector3 location, float density)
+	private final WorldHordeState world;
+	private final int index;
+	
+	public ClusterSnapshot(WorldHordeState world, int index)
+	{
+		this.world = world;
+		this.index = index;
+	}
+	
+	public String getClusterType()
+	{
+		return this.world.getClusterTypeName(this.index);
+	}
+	
+	public Vector3 getLocation()
 	{
-		this.clusterType = clusterType;
-		this.location = location;
-		this.density = density;
+		return new Vector3(this.world.getClusterX(this.index), this.world.getClusterY(this.index), this.world.getClusterZ(this.index));
+	}
+	
+	public float getDensity()
+	{
+		return this.world.getClusterDensity(this.index);
 	}
 	
 	public String toString()
 	{
-		return String.format("Cluster [type: %s, location: %s, density: %f]", this.clusterType, this.location, this.density);
+		return String.format("Cluster [type: %s, location: %s, density: %f]", this.getClusterType(), this.getLocation(), this.getDensity());
 	}
 
 	@Override
 	public void draw(WorldHordeState world, IHRenderer renderer, Graphics g) 
 	{
-		ScaledVector rescaledLocation = renderer.rescale(this.location.toVXZ(), new Vector2i(30, 30));
+		draw(this.world, this.index, renderer, g);
+	}
+	
+	public static void draw(WorldHordeState world, int index, IHRenderer renderer, Graphics g)
+	{
+		int x = renderer.toScreenX(world.getClusterX(index));
+		int y = renderer.toScreenY(world.getClusterZ(index));
+		HordeTypeStyle style = world.getClusterStyle(index);
+		int width = renderer.scaleX(style.getMarkerSize());
+		int height = renderer.scaleY(style.getMarkerSize());
 		
-		if(this.clusterType.equalsIgnoreCase("WanderingAnimalHorde"))
-			g.setColor(Color.blue);
-		else if(this.clusterType.equalsIgnoreCase("WanderingEnemyHorde"))
-			g.setColor(Color.red);
-		else if(this.clusterType.equalsIgnoreCase("ScreamerHorde"))
-			g.setColor(Color.green);
-		else if(this.clusterType.equalsIgnoreCase("WanderingAnimalEnemyHorde"))
-			g.setColor(Color.orange);
+		g.setColor(style.getColor());
+		g.fillOval((int)(x - width / 1.5), (int)(y - height / 1.5), width, height);
 		
-		if(rescaledLocation.inView())
-		{
-			g.fillOval((int)(rescaledLocation.scaledPosition.x - rescaledLocation.scaledSize.x / 1.5), (int)(rescaledLocation.scaledPosition.y - rescaledLocation.scaledSize.y / 1.5), rescaledLocation.scaledSize.x, rescaledLocation.scaledSize.y);
-			g.drawString(Float.toString(this.density), rescaledLocation.scaledPosition.x - rescaledLocation.scaledSize.x, rescaledLocation.scaledPosition.y - rescaledLocation.scaledSize.y);
-		}
+		if(width >= style.getLabelMinPixels())
+			g.drawString(Float.toString(world.getClusterDensity(index)), x - width, y - height);
 	}
-}
\ No newline at end of file
+}
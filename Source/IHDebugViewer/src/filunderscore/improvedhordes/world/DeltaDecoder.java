@@ -0,0 +1,209 @@
+package filunderscore.improvedhordes.world;
+
+import java.io.IOException;
+
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.util.IntIntMap;
+import filunderscore.improvedhordes.util.SymbolTable;
+
+/**
+ * Applies delta protocol messages to a master world state that lives for the whole connection. Clusters are
+ * found by their server id through a map to their row, so a delta costs time in proportion to what changed.
+ */
+final class DeltaDecoder
+{
+	private static final int PLAYER_BYTES = 4 * 4 + 1;
+	private static final int CLUSTER_TYPE_BYTES = 1;
+	private static final int CLUSTER_BYTES = 6 * 4;
+	private static final int MOVE_BYTES = 5 * 4;
+	private static final int ZONE_BYTES = 4 * 4;
+
+	private final SymbolTable symbols;
+	private final WorldHordeState master = new WorldHordeState();
+	private final IntIntMap rows = new IntIntMap();
+
+	private boolean hasKeyframe;
+
+	DeltaDecoder(SymbolTable symbols)
+	{
+		this.symbols = symbols;
+	}
+
+	WorldHordeState getMaster()
+	{
+		return this.master;
+	}
+
+	void reset()
+	{
+		this.master.clear(0);
+		this.rows.clear();
+		this.hasKeyframe = false;
+	}
+
+	/**
+	 * Reads one message and returns its type.
+	 */
+	int read(WireBuffer in) throws IOException
+	{
+		in.ensure(Protocol.MESSAGE_HEADER_SIZE);
+
+		int type = in.readInt();
+		int length = in.readInt();
+
+		if(length < 0 || length > Protocol.FRAME_MAX_LENGTH)
+			throw new IOException("Malformed message of type " + type + " with length " + length + ".");
+
+		in.ensure(length);
+
+		int end = in.getFrameLength() + length;
+
+		switch(type)
+		{
+		case Protocol.MESSAGE_WORLD:
+			this.readWorld(in);
+			break;
+		case Protocol.MESSAGE_KEYFRAME:
+			this.readKeyframe(in);
+			break;
+		case Protocol.MESSAGE_DELTA:
+			// A delta only makes sense on top of the keyframe before it, so wait for the next one if that was missed.
+			if(this.hasKeyframe)
+				this.readDelta(in);
+			break;
+		default:
+			break;
+		}
+
+		int remaining = end - in.getFrameLength();
+
+		if(remaining < 0)
+			throw new IOException("Message of type " + type + " is longer than its declared length " + length + ".");
+
+		// Skips unknown messages and any fields a newer server appended to known ones.
+		in.skip(remaining);
+
+		return type;
+	}
+
+	private void readWorld(WireBuffer in) throws IOException
+	{
+		this.master.clearZones(in.readInt());
+
+		int zoneSize = in.readCount(ZONE_BYTES);
+
+		in.ensure(zoneSize * ZONE_BYTES);
+
+		for(int i = 0; i < zoneSize; i++)
+		{
+			this.master.addZone(in.readInt(), in.readInt(), in.readInt(), in.readInt(), 0.0f, 0, 0.0f, 0.0f);
+		}
+	}
+
+	private void readKeyframe(WireBuffer in) throws IOException
+	{
+		this.readPlayers(in);
+
+		this.master.clearClusters();
+		this.rows.clear();
+
+		this.readClusterTypes(in);
+		this.readAddedClusters(in);
+
+		this.hasKeyframe = true;
+	}
+
+	private void readDelta(WireBuffer in) throws IOException
+	{
+		this.readPlayers(in);
+		this.readClusterTypes(in);
+
+		int removedSize = in.readCount(4);
+
+		in.ensure(removedSize * 4);
+
+		for(int i = 0; i < removedSize; i++)
+		{
+			int row = this.rows.remove(in.readInt());
+
+			if(row == IntIntMap.NO_VALUE)
+				continue;
+
+			int moved = this.master.removeCluster(row);
+
+			if(moved != -1)
+				this.rows.put(moved, row);
+		}
+
+		this.readAddedClusters(in);
+
+		int movedSize = in.readCount(MOVE_BYTES);
+
+		in.ensure(movedSize * MOVE_BYTES);
+
+		for(int i = 0; i < movedSize; i++)
+		{
+			int row = this.rows.get(in.readInt());
+
+			float x = in.readFloat(), y = in.readFloat(), z = in.readFloat(), density = in.readFloat();
+
+			if(row != IntIntMap.NO_VALUE)
+				this.master.setCluster(row, x, y, z, density);
+		}
+	}
+
+	private void readPlayers(WireBuffer in) throws IOException
+	{
+		this.master.clearPlayers();
+
+		int playerSize = in.readCount(PLAYER_BYTES);
+
+		for(int i = 0; i < playerSize; i++)
+		{
+			this.master.addPlayer(in.readFloat(), in.readFloat(), in.readFloat(), in.readInt(), ImprovedHordesSimulation.readString(in, this.symbols));
+		}
+	}
+
+	private void readClusterTypes(WireBuffer in) throws IOException
+	{
+		int typeSize = in.readCount(CLUSTER_TYPE_BYTES);
+
+		for(int i = 0; i < typeSize; i++)
+		{
+			this.master.addClusterType(ImprovedHordesSimulation.readString(in, this.symbols));
+		}
+	}
+
+	private void readAddedClusters(WireBuffer in) throws IOException
+	{
+		int clusterSize = in.readCount(CLUSTER_BYTES);
+		int typeCount = this.master.getClusterTypeCount();
+
+		in.ensure(clusterSize * CLUSTER_BYTES);
+
+		for(int i = 0; i < clusterSize; i++)
+		{
+			int id = in.readInt();
+			int type = in.readInt();
+
+			if(id == IntIntMap.NO_VALUE || type < 0 || type >= typeCount)
+				throw new IOException("Cluster " + id + " has invalid id or unknown type " + type + ".");
+
+			float x = in.readFloat(), y = in.readFloat(), z = in.readFloat(), density = in.readFloat();
+
+			// A re-added id replaces the old cluster rather than leaving two rows for it.
+			int row = this.rows.get(id);
+
+			if(row != IntIntMap.NO_VALUE)
+			{
+				int moved = this.master.removeCluster(row);
+
+				if(moved != -1)
+					this.rows.put(moved, row);
+			}
+
+			this.rows.put(id, this.master.addCluster(id, type, x, y, z, density));
+		}
+	}
+}
@@ -0,0 +1,348 @@
+package filunderscore.improvedhordes.world;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import filunderscore.improvedhordes.util.IntList;
+import filunderscore.improvedhordes.util.Vector2i;
+
+/**
+ * Where hordes spend their time: each published world state adds every cluster's density, weighted by the seconds since
+ * the previous state by their timestamps, to the grid cell it is in, and older contributions decay exponentially with a
+ * fixed half-life. Replayed states carry their capture time, so the heatmap builds up the same at any replay speed.
+ * <p>
+ * Rather than decaying every cell on every state, cells are stored multiplied by a global scale that grows at the decay
+ * rate, and new contributions are multiplied by it too. A state then costs time in proportion to its clusters, and the
+ * grid only has to be walked when the scale is folded back into it, or the world changes size. Memory is fixed by the
+ * world size, however long the session runs.
+ * <p>
+ * Updates come from the thread decoding frames, so the heatmap covers every state whether or not it is shown. Readers on
+ * other threads take a {@link Snapshot} of the cells changed since their last one.
+ */
+public final class DensityHeatmap
+{
+	public static final float DEFAULT_HALF_LIFE_SECONDS = Float.parseFloat(System.getProperty("ihdebugviewer.heatmapHalfLife", "900"));
+	public static final int DEFAULT_CELL_SIZE = 16;
+
+	private static final int MAX_COLUMNS = 1024;
+	private static final float MAX_FRAME_SECONDS = 5.0f;
+	private static final double MAX_SCALE = 1e18;
+
+	private final int minCellSize;
+	private final double decayRate;
+
+	private int worldWidth = -1, worldHeight = -1;
+	private int columns, rows;
+	private float cellSize, minX, minZ;
+	private float[] cells = new float[0];
+
+	private double scale = 1.0;
+	private float maxValue;
+	private int version;
+
+	// Cells added to since the reader's last snapshot, guarded by the lock along with everything else.
+	private final ReentrantLock lock = new ReentrantLock();
+	private final IntList changed = new IntList();
+	private boolean[] changedCells = new boolean[0];
+
+	private long lastSequence = -1;
+	private long lastTimestamp;
+	private int lastEpoch;
+
+	/**
+	 * @param minCellSize smallest cell edge in blocks. Cells grow past it on worlds too large for the column limit.
+	 * @param halfLifeSeconds time for a contribution to fall to half its weight.
+	 */
+	public DensityHeatmap(int minCellSize, float halfLifeSeconds)
+	{
+		this.minCellSize = Math.max(1, minCellSize);
+		this.decayRate = Math.log(2) / halfLifeSeconds;
+	}
+
+	public void reset()
+	{
+		this.lock.lock();
+
+		try
+		{
+			Arrays.fill(this.cells, 0.0f);
+
+			this.scale = 1.0;
+			this.maxValue = 0.0f;
+			this.lastSequence = -1;
+			this.clearChanged();
+			this.version++;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	private void clearChanged()
+	{
+		for(int i = 0; i < this.changed.size(); i++)
+		{
+			this.changedCells[this.changed.get(i)] = false;
+		}
+
+		this.changed.clear();
+	}
+
+	/**
+	 * Adds the clusters of a newly published state. States that were already seen are ignored, and one from another
+	 * epoch, as after a replay seek, starts the heatmap over.
+	 */
+	public void update(WorldHordeState world)
+	{
+		this.lock.lock();
+
+		try
+		{
+			this.add(world);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	private void add(WorldHordeState world)
+	{
+		long sequence = world.getSequence();
+
+		if(sequence == this.lastSequence)
+			return;
+
+		if(world.getEpoch() != this.lastEpoch)
+			this.reset();
+
+		this.resize(world.GetWorldSize());
+
+		long timestamp = world.getTimestamp();
+		float seconds = this.lastSequence < 0 ? 0.0f : Math.min(MAX_FRAME_SECONDS, (timestamp - this.lastTimestamp) / 1e9f);
+
+		this.lastSequence = sequence;
+		this.lastTimestamp = timestamp;
+		this.lastEpoch = world.getEpoch();
+
+		if(seconds <= 0.0f)
+			return;
+
+		this.scale *= Math.exp(this.decayRate * seconds);
+
+		if(this.scale > MAX_SCALE)
+			this.rescale();
+
+		float weight = (float)(seconds * this.scale);
+
+		for(int i = 0; i < world.getClusterCount(); i++)
+		{
+			float density = world.getClusterDensity(i);
+
+			if(density <= 0.0f)
+				continue;
+
+			int cell = this.getRow(world.getClusterZ(i)) * this.columns + this.getColumn(world.getClusterX(i));
+
+			this.maxValue = Math.max(this.maxValue, this.cells[cell] += density * weight);
+
+			if(!this.changedCells[cell])
+			{
+				this.changedCells[cell] = true;
+				this.changed.add(cell);
+			}
+		}
+	}
+
+	private void resize(Vector2i worldSize)
+	{
+		if(this.worldWidth == worldSize.x && this.worldHeight == worldSize.y)
+			return;
+
+		this.worldWidth = worldSize.x;
+		this.worldHeight = worldSize.y;
+
+		int size = Math.max(1, Math.max(worldSize.x, worldSize.y));
+
+		this.cellSize = Math.max(this.minCellSize, size / (float)MAX_COLUMNS);
+		this.columns = Math.max(1, (int)Math.ceil(worldSize.x / this.cellSize));
+		this.rows = Math.max(1, (int)Math.ceil(worldSize.y / this.cellSize));
+		this.minX = -(worldSize.x / 2);
+		this.minZ = -(worldSize.y / 2);
+
+		this.cells = new float[this.columns * this.rows];
+		this.changedCells = new boolean[this.cells.length];
+		this.changed.clear();
+
+		this.reset();
+	}
+
+	/**
+	 * Folds the global scale back into the cells before it overflows. This is the only step that walks the whole grid,
+	 * and it happens once every few dozen half-lives.
+	 */
+	private void rescale()
+	{
+		float factor = (float)(1.0 / this.scale);
+
+		for(int cell = 0; cell < this.cells.length; cell++)
+		{
+			this.cells[cell] *= factor;
+		}
+
+		this.maxValue *= factor;
+		this.scale = 1.0;
+		this.clearChanged();
+		this.version++;
+	}
+
+	private int getColumn(float x)
+	{
+		return Math.max(0, Math.min(this.columns - 1, (int)((x - this.minX) / this.cellSize)));
+	}
+
+	private int getRow(float z)
+	{
+		return Math.max(0, Math.min(this.rows - 1, (int)((z - this.minZ) / this.cellSize)));
+	}
+
+	/**
+	 * Copies the cells changed since the snapshot was last taken into it, or every cell if the version changed since.
+	 * Safe to call from any thread.
+	 */
+	public void copyTo(Snapshot snapshot)
+	{
+		this.lock.lock();
+
+		try
+		{
+			snapshot.changed.clear();
+			snapshot.full = snapshot.version != this.version;
+
+			if(snapshot.full)
+			{
+				if(snapshot.cells.length != this.cells.length)
+					snapshot.cells = new float[this.cells.length];
+
+				System.arraycopy(this.cells, 0, snapshot.cells, 0, this.cells.length);
+
+				snapshot.version = this.version;
+				snapshot.columns = this.columns;
+				snapshot.rows = this.rows;
+				snapshot.cellSize = this.cellSize;
+			}
+			else
+			{
+				for(int i = 0; i < this.changed.size(); i++)
+				{
+					int cell = this.changed.get(i);
+
+					snapshot.cells[cell] = this.cells[cell];
+					snapshot.changed.add(cell);
+				}
+			}
+
+			this.clearChanged();
+
+			snapshot.maxValue = this.maxValue;
+			snapshot.scale = this.scale;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Decayed density-seconds in a cell, as of the last update.
+	 */
+	public float getValue(int cell)
+	{
+		this.lock.lock();
+
+		try
+		{
+			return (float)(this.cells[cell] / this.scale);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * The heatmap as of the last {@link DensityHeatmap#copyTo}, owned by the thread that takes it.
+	 */
+	public static final class Snapshot
+	{
+		private int version = -1;
+		private int columns, rows;
+		private float cellSize;
+		private float[] cells = new float[0];
+
+		private float maxValue;
+		private double scale = 1.0;
+
+		private final IntList changed = new IntList();
+		private boolean full;
+
+		public int getColumns()
+		{
+			return this.columns;
+		}
+
+		/**
+		 * Rows run from the southern edge of the world northwards.
+		 */
+		public int getRows()
+		{
+			return this.rows;
+		}
+
+		public float getCellSize()
+		{
+			return this.cellSize;
+		}
+
+		/**
+		 * Raw cell value. Raw values are all off from the real ones by the same factor, so they compare against each
+		 * other and {@link #getRawMaxValue()} directly, until a snapshot is {@link #isFull() full} again.
+		 */
+		public float getRawValue(int cell)
+		{
+			return this.cells[cell];
+		}
+
+		public float getRawMaxValue()
+		{
+			return this.maxValue;
+		}
+
+		public float getMaxValue()
+		{
+			return (float)(this.maxValue / this.scale);
+		}
+
+		/**
+		 * Whether every cell was copied, because the grid was cleared, resized or rescaled since the previous snapshot.
+		 */
+		public boolean isFull()
+		{
+			return this.full;
+		}
+
+		/**
+		 * Cells copied since the previous snapshot, when it is not {@link #isFull() full}.
+		 */
+		public int getChangedCount()
+		{
+			return this.changed.size();
+		}
+
+		public int getChangedCell(int index)
+		{
+			return this.changed.get(index);
+		}
+	}
+}
@@ -0,0 +1,570 @@
+package filunderscore.improvedhordes.world;
+
+import java.util.Arrays;
+
+import filunderscore.improvedhordes.util.IntIntMap;
+
+/**
+ * Follows clusters from one published world state to the next, giving each horde a track with a bounded trail of past
+ * positions and a smoothed velocity. Clusters that carry a server id are matched by it. The rest are matched to the
+ * nearest unmatched track of the same type within the distance a horde can move between the two states: candidate
+ * pairs are found through a grid of predicted track positions and assigned closest first, so a frame costs close to
+ * linear time in the number of clusters.
+ */
+public final class HordeTracker
+{
+	public static final int DEFAULT_TRAIL_LENGTH = Integer.getInteger("ihdebugviewer.trailLength", 32);
+	public static final float DEFAULT_MAX_SPEED = 24.0f;
+
+	private static final float MIN_MATCH_RADIUS = 4.0f;
+	private static final float MAX_FRAME_SECONDS = 5.0f;
+	private static final int MAX_MISSED_FRAMES = 4;
+	// More states than this published since the last update means nobody was watching, so tracks start over instead.
+	private static final int MAX_SKIPPED_STATES = 64;
+	private static final float VELOCITY_SMOOTHING = 0.5f;
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int MAX_GRID_COLUMNS = 1024;
+
+	private final int trailLength;
+	private final float maxSpeed;
+
+	private String[] typeNames = new String[8];
+	private int typeCount;
+	private int[] typeMap = new int[8];
+
+	private int slotCount, liveCount;
+	private int[] freeSlots = new int[0];
+	private int freeCount;
+
+	private boolean[] live;
+	private int[] trackType, trackId, missed, matchedFrame;
+	private float[] x, z, velocityX, velocityZ;
+	private float[] trailX, trailZ;
+	private int[] trailHead, trailSize;
+
+	private float[] predictedX, predictedZ;
+	private int[] slotCell;
+	private final IntIntMap idTracks = new IntIntMap();
+
+	private int gridColumns;
+	private float gridMin, gridCellSize;
+	private int[] gridStart = new int[1];
+	private int[] gridSlot = new int[0], gridType = new int[0];
+	private float[] gridX = new float[0], gridZ = new float[0];
+
+	private int[] clusterTrack = new int[0];
+	private long[] pairs = new long[0];
+	private int[] pairCluster = new int[0], pairSlot = new int[0];
+
+	private long lastSequence = -1;
+	private long lastTimestamp;
+	private int lastEpoch;
+	private int frame;
+
+	public HordeTracker(int trailLength, float maxSpeed)
+	{
+		this.trailLength = Math.max(2, trailLength);
+		this.maxSpeed = maxSpeed;
+
+		this.allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(int capacity)
+	{
+		this.live = new boolean[capacity];
+		this.trackType = new int[capacity];
+		this.trackId = new int[capacity];
+		this.missed = new int[capacity];
+		this.matchedFrame = new int[capacity];
+		this.x = new float[capacity];
+		this.z = new float[capacity];
+		this.velocityX = new float[capacity];
+		this.velocityZ = new float[capacity];
+		this.trailX = new float[capacity * this.trailLength];
+		this.trailZ = new float[capacity * this.trailLength];
+		this.trailHead = new int[capacity];
+		this.trailSize = new int[capacity];
+		this.predictedX = new float[capacity];
+		this.predictedZ = new float[capacity];
+		this.slotCell = new int[capacity];
+	}
+
+	private void grow()
+	{
+		int capacity = this.live.length * 2;
+
+		this.live = Arrays.copyOf(this.live, capacity);
+		this.trackType = Arrays.copyOf(this.trackType, capacity);
+		this.trackId = Arrays.copyOf(this.trackId, capacity);
+		this.missed = Arrays.copyOf(this.missed, capacity);
+		this.matchedFrame = Arrays.copyOf(this.matchedFrame, capacity);
+		this.x = Arrays.copyOf(this.x, capacity);
+		this.z = Arrays.copyOf(this.z, capacity);
+		this.velocityX = Arrays.copyOf(this.velocityX, capacity);
+		this.velocityZ = Arrays.copyOf(this.velocityZ, capacity);
+		this.trailX = Arrays.copyOf(this.trailX, capacity * this.trailLength);
+		this.trailZ = Arrays.copyOf(this.trailZ, capacity * this.trailLength);
+		this.trailHead = Arrays.copyOf(this.trailHead, capacity);
+		this.trailSize = Arrays.copyOf(this.trailSize, capacity);
+		this.predictedX = Arrays.copyOf(this.predictedX, capacity);
+		this.predictedZ = Arrays.copyOf(this.predictedZ, capacity);
+		this.slotCell = Arrays.copyOf(this.slotCell, capacity);
+	}
+
+	public void reset()
+	{
+		Arrays.fill(this.live, 0, this.slotCount, false);
+
+		this.slotCount = 0;
+		this.liveCount = 0;
+		this.freeCount = 0;
+		this.idTracks.clear();
+		this.lastSequence = -1;
+	}
+
+	/**
+	 * Matches the clusters of a newly published state against the tracks, moving them by the time between the states'
+	 * timestamps. States that were already seen are ignored, and one from another epoch, as after a replay seek, or one
+	 * after a long run of states that were never passed in, starts the tracks over.
+	 */
+	public void update(WorldHordeState world)
+	{
+		long sequence = world.getSequence();
+
+		if(sequence == this.lastSequence)
+			return;
+
+		if(world.getEpoch() != this.lastEpoch || (this.lastSequence >= 0 && sequence - this.lastSequence > MAX_SKIPPED_STATES))
+			this.reset();
+
+		long timestamp = world.getTimestamp();
+		float seconds = this.lastSequence < 0 ? 0.0f : Math.max(0.0f, Math.min(MAX_FRAME_SECONDS, (timestamp - this.lastTimestamp) / 1e9f));
+
+		this.lastSequence = sequence;
+		this.lastTimestamp = timestamp;
+		this.lastEpoch = world.getEpoch();
+		this.frame++;
+
+		this.mapTypes(world);
+
+		int clusters = world.getClusterCount();
+
+		if(this.clusterTrack.length < clusters)
+			this.clusterTrack = new int[Math.max(clusters, this.clusterTrack.length * 2)];
+
+		Arrays.fill(this.clusterTrack, 0, clusters, -1);
+
+		this.matchIds(world, seconds);
+		this.matchNearest(world, seconds);
+
+		for(int i = 0; i < clusters; i++)
+		{
+			if(this.clusterTrack[i] < 0)
+				this.clusterTrack[i] = this.createTrack(world, i);
+		}
+
+		for(int slot = 0; slot < this.slotCount; slot++)
+		{
+			if(this.live[slot] && this.matchedFrame[slot] != this.frame && ++this.missed[slot] > MAX_MISSED_FRAMES)
+				this.freeTrack(slot);
+		}
+	}
+
+	private void mapTypes(WorldHordeState world)
+	{
+		int types = world.getClusterTypeCount();
+
+		if(this.typeMap.length < types)
+			this.typeMap = new int[types];
+
+		for(int type = 0; type < types; type++)
+		{
+			String name = world.getClusterTypeNameByOrdinal(type);
+			int index = 0;
+
+			while(index < this.typeCount && !this.typeNames[index].equals(name))
+				index++;
+
+			if(index == this.typeCount)
+			{
+				if(this.typeCount == this.typeNames.length)
+					this.typeNames = Arrays.copyOf(this.typeNames, this.typeCount * 2);
+
+				this.typeNames[this.typeCount++] = name;
+			}
+
+			this.typeMap[type] = index;
+		}
+	}
+
+	private void matchIds(WorldHordeState world, float seconds)
+	{
+		if(this.idTracks.size() == 0)
+			return;
+
+		for(int i = 0; i < world.getClusterCount(); i++)
+		{
+			int id = world.getClusterId(i);
+
+			if(id < 0)
+				continue;
+
+			int slot = this.idTracks.get(id);
+
+			if(slot != IntIntMap.NO_VALUE && this.trackType[slot] == this.typeMap[world.getClusterType(i)])
+				this.assign(world, i, slot, seconds);
+		}
+	}
+
+	private void matchNearest(WorldHordeState world, float seconds)
+	{
+		float radius = Math.max(MIN_MATCH_RADIUS, this.maxSpeed * seconds);
+		float radiusSquared = radius * radius;
+
+		if(this.buildGrid(world.GetWorldSize().x, radius, seconds) == 0)
+			return;
+
+		int columns = this.gridColumns;
+		int pairCount = 0;
+
+		// Visit clusters in the order of the world's own spatial index, so neighbouring clusters read neighbouring cells.
+		SpatialGrid clusterIndex = world.getClusterIndex();
+
+		for(int e = 0; e < world.getClusterCount(); e++)
+		{
+			int i = clusterIndex.getEntry(e);
+
+			if(this.clusterTrack[i] >= 0 || world.getClusterId(i) >= 0)
+				continue;
+
+			float cx = world.getClusterX(i), cz = world.getClusterZ(i);
+			int column = this.gridCell(cx), row = this.gridCell(cz);
+			int minColumn = Math.max(0, column - 1), maxColumn = Math.min(columns - 1, column + 1);
+			int type = this.typeMap[world.getClusterType(i)];
+
+			for(int r = Math.max(0, row - 1); r <= Math.min(columns - 1, row + 1); r++)
+			{
+				int end = this.gridStart[r * columns + maxColumn + 1];
+
+				for(int entry = this.gridStart[r * columns + minColumn]; entry < end; entry++)
+				{
+					if(this.gridType[entry] != type)
+						continue;
+
+					float ox = this.gridX[entry] - cx, oz = this.gridZ[entry] - cz;
+					float distanceSquared = ox * ox + oz * oz;
+
+					if(distanceSquared > radiusSquared)
+						continue;
+
+					if(pairCount == this.pairs.length)
+					{
+						int capacity = Math.max(64, pairCount * 2);
+
+						this.pairs = Arrays.copyOf(this.pairs, capacity);
+						this.pairCluster = Arrays.copyOf(this.pairCluster, capacity);
+						this.pairSlot = Arrays.copyOf(this.pairSlot, capacity);
+					}
+
+					// Non-negative float bits order like the floats themselves, so sorting the packed longs sorts by distance.
+					this.pairs[pairCount] = (long)Float.floatToRawIntBits(distanceSquared) << 32 | pairCount;
+					this.pairCluster[pairCount] = i;
+					this.pairSlot[pairCount] = this.gridSlot[entry];
+					pairCount++;
+				}
+			}
+		}
+
+		Arrays.sort(this.pairs, 0, pairCount);
+
+		for(int p = 0; p < pairCount; p++)
+		{
+			int pair = (int)this.pairs[p];
+			int cluster = this.pairCluster[pair], slot = this.pairSlot[pair];
+
+			if(this.clusterTrack[cluster] < 0 && this.matchedFrame[slot] != this.frame)
+				this.assign(world, cluster, slot, seconds);
+		}
+	}
+
+	/**
+	 * Buckets the unmatched tracks by where they are predicted to be now, into a grid over the world with cells no smaller
+	 * than the match radius. Entries are packed by cell, so the cells around a cluster are a few contiguous runs.
+	 * Returns the number of tracks in the grid.
+	 */
+	private int buildGrid(int worldSize, float radius, float seconds)
+	{
+		this.gridCellSize = Math.max(radius, Math.max(1, worldSize) / (float)MAX_GRID_COLUMNS);
+		this.gridColumns = Math.max(1, (int)Math.ceil(worldSize / this.gridCellSize));
+		this.gridMin = -worldSize / 2.0f;
+
+		int cells = this.gridColumns * this.gridColumns;
+
+		if(this.gridStart.length < cells + 1)
+			this.gridStart = new int[cells + 1];
+		else
+			Arrays.fill(this.gridStart, 0, cells + 1, 0);
+
+		int count = 0;
+
+		for(int slot = 0; slot < this.slotCount; slot++)
+		{
+			if(!this.live[slot] || this.matchedFrame[slot] == this.frame || this.trackId[slot] >= 0)
+			{
+				this.slotCell[slot] = -1;
+				continue;
+			}
+
+			// Look for the track where it would be by now, so fast hordes are not left out of their own cell.
+			float px = this.x[slot] + this.velocityX[slot] * seconds;
+			float pz = this.z[slot] + this.velocityZ[slot] * seconds;
+
+			this.predictedX[slot] = px;
+			this.predictedZ[slot] = pz;
+
+			int cell = this.gridCell(pz) * this.gridColumns + this.gridCell(px);
+
+			this.slotCell[slot] = cell;
+			this.gridStart[cell + 1]++;
+			count++;
+		}
+
+		if(count == 0)
+			return 0;
+
+		for(int cell = 0; cell < cells; cell++)
+		{
+			this.gridStart[cell + 1] += this.gridStart[cell];
+		}
+
+		if(this.gridSlot.length < count)
+		{
+			int capacity = Math.max(count, this.gridSlot.length * 2);
+
+			this.gridSlot = new int[capacity];
+			this.gridType = new int[capacity];
+			this.gridX = new float[capacity];
+			this.gridZ = new float[capacity];
+		}
+
+		// Fill each cell from its start, which leaves every start pointing at the next cell's, then shift them back.
+		for(int slot = 0; slot < this.slotCount; slot++)
+		{
+			int cell = this.slotCell[slot];
+
+			if(cell < 0)
+				continue;
+
+			int entry = this.gridStart[cell]++;
+
+			this.gridSlot[entry] = slot;
+			this.gridType[entry] = this.trackType[slot];
+			this.gridX[entry] = this.predictedX[slot];
+			this.gridZ[entry] = this.predictedZ[slot];
+		}
+
+		System.arraycopy(this.gridStart, 0, this.gridStart, 1, cells);
+		this.gridStart[0] = 0;
+
+		return count;
+	}
+
+	private int gridCell(float coordinate)
+	{
+		return Math.max(0, Math.min(this.gridColumns - 1, (int)((coordinate - this.gridMin) / this.gridCellSize)));
+	}
+
+	private void assign(WorldHordeState world, int cluster, int slot, float seconds)
+	{
+		float cx = world.getClusterX(cluster), cz = world.getClusterZ(cluster);
+
+		if(seconds > 0.0f)
+		{
+			float vx = (cx - this.x[slot]) / seconds, vz = (cz - this.z[slot]) / seconds;
+
+			this.velocityX[slot] += (vx - this.velocityX[slot]) * VELOCITY_SMOOTHING;
+			this.velocityZ[slot] += (vz - this.velocityZ[slot]) * VELOCITY_SMOOTHING;
+		}
+
+		this.x[slot] = cx;
+		this.z[slot] = cz;
+		this.missed[slot] = 0;
+		this.matchedFrame[slot] = this.frame;
+		this.clusterTrack[cluster] = slot;
+
+		this.pushTrail(slot, cx, cz);
+	}
+
+	private int createTrack(WorldHordeState world, int cluster)
+	{
+		int slot;
+
+		if(this.freeCount > 0)
+		{
+			slot = this.freeSlots[--this.freeCount];
+		}
+		else
+		{
+			if(this.slotCount == this.live.length)
+				this.grow();
+
+			slot = this.slotCount++;
+		}
+
+		int id = world.getClusterId(cluster);
+
+		this.live[slot] = true;
+		this.trackType[slot] = this.typeMap[world.getClusterType(cluster)];
+		this.trackId[slot] = id;
+		this.missed[slot] = 0;
+		this.matchedFrame[slot] = this.frame;
+		this.x[slot] = world.getClusterX(cluster);
+		this.z[slot] = world.getClusterZ(cluster);
+		this.velocityX[slot] = 0.0f;
+		this.velocityZ[slot] = 0.0f;
+		this.trailHead[slot] = 0;
+		this.trailSize[slot] = 0;
+		this.liveCount++;
+
+		if(id >= 0)
+			this.idTracks.put(id, slot);
+
+		this.pushTrail(slot, this.x[slot], this.z[slot]);
+		return slot;
+	}
+
+	private void freeTrack(int slot)
+	{
+		int id = this.trackId[slot];
+
+		// The id may already belong to a newer track of another type.
+		if(id >= 0 && this.idTracks.get(id) == slot)
+			this.idTracks.remove(id);
+
+		this.live[slot] = false;
+		this.liveCount--;
+
+		if(this.freeCount == this.freeSlots.length)
+			this.freeSlots = Arrays.copyOf(this.freeSlots, Math.max(16, this.freeCount * 2));
+
+		this.freeSlots[this.freeCount++] = slot;
+	}
+
+	private void pushTrail(int slot, float x, float z)
+	{
+		int offset = slot * this.trailLength + this.trailHead[slot];
+
+		this.trailX[offset] = x;
+		this.trailZ[offset] = z;
+		this.trailHead[slot] = (this.trailHead[slot] + 1) % this.trailLength;
+
+		if(this.trailSize[slot] < this.trailLength)
+			this.trailSize[slot]++;
+	}
+
+	/**
+	 * Tracks occupy slots {@code 0} up to this, some of which may be free. Check {@link #isLive(int)} before reading a slot.
+	 */
+	public int getSlotCount()
+	{
+		return this.slotCount;
+	}
+
+	public int getTrackCount()
+	{
+		return this.liveCount;
+	}
+
+	public int getTrailLength()
+	{
+		return this.trailLength;
+	}
+
+	public boolean isLive(int slot)
+	{
+		return this.live[slot];
+	}
+
+	/**
+	 * The track the cluster in the given row of the last state belongs to.
+	 */
+	public int getClusterTrack(int row)
+	{
+		return this.clusterTrack[row];
+	}
+
+	public int getTrackType(int slot)
+	{
+		return this.trackType[slot];
+	}
+
+	public int getTypeCount()
+	{
+		return this.typeCount;
+	}
+
+	public String getTypeName(int type)
+	{
+		return this.typeNames[type];
+	}
+
+	public float getX(int slot)
+	{
+		return this.x[slot];
+	}
+
+	public float getZ(int slot)
+	{
+		return this.z[slot];
+	}
+
+	public float getVelocityX(int slot)
+	{
+		return this.velocityX[slot];
+	}
+
+	public float getVelocityZ(int slot)
+	{
+		return this.velocityZ[slot];
+	}
+
+	/**
+	 * Speed in blocks per second.
+	 */
+	public float getSpeed(int slot)
+	{
+		return (float)Math.sqrt(this.velocityX[slot] * this.velocityX[slot] + this.velocityZ[slot] * this.velocityZ[slot]);
+	}
+
+	/**
+	 * Heading in degrees clockwise from north, which is positive z.
+	 */
+	public float getHeading(int slot)
+	{
+		float degrees = (float)Math.toDegrees(Math.atan2(this.velocityX[slot], this.velocityZ[slot]));
+		return degrees < 0.0f ? degrees + 360.0f : degrees;
+	}
+
+	public int getTrailSize(int slot)
+	{
+		return this.trailSize[slot];
+	}
+
+	/**
+	 * Trail position {@code age} updates ago, where 0 is the current position.
+	 */
+	public float getTrailX(int slot, int age)
+	{
+		return this.trailX[this.trailOffset(slot, age)];
+	}
+
+	public float getTrailZ(int slot, int age)
+	{
+		return this.trailZ[this.trailOffset(slot, age)];
+	}
+
+	private int trailOffset(int slot, int age)
+	{
+		return slot * this.trailLength + Math.floorMod(this.trailHead[slot] - 1 - age, this.trailLength);
+	}
+}
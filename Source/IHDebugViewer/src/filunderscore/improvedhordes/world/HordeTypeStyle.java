@@ -0,0 +1,81 @@
+package filunderscore.improvedhordes.world;
+
+import java.awt.Color;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How clusters of one horde type are drawn. Styles are resolved once per type name, when a world state's type table is
+ * read, so drawing a cluster only takes an array lookup by its type ordinal. Types the server adds that the viewer does
+ * not know yet are registered on first sight with a colour derived from their name, so they look the same every run.
+ */
+public final class HordeTypeStyle
+{
+	public static final int DEFAULT_LABEL_MIN_PIXELS = 12;
+
+	private static final Map<String, HordeTypeStyle> KNOWN = Map.of(
+			"wanderinganimalhorde", new HordeTypeStyle(Color.blue, ClusterSnapshot.MARKER_SIZE, DEFAULT_LABEL_MIN_PIXELS),
+			"wanderingenemyhorde", new HordeTypeStyle(Color.red, ClusterSnapshot.MARKER_SIZE, DEFAULT_LABEL_MIN_PIXELS),
+			"screamerhorde", new HordeTypeStyle(Color.green, ClusterSnapshot.MARKER_SIZE, DEFAULT_LABEL_MIN_PIXELS),
+			"wanderinganimalenemyhorde", new HordeTypeStyle(Color.orange, ClusterSnapshot.MARKER_SIZE, DEFAULT_LABEL_MIN_PIXELS));
+
+	private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+	private static final Map<String, HordeTypeStyle> STYLES = new ConcurrentHashMap<>();
+
+	private final Color color;
+	private final int markerSize;
+	private final int labelMinPixels;
+
+	private HordeTypeStyle(Color color, int markerSize, int labelMinPixels)
+	{
+		this.color = color;
+		this.markerSize = markerSize;
+		this.labelMinPixels = labelMinPixels;
+	}
+
+	/**
+	 * Returns the style for a type name, ignoring case, registering one for names that are not known yet.
+	 */
+	public static HordeTypeStyle forType(String type)
+	{
+		HordeTypeStyle style = STYLES.get(type);
+
+		return style != null ? style : STYLES.computeIfAbsent(type, HordeTypeStyle::create);
+	}
+
+	private static HordeTypeStyle create(String type)
+	{
+		String key = type.toLowerCase(Locale.ROOT);
+		HordeTypeStyle known = KNOWN.get(key);
+
+		if(known != null)
+			return known;
+
+		// Multiplying by the golden ratio in fixed point spreads similar hashes over distant hues.
+		float hue = (key.hashCode() * GOLDEN_RATIO >>> 8) / (float)(1 << 24);
+		return new HordeTypeStyle(Color.getHSBColor(hue, 0.55f, 0.95f), ClusterSnapshot.MARKER_SIZE, DEFAULT_LABEL_MIN_PIXELS);
+	}
+
+	public Color getColor()
+	{
+		return this.color;
+	}
+
+	/**
+	 * Marker diameter in blocks.
+	 */
+	public int getMarkerSize()
+	{
+		return this.markerSize;
+	}
+
+	/**
+	 * Smallest on-screen marker width at which the density label is drawn.
+	 */
+	public int getLabelMinPixels()
+	{
+		return this.labelMinPixels;
+	}
+}
@@ -1,12 +1,18 @@
 package filunderscore.improvedhordes.world;
 
-import java.io.DataInput;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-import filunderscore.improvedhordes.gui.ImprovedHordesFrame;
-import filunderscore.improvedhordes.util.Vector2i;
-import filunderscore.improvedhordes.util.Vector3;
+import filunderscore.improvedhordes.alert.AlertEngine;
+import filunderscore.improvedhordes.gui.SimulationView;
+import filunderscore.improvedhordes.metrics.FrameDecodedEvent;
+import filunderscore.improvedhordes.metrics.ViewerMetrics;
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.util.SymbolTable;
 
 public class ImprovedHordesSimulation 
 {
@@ -15,86 +21,289 @@ public class ImprovedHordesSimulation
 		NOT_CONNECTED,
 		LOST_CONNECTION,
 		CONNECTED,
-		RECONNECTING;
+		RECONNECTING,
+		REPLAYING;
 	}
 	
-	private ImprovedHordesFrame frame;
-	public ConnectionStatus status = ConnectionStatus.NOT_CONNECTED;
-	public WorldHordeState world;
+	private static final int PLAYER_BYTES = 4 * 4 + 1;
+	private static final int CLUSTER_TYPE_BYTES = 1 + 4;
+	private static final int CLUSTER_BYTES = 4 * 4;
+	private static final int ZONE_BYTES = 8 * 4;
 	
-	public void setFrame(ImprovedHordesFrame frame)
+	// Stands in for a timestamp when the frame is current as of its arrival.
+	private static final long RECEIVE_TIME = Long.MIN_VALUE;
+	
+	private final WorldHordeStateExchange exchange = new WorldHordeStateExchange();
+	private final AtomicReference<ConnectionStatus> status = new AtomicReference<>(ConnectionStatus.NOT_CONNECTED);
+	
+	private final ViewerMetrics metrics;
+	private final AlertEngine alerts;
+	private final DensityHeatmap heatmap = new DensityHeatmap(DensityHeatmap.DEFAULT_CELL_SIZE, DensityHeatmap.DEFAULT_HALF_LIFE_SECONDS);
+	
+	// Only touched by whoever feeds read, one connection or replay at a time.
+	private final SymbolTable symbols = new SymbolTable();
+	private final DeltaDecoder deltaDecoder = new DeltaDecoder(this.symbols);
+	private final SectionedDecoder sectionedDecoder;
+	private volatile int protocol = Protocol.LEGACY;
+	private int epoch;
+	
+	private final ReentrantLock statusLock = new ReentrantLock();
+	private final Condition statusCondition = this.statusLock.newCondition();
+	
+	private volatile SimulationView view;
+	
+	public ImprovedHordesSimulation()
+	{
+		this("viewer");
+	}
+	
+	public ImprovedHordesSimulation(String source)
+	{
+		this.metrics = new ViewerMetrics(source);
+		this.alerts = new AlertEngine(source);
+		this.sectionedDecoder = new SectionedDecoder(this.symbols, this.metrics, ForkJoinPool.commonPool());
+	}
+	
+	public ViewerMetrics getMetrics()
+	{
+		return this.metrics;
+	}
+	
+	public AlertEngine getAlerts()
+	{
+		return this.alerts;
+	}
+	
+	public DensityHeatmap getHeatmap()
+	{
+		return this.heatmap;
+	}
+	
+	/**
+	 * Sets the protocol of the frames that follow. Called by whoever feeds {@link #read} before its first frame,
+	 * which also starts over from any state left over from a previous connection.
+	 */
+	public void setProtocol(int protocol)
+	{
+		this.startOver();
+		this.protocol = protocol;
+	}
+	
+	/**
+	 * Marks the next frame as not following on from the previous one, as when a replay restarts from a keyframe. Drops the
+	 * delta state, and gives the states that follow a new {@link WorldHordeState#getEpoch() epoch} so the heatmap and
+	 * trails start over. Called by whoever feeds {@link #read}.
+	 */
+	public void startOver()
+	{
+		this.deltaDecoder.reset();
+		this.epoch++;
+	}
+	
+	public void setView(SimulationView view)
+	{
+		this.view = view;
+	}
+	
+	public ConnectionStatus getStatus()
+	{
+		return this.status.get();
+	}
+	
+	public boolean requestReconnect()
+	{
+		return this.transition(ConnectionStatus.NOT_CONNECTED, ConnectionStatus.RECONNECTING) || 
+				this.transition(ConnectionStatus.LOST_CONNECTION, ConnectionStatus.RECONNECTING);
+	}
+	
+	public boolean connected()
+	{
+		return this.transition(ConnectionStatus.RECONNECTING, ConnectionStatus.CONNECTED);
+	}
+	
+	public boolean startReplay()
+	{
+		return this.transition(ConnectionStatus.NOT_CONNECTED, ConnectionStatus.REPLAYING);
+	}
+	
+	public void lostConnection()
+	{
+		if(this.status.getAndSet(ConnectionStatus.LOST_CONNECTION) != ConnectionStatus.LOST_CONNECTION)
+			this.statusChanged();
+	}
+	
+	private boolean transition(ConnectionStatus from, ConnectionStatus to)
+	{
+		if(!this.status.compareAndSet(from, to))
+			return false;
+		
+		this.statusChanged();
+		return true;
+	}
+	
+	private void statusChanged()
+	{
+		this.statusLock.lock();
+		
+		try
+		{
+			this.statusCondition.signalAll();
+		}
+		finally
+		{
+			this.statusLock.unlock();
+		}
+		
+		this.update();
+	}
+	
+	/**
+	 * Blocks until the status becomes the given one. Uses a lock rather than a monitor so waiting virtual threads unmount.
+	 */
+	public void awaitStatus(ConnectionStatus status) throws InterruptedException
+	{
+		this.statusLock.lock();
+		
+		try
+		{
+			while(this.status.get() != status)
+				this.statusCondition.await();
+		}
+		finally
+		{
+			this.statusLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the latest published world state. Only call this from the Swing event dispatch thread, and stop using the
+	 * state returned before, since this may hand it back to the decoder.
+	 */
+	public WorldHordeState getWorld()
 	{
-		this.frame = frame;
+		return this.exchange.acquire();
 	}
 	
-	public void initPanel()
+	public void update()
 	{
-		this.frame.setSizes();
+		SimulationView view = this.view;
+		
+		if(view != null)
+			view.requestUpdate();
 	}
 	
-	public void read(DataInput in) throws IOException
+	/**
+	 * Decodes the next frame as current from when it starts arriving.
+	 */
+	public void read(WireBuffer in) throws IOException
 	{
-		int worldSize = in.readInt();
+		this.read(in, RECEIVE_TIME);
+	}
+	
+	/**
+	 * Decodes the next frame as current at the given time in nanoseconds, on the same clock as the other frames since the
+	 * last {@link #startOver()}.
+	 */
+	public void read(WireBuffer in, long timestamp) throws IOException
+	{
+		in.beginFrame();
+		
+		// Wait for the frame to start arriving first, so idle time between frames is not counted as decoding.
+		in.ensure(4);
 		
-		Vector2i worldSizeV = new Vector2i(worldSize, worldSize);
-		WorldHordeState world = new WorldHordeState(worldSizeV);
+		FrameDecodedEvent event = new FrameDecodedEvent();
+		event.begin();
 		
-		int playerSize = in.readInt();
+		long start = System.nanoTime();
+		long allocatedStart = ViewerMetrics.getThreadAllocatedBytes();
+		
+		WorldHordeState world = this.exchange.getBack();
+		
+		if(this.protocol == Protocol.DELTA)
+		{
+			this.deltaDecoder.read(in);
+			world.copyFrom(this.deltaDecoder.getMaster());
+		}
+		else if(this.protocol == Protocol.SECTIONED)
+		{
+			this.sectionedDecoder.read(in, world);
+		}
+		else
+		{
+			this.readLegacy(in, world);
+		}
+		
+		boolean dropped = this.exchange.publish(timestamp == RECEIVE_TIME ? start : timestamp, this.epoch);
+		
+		long allocatedEnd = ViewerMetrics.getThreadAllocatedBytes();
+		this.metrics.recordDecode(in.getFrameLength(), System.nanoTime() - start, allocatedStart >= 0 ? allocatedEnd - allocatedStart : -1);
+		
+		if(dropped)
+			this.metrics.recordDropped();
+		
+		event.end();
+		
+		if(event.shouldCommit())
+		{
+			event.source = this.metrics.getSource();
+			event.bytes = in.getFrameLength();
+			event.players = world.getPlayerCount();
+			event.clusters = world.getClusterCount();
+			event.zones = world.getZoneCount();
+			event.dropped = dropped;
+			event.commit();
+		}
+		
+		// The published state stays sealed until this thread publishes again, so it can still be read here.
+		this.alerts.evaluate(world);
+		this.heatmap.update(world);
+		
+		this.update();
+	}
+	
+	private void readLegacy(WireBuffer in, WorldHordeState world) throws IOException
+	{
+		world.clear(in.readInt());
+		
+		int playerSize = in.readCount(PLAYER_BYTES);
 		
 		for(int i = 0; i < playerSize; i++)
 		{
-			world.getPlayers().add(new PlayerSnapshot(new Vector3(in.readFloat(), in.readFloat(), in.readFloat()), in.readInt(), readString(in)));
+			world.addPlayer(in.readFloat(), in.readFloat(), in.readFloat(), in.readInt(), readString(in, this.symbols));
 		}
 		
-		int clusterSize = in.readInt();
+		int clusterSize = in.readCount(CLUSTER_TYPE_BYTES);
 		
 		for(int i = 0; i < clusterSize; i++)
 		{
-			String type = readString(in);
-			int count = in.readInt();
+			int type = world.addClusterType(readString(in, this.symbols));
+			int count = in.readCount(CLUSTER_BYTES);
+			
+			in.ensure(count * CLUSTER_BYTES);
 			
 			for(int j = 0; j < count; j++)
 			{
-				world.getClusters().add(new ClusterSnapshot(type, new Vector3(in.readFloat(), in.readFloat(), in.readFloat()), in.readFloat()));
+				world.addCluster(type, in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
 			}
 		}
 		
-		int zoneSize = in.readInt();
+		int zoneSize = in.readCount(ZONE_BYTES);
+		
+		in.ensure(zoneSize * ZONE_BYTES);
 		
 		for(int i = 0; i < zoneSize; i++)
 		{
-			Vector2i position = new Vector2i(in.readInt(), in.readInt());
-			Vector2i size = new Vector2i(in.readInt(), in.readInt());
-			float density = in.readFloat();
-			int count = in.readInt();
-			float zoneDistanceAvg = in.readFloat();
-			float avgWeight = in.readFloat();
-			
-			world.getZones().add(new POI(position, size, density, count, zoneDistanceAvg, avgWeight));
+			world.addZone(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readFloat(), in.readInt(), in.readFloat(), in.readFloat());
 		}
-		
-		this.world = world;
-		this.initPanel();
-		
-		if(this.frame != null)
-			this.frame.update();
 	}
 	
-	private String readString(DataInput in) throws IOException
+	static String readString(WireBuffer in, SymbolTable symbols) throws IOException
 	{
 		boolean valid = in.readBoolean();
 		
 		if(valid)
 		{
-			int length = in.readInt();
-			byte[] b = new byte[length];
-			
-			for(int i = 0; i < length; i++)
-			{
-				b[i] = in.readByte();
-			}
-			
-			return new String(b, StandardCharsets.UTF_8);
+			return in.readString(in.readInt(), symbols);
 		}
 		else
 		{
@@ -4,39 +4,68 @@ import java.awt.Color;
 import java.awt.Graphics;
 
 import filunderscore.improvedhordes.gui.IHRenderer;
-import filunderscore.improvedhordes.gui.IHRenderer.ScaledVector;
 import filunderscore.improvedhordes.util.Vector2i;
 
 public class POI implements Drawable
 {
-	public Vector2i position;
-	public Vector2i size;
-	public float density;
-	public int count;
-	public float zoneDistanceAvg;
-	public float avgWeight;
-	
-	public POI(Vector2i position, Vector2i size, float density, int count, float zoneDistanceAvg, float avgWeight)
-	{
-		this.position = position;
-		this.size = size;
-		this.density = density;
-		this.count = count;
-		this.zoneDistanceAvg = zoneDistanceAvg;
-		this.avgWeight = avgWeight;
+	private final WorldHordeState world;
+	private final int index;
+	
+	public POI(WorldHordeState world, int index)
+	{
+		this.world = world;
+		this.index = index;
+	}
+	
+	public Vector2i getPosition()
+	{
+		return new Vector2i(this.world.getZoneX(this.index), this.world.getZoneY(this.index));
+	}
+	
+	public Vector2i getSize()
+	{
+		return new Vector2i(this.world.getZoneWidth(this.index), this.world.getZoneHeight(this.index));
+	}
+	
+	public float getDensity()
+	{
+		return this.world.getZoneDensity(this.index);
+	}
+	
+	public int getCount()
+	{
+		return this.world.getZoneEntityCount(this.index);
+	}
+	
+	public float getZoneDistanceAvg()
+	{
+		return this.world.getZoneDistanceAvg(this.index);
+	}
+	
+	public float getAvgWeight()
+	{
+		return this.world.getZoneAvgWeight(this.index);
 	}
 
 	@Override
 	public void draw(WorldHordeState world, IHRenderer renderer, Graphics g) 
 	{
-		ScaledVector scaled = renderer.rescale(this.position, this.size);
+		draw(this.world, this.index, renderer, g);
+	}
+	
+	public static void draw(WorldHordeState world, int index, IHRenderer renderer, Graphics g)
+	{
+		int x = renderer.toScreenX(world.getZoneX(index));
+		int y = renderer.toScreenY(world.getZoneY(index));
+		int width = renderer.scaleX(world.getZoneWidth(index));
+		int height = renderer.scaleY(world.getZoneHeight(index));
 		
 		g.setColor(Color.yellow);
 		
-		g.drawRect((int)(scaled.scaledPosition.x), (int)(scaled.scaledPosition.y - scaled.scaledSize.y), scaled.scaledSize.x, scaled.scaledSize.y);
+		g.drawRect(x, y - height, width, height);
 
 		g.setFont(g.getFont().deriveFont(12.0f));
 		//g.drawString("Density: " + this.density + " Count: " + this.count, scaled.scaledPosition.x, scaled.scaledPosition.y - 10);
 		//g.drawString("ZoneDistAvg: " + this.zoneDistanceAvg + " AvgW: " + this.avgWeight, scaled.scaledPosition.x, scaled.scaledPosition.y - 30);
 	}
-}
\ No newline at end of file
+}
@@ -4,35 +4,56 @@ import java.awt.Color;
 import java.awt.Graphics;
 
 import filunderscore.improvedhordes.gui.IHRenderer;
-import filunderscore.improvedhordes.gui.IHRenderer.ScaledVector;
-import filunderscore.improvedhordes.util.Vector2i;
 import filunderscore.improvedhordes.util.Vector3;
 
 public class PlayerSnapshot implements Drawable
 {
-	public Vector3 location;
-
-	public int gamestage;
-	public String biome;
+	public static final int MARKER_SIZE = 50;
+	public static final Color COLOR = Color.yellow;
+	
+	private final WorldHordeState world;
+	private final int index;
+	
+	public PlayerSnapshot(WorldHordeState world, int index)
+	{
+		this.world = world;
+		this.index = index;
+	}
+	
+	public Vector3 getLocation()
+	{
+		return new Vector3(this.world.getPlayerX(this.index), this.world.getPlayerY(this.index), this.world.getPlayerZ(this.index));
+	}
+	
+	public int getGamestage()
+	{
+		return this.world.getPlayerGamestage(this.index);
+	}
 	
-	public PlayerSnapshot(Vector3 location, int gamestage, String biome)
+	public String getBiome()
 	{
-		this.location = location;
-		this.gamestage = gamestage;
-		this.biome = biome;
+		return this.world.getPlayerBiome(this.index);
 	}
 	
 	public String toString()
 	{
-		return String.format("Player [location: %s, gamestage: %d, biome: %s]", this.location, this.gamestage, this.biome);
+		return String.format("Player [location: %s, gamestage: %d, biome: %s]", this.getLocation(), this.getGamestage(), this.getBiome());
 	}
 
 	@Override
 	public void draw(WorldHordeState world, IHRenderer renderer, Graphics g) 
 	{
-		ScaledVector scaled = renderer.rescale(this.location.toVXZ(), new Vector2i(50, 50));
+		draw(this.world, this.index, renderer, g);
+	}
+	
+	public static void draw(WorldHordeState world, int index, IHRenderer renderer, Graphics g)
+	{
+		int x = renderer.toScreenX(world.getPlayerX(index));
+		int y = renderer.toScreenY(world.getPlayerZ(index));
+		int width = renderer.scaleX(MARKER_SIZE);
+		int height = renderer.scaleY(MARKER_SIZE);
 		
-		g.setColor(Color.yellow);
-		g.fillOval((int)(scaled.scaledPosition.x - scaled.scaledSize.x / 1.5), (int)(scaled.scaledPosition.y - scaled.scaledSize.y / 1.5), scaled.scaledSize.x, scaled.scaledSize.y);
+		g.setColor(COLOR);
+		g.fillOval((int)(x - width / 1.5), (int)(y - height / 1.5), width, height);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,383 @@
+package filunderscore.improvedhordes.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32C;
+
+import filunderscore.improvedhordes.metrics.ViewerMetrics;
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.util.SymbolTable;
+
+/**
+ * Decodes sectioned protocol frames. A frame is checked against its length and checksum, and every section against
+ * the frame, before anything is decoded. A frame that fails is dropped by searching forward for the next frame magic,
+ * so corruption costs that frame rather than the connection. Large frames then decode their sections in parallel, with
+ * the cluster records split into chunks, since the type table gives the row of every record up front.
+ */
+final class SectionedDecoder
+{
+	private static final int PLAYER_BYTES = 4 * 4;
+	private static final int CLUSTER_BYTES = 4 * 4;
+	private static final int ZONE_BYTES = 4 * 4;
+
+	// Smaller frames decode on the calling thread, where forking costs more than it saves.
+	private static final int MIN_PARALLEL_LENGTH = 256 << 10;
+	private static final int CLUSTER_CHUNK = 16384;
+
+	// Players and zones are a work unit each, followed by one per chunk of cluster records.
+	private static final int UNIT_PLAYERS = 0;
+	private static final int UNIT_ZONES = 1;
+	private static final int UNIT_CLUSTERS = 2;
+
+	private final SymbolTable symbols;
+	private final ViewerMetrics metrics;
+	private final ForkJoinPool pool;
+	private final CRC32C checksum = new CRC32C();
+
+	// Where the sections of the frame being decoded start, or -1 for sections it does not have.
+	private int playersOffset, zonesOffset, clustersOffset;
+	private int clusterCount;
+	private boolean parallel;
+
+	SectionedDecoder(SymbolTable symbols, ViewerMetrics metrics, ForkJoinPool pool)
+	{
+		this.symbols = symbols;
+		this.metrics = metrics;
+		this.pool = pool;
+	}
+
+	/**
+	 * Decodes the next intact frame into the world, dropping any corrupt frames before it. Frames of another version
+	 * are skipped whole, since their checksum shows their length can be trusted.
+	 */
+	void read(WireBuffer in, WorldHordeState world) throws IOException
+	{
+		while(true)
+		{
+			in.beginFrame();
+			in.ensure(Protocol.FRAME_HEADER_SIZE);
+
+			int length = in.peekInt(Protocol.FRAME_LENGTH_OFFSET);
+
+			if(in.peekInt(0) != Protocol.FRAME_MAGIC || length < Protocol.SECTION_TABLE_OFFSET || length > Protocol.FRAME_MAX_LENGTH)
+			{
+				this.resync(in);
+				continue;
+			}
+
+			in.ensure(length);
+			ByteBuffer frame = in.peekSlice(length);
+
+			if(!this.isIntact(frame))
+			{
+				this.resync(in);
+				continue;
+			}
+
+			if(frame.getInt(4) != Protocol.FRAME_VERSION)
+			{
+				in.skip(length);
+				this.metrics.recordSkipped(length);
+				continue;
+			}
+
+			boolean decoded = this.decode(frame, world);
+			in.skip(length);
+
+			if(decoded)
+				return;
+
+			this.metrics.recordCorrupt(length);
+		}
+	}
+
+	private boolean isIntact(ByteBuffer frame)
+	{
+		this.checksum.reset();
+		this.checksum.update(frame.position(Protocol.FRAME_HEADER_SIZE));
+		frame.position(0);
+
+		return (int)this.checksum.getValue() == frame.getInt(Protocol.FRAME_CHECKSUM_OFFSET);
+	}
+
+	/**
+	 * Drops bytes up to the next frame magic. A frame that failed its checks may have a corrupt length, so the search
+	 * starts one byte past where it started rather than past its end.
+	 */
+	private void resync(WireBuffer in) throws IOException
+	{
+		int skipped = 0;
+
+		do
+		{
+			in.skip(1);
+			in.beginFrame();
+			in.ensure(4);
+			skipped++;
+		}
+		while(in.peekInt(0) != Protocol.FRAME_MAGIC);
+
+		this.metrics.recordCorrupt(skipped);
+	}
+
+	/**
+	 * Returns false if the section table or any section does not fit the frame, which is found before any entity is
+	 * decoded. Cluster types and rows are added while checking, so each unit decoded afterwards only writes rows of its own.
+	 */
+	private boolean decode(ByteBuffer frame, WorldHordeState world)
+	{
+		int length = frame.limit();
+		int sections = frame.getInt(Protocol.FRAME_HEADER_SIZE + 4);
+		int tableEnd = Protocol.SECTION_TABLE_OFFSET;
+
+		if(sections < 0 || sections > (length - tableEnd) / Protocol.SECTION_ENTRY_SIZE)
+			return false;
+
+		tableEnd += sections * Protocol.SECTION_ENTRY_SIZE;
+
+		world.clear(frame.getInt(Protocol.FRAME_HEADER_SIZE));
+
+		this.playersOffset = this.zonesOffset = this.clustersOffset = -1;
+		this.clusterCount = 0;
+
+		for(int i = 0; i < sections; i++)
+		{
+			int entry = Protocol.SECTION_TABLE_OFFSET + i * Protocol.SECTION_ENTRY_SIZE;
+			int type = frame.getInt(entry), offset = frame.getInt(entry + 4), size = frame.getInt(entry + 8);
+
+			if(offset < tableEnd || size < 0 || size > length - offset)
+				return false;
+
+			int end = offset + size;
+
+			// Unknown sections are left for newer viewers.
+			switch(type)
+			{
+			case Protocol.SECTION_PLAYERS:
+				if(this.playersOffset >= 0 || !checkPlayers(frame, offset, end))
+					return false;
+
+				this.playersOffset = offset;
+				break;
+			case Protocol.SECTION_CLUSTERS:
+				if(this.clustersOffset >= 0 || !this.addClusterTypes(frame, world, offset, end))
+					return false;
+
+				break;
+			case Protocol.SECTION_ZONES:
+				if(this.zonesOffset >= 0 || size < 4 || frame.getInt(offset) < 0 || frame.getInt(offset) > (size - 4) / ZONE_BYTES)
+					return false;
+
+				this.zonesOffset = offset;
+				break;
+			default:
+				break;
+			}
+		}
+
+		int units = UNIT_CLUSTERS + (this.clusterCount + CLUSTER_CHUNK - 1) / CLUSTER_CHUNK;
+		DecodeTask task = new DecodeTask(frame, world, 0, units);
+
+		this.parallel = length >= MIN_PARALLEL_LENGTH;
+
+		if(this.parallel)
+			this.pool.invoke(task);
+		else
+			task.compute();
+
+		return true;
+	}
+
+	private static boolean checkPlayers(ByteBuffer frame, int offset, int end)
+	{
+		if(end - offset < 4)
+			return false;
+
+		int count = frame.getInt(offset);
+		int position = offset + 4;
+
+		if(count < 0)
+			return false;
+
+		for(int i = 0; i < count; i++)
+		{
+			if(end - position < PLAYER_BYTES)
+				return false;
+
+			position = skipString(frame, position + PLAYER_BYTES, end);
+
+			if(position < 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the cluster types of the section and reserves rows for their clusters, whose records follow the type table.
+	 */
+	private boolean addClusterTypes(ByteBuffer frame, WorldHordeState world, int offset, int end)
+	{
+		if(end - offset < 4)
+			return false;
+
+		int types = frame.getInt(offset);
+		int position = offset + 4;
+		long clusters = 0;
+
+		if(types < 0)
+			return false;
+
+		for(int i = 0; i < types; i++)
+		{
+			int next = skipString(frame, position, end);
+
+			if(next < 0 || end - next < 4)
+				return false;
+
+			int count = frame.getInt(next);
+
+			// Checked before reserving rows, so a corrupt count cannot allocate more than the frame could hold.
+			if(count < 0 || (clusters + count) * CLUSTER_BYTES > end - next - 4)
+				return false;
+
+			world.addClusters(world.addClusterType(this.readString(frame, position)), count);
+
+			clusters += count;
+			position = next + 4;
+		}
+
+		if(clusters * CLUSTER_BYTES > end - position)
+			return false;
+
+		this.clustersOffset = position;
+		this.clusterCount = (int)clusters;
+
+		return true;
+	}
+
+	private void decodeUnit(ByteBuffer frame, WorldHordeState world, int unit)
+	{
+		switch(unit)
+		{
+		case UNIT_PLAYERS:
+			if(this.playersOffset >= 0)
+				this.decodePlayers(frame, world);
+			break;
+		case UNIT_ZONES:
+			if(this.zonesOffset >= 0)
+				this.decodeZones(frame, world);
+			break;
+		default:
+			int from = (unit - UNIT_CLUSTERS) * CLUSTER_CHUNK;
+			this.decodeClusters(frame, world, from, Math.min(this.clusterCount, from + CLUSTER_CHUNK));
+			break;
+		}
+	}
+
+	private void decodePlayers(ByteBuffer frame, WorldHordeState world)
+	{
+		int count = frame.getInt(this.playersOffset);
+		int position = this.playersOffset + 4;
+
+		for(int i = 0; i < count; i++)
+		{
+			int biome = position + PLAYER_BYTES;
+
+			world.addPlayer(frame.getFloat(position), frame.getFloat(position + 4), frame.getFloat(position + 8), frame.getInt(position + 12),
+					this.readString(frame, biome));
+
+			position = skipString(frame, biome, frame.limit());
+		}
+	}
+
+	/**
+	 * Fills in the clusters of rows {@code from} to {@code to}, which {@link #addClusterTypes} reserved in record order.
+	 */
+	private void decodeClusters(ByteBuffer frame, WorldHordeState world, int from, int to)
+	{
+		int position = this.clustersOffset + from * CLUSTER_BYTES;
+
+		for(int row = from; row < to; row++, position += CLUSTER_BYTES)
+		{
+			world.setCluster(row, frame.getFloat(position), frame.getFloat(position + 4), frame.getFloat(position + 8), frame.getFloat(position + 12));
+		}
+	}
+
+	private void decodeZones(ByteBuffer frame, WorldHordeState world)
+	{
+		int count = frame.getInt(this.zonesOffset);
+		int position = this.zonesOffset + 4;
+
+		for(int i = 0; i < count; i++, position += ZONE_BYTES)
+		{
+			world.addZone(frame.getInt(position), frame.getInt(position + 4), frame.getInt(position + 8), frame.getInt(position + 12), 0.0f, 0, 0.0f, 0.0f);
+		}
+	}
+
+	private String readString(ByteBuffer frame, int position)
+	{
+		if(frame.get(position) == 0)
+			return "null";
+
+		return this.symbols.intern(frame, position + 5, frame.getInt(position + 1));
+	}
+
+	/**
+	 * Returns the position after a string, or -1 if it runs past {@code end}.
+	 */
+	private static int skipString(ByteBuffer frame, int position, int end)
+	{
+		if(end - position < 1)
+			return -1;
+
+		if(frame.get(position) == 0)
+			return position + 1;
+
+		if(end - position < 5)
+			return -1;
+
+		int length = frame.getInt(position + 1);
+
+		if(length < 0 || length > end - position - 5)
+			return -1;
+
+		return position + 5 + length;
+	}
+
+	private final class DecodeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = -3021847709138842416L;
+
+		private final ByteBuffer frame;
+		private final WorldHordeState world;
+		private final int from, to;
+
+		private DecodeTask(ByteBuffer frame, WorldHordeState world, int from, int to)
+		{
+			this.frame = frame;
+			this.world = world;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(this.to - this.from > 1 && parallel)
+			{
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new DecodeTask(this.frame, this.world, this.from, middle), new DecodeTask(this.frame, this.world, middle, this.to));
+				return;
+			}
+
+			for(int unit = this.from; unit < this.to; unit++)
+			{
+				decodeUnit(this.frame, this.world, unit);
+			}
+		}
+	}
+}
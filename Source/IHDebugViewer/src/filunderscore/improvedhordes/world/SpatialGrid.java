@@ -0,0 +1,164 @@
+package filunderscore.improvedhordes.world;
+
+import java.util.Arrays;
+
+import filunderscore.improvedhordes.util.IntList;
+
+/**
+ * Uniform grid over the world bounds storing row indices bucketed by cell in a single packed array.
+ * Rebuilding reuses the arrays, so indexing a frame does not allocate once they have grown to size.
+ */
+public final class SpatialGrid
+{
+	private static final int MIN_CELL_SIZE = 64;
+	private static final int MAX_COLUMNS = 128;
+	
+	private float minX, minZ;
+	private float cellSize;
+	private int columns, rows;
+	
+	private int[] cellStart = new int[1];
+	private int[] cellCursor = new int[0];
+	private int[] entryCell = new int[0];
+	private int[] entries = new int[0];
+	
+	private int count;
+	
+	private void reset(int worldSize, int count)
+	{
+		this.columns = Math.max(1, Math.min(MAX_COLUMNS, worldSize / MIN_CELL_SIZE));
+		this.rows = this.columns;
+		this.cellSize = Math.max(1, worldSize) / (float)this.columns;
+		this.minX = -(worldSize / 2);
+		this.minZ = -(worldSize / 2);
+		
+		int cells = this.columns * this.rows;
+		
+		if(this.cellStart.length < cells + 1)
+		{
+			this.cellStart = new int[cells + 1];
+			this.cellCursor = new int[cells];
+		}
+		else
+		{
+			Arrays.fill(this.cellStart, 0, cells + 1, 0);
+		}
+		
+		if(this.entries.length < count)
+		{
+			this.entries = new int[count];
+			this.entryCell = new int[count];
+		}
+		
+		this.count = count;
+	}
+	
+	public void build(int worldSize, float[] xs, float[] zs, int count)
+	{
+		this.reset(worldSize, count);
+		
+		for(int i = 0; i < count; i++)
+		{
+			this.assign(i, xs[i], zs[i]);
+		}
+		
+		this.sort();
+	}
+	
+	public void build(int worldSize, int[] xs, int[] zs, int count)
+	{
+		this.reset(worldSize, count);
+		
+		for(int i = 0; i < count; i++)
+		{
+			this.assign(i, xs[i], zs[i]);
+		}
+		
+		this.sort();
+	}
+	
+	private void assign(int entry, float x, float z)
+	{
+		int cell = this.getRow(z) * this.columns + this.getColumn(x);
+		
+		this.entryCell[entry] = cell;
+		this.cellStart[cell + 1]++;
+	}
+	
+	private void sort()
+	{
+		int cells = this.columns * this.rows;
+		
+		for(int cell = 0; cell < cells; cell++)
+		{
+			this.cellStart[cell + 1] += this.cellStart[cell];
+		}
+		
+		System.arraycopy(this.cellStart, 0, this.cellCursor, 0, cells);
+		
+		for(int i = 0; i < this.count; i++)
+		{
+			this.entries[this.cellCursor[this.entryCell[i]]++] = i;
+		}
+	}
+	
+	public int getColumns()
+	{
+		return this.columns;
+	}
+	
+	public int getRows()
+	{
+		return this.rows;
+	}
+	
+	public float getCellSize()
+	{
+		return this.cellSize;
+	}
+	
+	public int getColumn(float x)
+	{
+		return Math.max(0, Math.min(this.columns - 1, (int)((x - this.minX) / this.cellSize)));
+	}
+	
+	public int getRow(float z)
+	{
+		return Math.max(0, Math.min(this.rows - 1, (int)((z - this.minZ) / this.cellSize)));
+	}
+	
+	public int getCellStart(int column, int row)
+	{
+		return this.cellStart[row * this.columns + column];
+	}
+	
+	public int getCellEnd(int column, int row)
+	{
+		return this.cellStart[row * this.columns + column + 1];
+	}
+	
+	public int getEntry(int i)
+	{
+		return this.entries[i];
+	}
+	
+	/**
+	 * Adds every entry stored in a cell overlapping the given bounds. Entries near the edges may lie slightly outside them.
+	 */
+	public void query(float minX, float minZ, float maxX, float maxZ, IntList out)
+	{
+		int minColumn = this.getColumn(minX), maxColumn = this.getColumn(maxX);
+		int minRow = this.getRow(minZ), maxRow = this.getRow(maxZ);
+		
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			int start = this.getCellStart(minColumn, row);
+			int end = this.getCellEnd(maxColumn, row);
+			
+			for(int i = start; i < end; i++)
+			{
+				out.add(this.entries[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package filunderscore.improvedhordes.world;
+
+import filunderscore.improvedhordes.util.IntList;
+
+/**
+ * Radius, box and nearest neighbour queries over a sealed world state, through the spatial grids it builds for every
+ * frame. Results are row indices added to a caller supplied list. An instance keeps scratch space between queries, so
+ * it is not thread-safe, but the states it queries may be shared.
+ */
+public final class SpatialQuery
+{
+	private float[] heapDistances = new float[16];
+	private int[] heapEntries = new int[16];
+	private int heapSize;
+
+	/**
+	 * Adds the clusters within {@code radius} blocks of a point, in no particular order.
+	 */
+	public void clustersWithin(WorldHordeState world, float x, float z, float radius, IntList out)
+	{
+		within(world.getClusterIndex(), world.getClusterXs(), world.getClusterZs(), x, z, radius, out);
+	}
+
+	public void playersWithin(WorldHordeState world, float x, float z, float radius, IntList out)
+	{
+		within(world.getPlayerIndex(), world.getPlayerXs(), world.getPlayerZs(), x, z, radius, out);
+	}
+
+	/**
+	 * Adds the clusters inside a box, edges included, in no particular order.
+	 */
+	public void clustersInBox(WorldHordeState world, float minX, float minZ, float maxX, float maxZ, IntList out)
+	{
+		SpatialGrid grid = world.getClusterIndex();
+		float[] xs = world.getClusterXs(), zs = world.getClusterZs();
+
+		int minColumn = grid.getColumn(minX), maxColumn = grid.getColumn(maxX);
+		int minRow = grid.getRow(minZ), maxRow = grid.getRow(maxZ);
+
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			int end = grid.getCellEnd(maxColumn, row);
+
+			for(int i = grid.getCellStart(minColumn, row); i < end; i++)
+			{
+				int entry = grid.getEntry(i);
+
+				if(xs[entry] >= minX && xs[entry] <= maxX && zs[entry] >= minZ && zs[entry] <= maxZ)
+					out.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Adds up to {@code k} clusters closest to a point, nearest first. Grid cells are visited in rings around the point,
+	 * until the next ring is further away than the furthest of the {@code k} found so far.
+	 */
+	public void nearestClusters(WorldHordeState world, float x, float z, int k, IntList out)
+	{
+		if(k <= 0)
+			return;
+
+		SpatialGrid grid = world.getClusterIndex();
+		float[] xs = world.getClusterXs(), zs = world.getClusterZs();
+
+		if(this.heapEntries.length < k)
+		{
+			this.heapDistances = new float[k];
+			this.heapEntries = new int[k];
+		}
+
+		this.heapSize = 0;
+
+		int column = grid.getColumn(x), row = grid.getRow(z);
+		int rings = Math.max(grid.getColumns(), grid.getRows());
+
+		for(int ring = 0; ring < rings; ring++)
+		{
+			// Cells from this ring outwards are at least one ring fewer of whole cells away from the point.
+			float bound = (ring - 1) * grid.getCellSize();
+
+			if(ring > 0 && this.heapSize == k && this.heapDistances[0] <= bound * bound)
+				break;
+
+			int minRow = Math.max(0, row - ring), maxRow = Math.min(grid.getRows() - 1, row + ring);
+
+			for(int r = minRow; r <= maxRow; r++)
+			{
+				boolean edge = r == row - ring || r == row + ring;
+
+				// Inner rows of the ring only contribute their two end cells.
+				if(edge)
+				{
+					this.offerCells(grid, xs, zs, x, z, k, r, Math.max(0, column - ring), Math.min(grid.getColumns() - 1, column + ring));
+				}
+				else
+				{
+					if(column - ring >= 0)
+						this.offerCells(grid, xs, zs, x, z, k, r, column - ring, column - ring);
+
+					if(ring > 0 && column + ring < grid.getColumns())
+						this.offerCells(grid, xs, zs, x, z, k, r, column + ring, column + ring);
+				}
+			}
+		}
+
+		int start = out.size();
+
+		for(int i = 0; i < this.heapSize; i++)
+		{
+			out.add(0);
+		}
+
+		// Popping the max-heap yields the furthest first, so fill the output from the back.
+		for(int i = start + this.heapSize - 1; i >= start; i--)
+		{
+			out.set(i, this.heapEntries[0]);
+			this.pop();
+		}
+	}
+
+	private void offerCells(SpatialGrid grid, float[] xs, float[] zs, float x, float z, int k, int row, int minColumn, int maxColumn)
+	{
+		int end = grid.getCellEnd(maxColumn, row);
+
+		for(int i = grid.getCellStart(minColumn, row); i < end; i++)
+		{
+			int entry = grid.getEntry(i);
+
+			float dx = xs[entry] - x, dz = zs[entry] - z;
+			float distance = dx * dx + dz * dz;
+
+			if(this.heapSize < k)
+				this.push(distance, entry);
+			else if(distance < this.heapDistances[0])
+				this.replaceTop(distance, entry);
+		}
+	}
+
+	private void push(float distance, int entry)
+	{
+		int i = this.heapSize++;
+
+		while(i > 0)
+		{
+			int parent = (i - 1) >>> 1;
+
+			if(this.heapDistances[parent] >= distance)
+				break;
+
+			this.heapDistances[i] = this.heapDistances[parent];
+			this.heapEntries[i] = this.heapEntries[parent];
+			i = parent;
+		}
+
+		this.heapDistances[i] = distance;
+		this.heapEntries[i] = entry;
+	}
+
+	private void pop()
+	{
+		this.heapSize--;
+
+		if(this.heapSize > 0)
+			this.replaceTop(this.heapDistances[this.heapSize], this.heapEntries[this.heapSize]);
+	}
+
+	private void replaceTop(float distance, int entry)
+	{
+		int i = 0;
+
+		while(true)
+		{
+			int child = 2 * i + 1;
+
+			if(child >= this.heapSize)
+				break;
+
+			if(child + 1 < this.heapSize && this.heapDistances[child + 1] > this.heapDistances[child])
+				child++;
+
+			if(this.heapDistances[child] <= distance)
+				break;
+
+			this.heapDistances[i] = this.heapDistances[child];
+			this.heapEntries[i] = this.heapEntries[child];
+			i = child;
+		}
+
+		this.heapDistances[i] = distance;
+		this.heapEntries[i] = entry;
+	}
+
+	private static void within(SpatialGrid grid, float[] xs, float[] zs, float x, float z, float radius, IntList out)
+	{
+		float radiusSquared = radius * radius;
+
+		int minColumn = grid.getColumn(x - radius), maxColumn = grid.getColumn(x + radius);
+		int minRow = grid.getRow(z - radius), maxRow = grid.getRow(z + radius);
+
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			int end = grid.getCellEnd(maxColumn, row);
+
+			for(int i = grid.getCellStart(minColumn, row); i < end; i++)
+			{
+				int entry = grid.getEntry(i);
+
+				float dx = xs[entry] - x, dz = zs[entry] - z;
+
+				if(dx * dx + dz * dz <= radiusSquared)
+					out.add(entry);
+			}
+		}
+	}
+}
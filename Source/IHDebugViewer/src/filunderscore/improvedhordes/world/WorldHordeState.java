@@ -2,108 +2,806 @@ package filunderscore.improvedhordes.world;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 import filunderscore.improvedhordes.gui.IHRenderer;
-import filunderscore.improvedhordes.gui.IHRenderer.ScaledVector;
 import filunderscore.improvedhordes.util.Vector2i;
-import filunderscore.improvedhordes.util.Vector3;
 
 public final class WorldHordeState
 {
-	private final Vector2i worldSize;
+	private static final int INITIAL_CAPACITY = 64;
+	private static final Color CHUNK_COLOR = new Color(0, 102, 0, 255);
+	private static final float ENTITY_MARGIN = 100.0f;
+
+	private volatile long sequence;
+	private long timestamp;
+	private int epoch;
+	private boolean sealed;
+	
+	private Vector2i worldSize = new Vector2i(0, 0);
+
+	private int playerCount;
+	private float[] playerX, playerY, playerZ;
+	private int[] playerGamestage;
+	private String[] playerBiome;
+
+	private int clusterTypeCount;
+	private String[] clusterTypes;
+	private HordeTypeStyle[] clusterTypeStyles;
+
+	private int clusterCount;
+	private float[] clusterX, clusterY, clusterZ, clusterDensity;
+	private int[] clusterType, clusterId;
+
+	private int zoneCount;
+	private long zoneChecksum;
+	private int[] zoneX, zoneY, zoneWidth, zoneHeight, zoneEntityCount;
+	private float[] zoneDensity, zoneDistanceAvg, zoneAvgWeight;
+	private int maxZoneWidth, maxZoneHeight;
+
+	private final SpatialGrid playerIndex = new SpatialGrid();
+	private final SpatialGrid clusterIndex = new SpatialGrid();
+	private final SpatialGrid zoneIndex = new SpatialGrid();
+	private long zoneIndexChecksum = -1;
+
+	public WorldHordeState()
+	{
+		this.playerX = new float[INITIAL_CAPACITY];
+		this.playerY = new float[INITIAL_CAPACITY];
+		this.playerZ = new float[INITIAL_CAPACITY];
+		this.playerGamestage = new int[INITIAL_CAPACITY];
+		this.playerBiome = new String[INITIAL_CAPACITY];
+
+		this.clusterTypes = new String[8];
+		this.clusterTypeStyles = new HordeTypeStyle[8];
+
+		this.clusterX = new float[INITIAL_CAPACITY];
+		this.clusterY = new float[INITIAL_CAPACITY];
+		this.clusterZ = new float[INITIAL_CAPACITY];
+		this.clusterDensity = new float[INITIAL_CAPACITY];
+		this.clusterType = new int[INITIAL_CAPACITY];
+		this.clusterId = new int[INITIAL_CAPACITY];
+
+		this.zoneX = new int[INITIAL_CAPACITY];
+		this.zoneY = new int[INITIAL_CAPACITY];
+		this.zoneWidth = new int[INITIAL_CAPACITY];
+		this.zoneHeight = new int[INITIAL_CAPACITY];
+		this.zoneEntityCount = new int[INITIAL_CAPACITY];
+		this.zoneDensity = new float[INITIAL_CAPACITY];
+		this.zoneDistanceAvg = new float[INITIAL_CAPACITY];
+		this.zoneAvgWeight = new float[INITIAL_CAPACITY];
+	}
+
+	public void clear(int worldSize)
+	{
+		this.sealed = false;
+		
+		if(this.worldSize.x != worldSize || this.worldSize.y != worldSize)
+			this.worldSize = new Vector2i(worldSize, worldSize);
+
+		Arrays.fill(this.playerBiome, 0, this.playerCount, null);
+		Arrays.fill(this.clusterTypes, 0, this.clusterTypeCount, null);
+
+		this.playerCount = 0;
+		this.clusterTypeCount = 0;
+		this.clusterCount = 0;
+		this.zoneCount = 0;
+		this.zoneChecksum = 0;
+		this.maxZoneWidth = 0;
+		this.maxZoneHeight = 0;
+	}
+	
+	/**
+	 * Clears only the zones and world size, for protocols that send them separately from the entities.
+	 */
+	public void clearZones(int worldSize)
+	{
+		this.checkNotSealed();
+		
+		if(this.worldSize.x != worldSize || this.worldSize.y != worldSize)
+			this.worldSize = new Vector2i(worldSize, worldSize);
+		
+		this.zoneCount = 0;
+		this.zoneChecksum = 0;
+		this.maxZoneWidth = 0;
+		this.maxZoneHeight = 0;
+	}
+	
+	public void clearPlayers()
+	{
+		this.checkNotSealed();
+		
+		Arrays.fill(this.playerBiome, 0, this.playerCount, null);
+		this.playerCount = 0;
+	}
+	
+	public void clearClusters()
+	{
+		this.checkNotSealed();
+		
+		Arrays.fill(this.clusterTypes, 0, this.clusterTypeCount, null);
+		this.clusterTypeCount = 0;
+		this.clusterCount = 0;
+	}
+	
+	/**
+	 * Makes this an unsealed copy of another state. Zones are only copied when they differ, since they rarely change.
+	 */
+	public void copyFrom(WorldHordeState other)
+	{
+		this.sealed = false;
+		this.worldSize = other.worldSize;
+		
+		Arrays.fill(this.playerBiome, 0, this.playerCount, null);
+		
+		this.playerCount = other.playerCount;
+		this.playerX = copy(other.playerX, this.playerX, this.playerCount);
+		this.playerY = copy(other.playerY, this.playerY, this.playerCount);
+		this.playerZ = copy(other.playerZ, this.playerZ, this.playerCount);
+		this.playerGamestage = copy(other.playerGamestage, this.playerGamestage, this.playerCount);
+		this.playerBiome = copy(other.playerBiome, this.playerBiome, this.playerCount);
+		
+		this.clusterTypeCount = other.clusterTypeCount;
+		this.clusterTypes = copy(other.clusterTypes, this.clusterTypes, this.clusterTypeCount);
+		this.clusterTypeStyles = copy(other.clusterTypeStyles, this.clusterTypeStyles, this.clusterTypeCount);
+		
+		this.clusterCount = other.clusterCount;
+		this.clusterX = copy(other.clusterX, this.clusterX, this.clusterCount);
+		this.clusterY = copy(other.clusterY, this.clusterY, this.clusterCount);
+		this.clusterZ = copy(other.clusterZ, this.clusterZ, this.clusterCount);
+		this.clusterDensity = copy(other.clusterDensity, this.clusterDensity, this.clusterCount);
+		this.clusterType = copy(other.clusterType, this.clusterType, this.clusterCount);
+		this.clusterId = copy(other.clusterId, this.clusterId, this.clusterCount);
+		
+		if(this.zoneCount == other.zoneCount && this.zoneChecksum == other.zoneChecksum)
+			return;
+		
+		this.zoneCount = other.zoneCount;
+		this.zoneChecksum = other.zoneChecksum;
+		this.maxZoneWidth = other.maxZoneWidth;
+		this.maxZoneHeight = other.maxZoneHeight;
+		this.zoneX = copy(other.zoneX, this.zoneX, this.zoneCount);
+		this.zoneY = copy(other.zoneY, this.zoneY, this.zoneCount);
+		this.zoneWidth = copy(other.zoneWidth, this.zoneWidth, this.zoneCount);
+		this.zoneHeight = copy(other.zoneHeight, this.zoneHeight, this.zoneCount);
+		this.zoneEntityCount = copy(other.zoneEntityCount, this.zoneEntityCount, this.zoneCount);
+		this.zoneDensity = copy(other.zoneDensity, this.zoneDensity, this.zoneCount);
+		this.zoneDistanceAvg = copy(other.zoneDistanceAvg, this.zoneDistanceAvg, this.zoneCount);
+		this.zoneAvgWeight = copy(other.zoneAvgWeight, this.zoneAvgWeight, this.zoneCount);
+	}
+	
+	private static float[] copy(float[] source, float[] destination, int count)
+	{
+		if(destination.length < count)
+			destination = new float[source.length];
+		
+		System.arraycopy(source, 0, destination, 0, count);
+		return destination;
+	}
 	
-	private final List<PlayerSnapshot> players;
-	private final List<ClusterSnapshot> clusters;
-	private final List<POI> zones;
+	private static int[] copy(int[] source, int[] destination, int count)
+	{
+		if(destination.length < count)
+			destination = new int[source.length];
+		
+		System.arraycopy(source, 0, destination, 0, count);
+		return destination;
+	}
+	
+	private static <T> T[] copy(T[] source, T[] destination, int count)
+	{
+		if(destination.length < count)
+			destination = Arrays.copyOf(destination, source.length);
+		
+		System.arraycopy(source, 0, destination, 0, count);
+		return destination;
+	}
+
+	void seal(long sequence, long timestamp, int epoch)
+	{
+		this.buildIndices();
+		
+		this.sealed = true;
+		this.timestamp = timestamp;
+		this.epoch = epoch;
+		this.sequence = sequence;
+	}
 	
-	public WorldHordeState(Vector2i worldSize)
+	private void buildIndices()
 	{
-		this.worldSize = worldSize;
+		this.playerIndex.build(this.worldSize.x, this.playerX, this.playerZ, this.playerCount);
+		this.clusterIndex.build(this.worldSize.x, this.clusterX, this.clusterZ, this.clusterCount);
+		
+		// Zones rarely change, so only reindex them when the zone set does.
+		long zoneIndexChecksum = this.zoneChecksum * 31 + this.zoneCount * 17 + this.worldSize.x;
 		
-		this.players = new ArrayList<>();
-		this.clusters = new ArrayList<>();
-		this.zones = new ArrayList<>();
+		if(this.zoneIndexChecksum != zoneIndexChecksum)
+		{
+			this.zoneIndex.build(this.worldSize.x, this.zoneX, this.zoneY, this.zoneCount);
+			this.zoneIndexChecksum = zoneIndexChecksum;
+		}
+	}
+	
+	public SpatialGrid getPlayerIndex()
+	{
+		return this.playerIndex;
+	}
+	
+	public SpatialGrid getClusterIndex()
+	{
+		return this.clusterIndex;
+	}
+	
+	public SpatialGrid getZoneIndex()
+	{
+		return this.zoneIndex;
+	}
+	
+	public int getMaxZoneWidth()
+	{
+		return this.maxZoneWidth;
+	}
+	
+	public int getMaxZoneHeight()
+	{
+		return this.maxZoneHeight;
+	}
+	
+	public long getSequence()
+	{
+		return this.sequence;
+	}
+	
+	/**
+	 * When the state was current, in nanoseconds: the receive time on a live connection, or the capture time in a replay.
+	 * Only differences between states of the same {@link #getEpoch() epoch} mean anything.
+	 */
+	public long getTimestamp()
+	{
+		return this.timestamp;
+	}
+	
+	/**
+	 * Changes whenever the states stop following on from each other, as after a new connection or a replay seek, so
+	 * anything accumulated across states should start over.
+	 */
+	public int getEpoch()
+	{
+		return this.epoch;
+	}
+	
+	private void checkNotSealed()
+	{
+		if(this.sealed)
+			throw new IllegalStateException("World state " + this.sequence + " has already been published.");
 	}
 	
 	public Vector2i GetWorldSize()
 	{
 		return this.worldSize;
 	}
+
+	public void addPlayer(float x, float y, float z, int gamestage, String biome)
+	{
+		this.checkNotSealed();
+
+		if(this.playerCount == this.playerX.length)
+		{
+			int capacity = this.playerCount * 2;
+
+			this.playerX = Arrays.copyOf(this.playerX, capacity);
+			this.playerY = Arrays.copyOf(this.playerY, capacity);
+			this.playerZ = Arrays.copyOf(this.playerZ, capacity);
+			this.playerGamestage = Arrays.copyOf(this.playerGamestage, capacity);
+			this.playerBiome = Arrays.copyOf(this.playerBiome, capacity);
+		}
+
+		int i = this.playerCount++;
+
+		this.playerX[i] = x;
+		this.playerY[i] = y;
+		this.playerZ[i] = z;
+		this.playerGamestage[i] = gamestage;
+		this.playerBiome[i] = biome;
+	}
+
+	public int addClusterType(String type)
+	{
+		this.checkNotSealed();
+
+		if(this.clusterTypeCount == this.clusterTypes.length)
+		{
+			this.clusterTypes = Arrays.copyOf(this.clusterTypes, this.clusterTypeCount * 2);
+			this.clusterTypeStyles = Arrays.copyOf(this.clusterTypeStyles, this.clusterTypeCount * 2);
+		}
+
+		this.clusterTypes[this.clusterTypeCount] = type;
+		this.clusterTypeStyles[this.clusterTypeCount] = HordeTypeStyle.forType(type);
+		return this.clusterTypeCount++;
+	}
+
+	public void addCluster(int type, float x, float y, float z, float density)
+	{
+		this.addCluster(-1, type, x, y, z, density);
+	}
+
+	/**
+	 * Appends a cluster and returns its row. The id is the server's stable cluster id, or -1 when the protocol has none.
+	 */
+	public int addCluster(int id, int type, float x, float y, float z, float density)
+	{
+		this.checkNotSealed();
+
+		if(this.clusterCount == this.clusterX.length)
+			this.growClusters(this.clusterCount * 2);
+
+		int i = this.clusterCount++;
+
+		this.clusterX[i] = x;
+		this.clusterY[i] = y;
+		this.clusterZ[i] = z;
+		this.clusterDensity[i] = density;
+		this.clusterType[i] = type;
+		this.clusterId[i] = id;
+		
+		return i;
+	}
 	
-	public List<PlayerSnapshot> getPlayers()
+	/**
+	 * Appends {@code count} clusters of a type without an id and returns the first row. Their positions and densities are
+	 * left to {@link #setCluster}, which may then be called for different rows from several threads at once.
+	 */
+	public int addClusters(int type, int count)
 	{
-		return this.players;
+		this.checkNotSealed();
+		
+		int first = this.clusterCount;
+		int required = first + count;
+		
+		if(required > this.clusterX.length)
+			this.growClusters(Math.max(required, this.clusterX.length * 2));
+		
+		Arrays.fill(this.clusterType, first, required, type);
+		Arrays.fill(this.clusterId, first, required, -1);
+		
+		this.clusterCount = required;
+		return first;
 	}
 	
-	public List<ClusterSnapshot> getClusters()
+	private void growClusters(int capacity)
 	{
-		return this.clusters;
+		this.clusterX = Arrays.copyOf(this.clusterX, capacity);
+		this.clusterY = Arrays.copyOf(this.clusterY, capacity);
+		this.clusterZ = Arrays.copyOf(this.clusterZ, capacity);
+		this.clusterDensity = Arrays.copyOf(this.clusterDensity, capacity);
+		this.clusterType = Arrays.copyOf(this.clusterType, capacity);
+		this.clusterId = Arrays.copyOf(this.clusterId, capacity);
 	}
 	
-	public List<POI> getZones()
+	public void setCluster(int i, float x, float y, float z, float density)
 	{
-		return this.zones;
+		this.checkNotSealed();
+		
+		this.clusterX[i] = x;
+		this.clusterY[i] = y;
+		this.clusterZ[i] = z;
+		this.clusterDensity[i] = density;
 	}
 	
-	public void draw(IHRenderer renderer, Graphics g)
+	/**
+	 * Removes a cluster by moving the last row into its place. Returns the id of the moved cluster, or -1 if the removed row was last.
+	 */
+	public int removeCluster(int i)
 	{
-		this.drawAxis(renderer, g);
-		this.drawChunks(renderer, g);
+		this.checkNotSealed();
+		
+		int last = --this.clusterCount;
+		
+		if(i == last)
+			return -1;
 		
-		for(ClusterSnapshot cluster : getClusters())
+		this.clusterX[i] = this.clusterX[last];
+		this.clusterY[i] = this.clusterY[last];
+		this.clusterZ[i] = this.clusterZ[last];
+		this.clusterDensity[i] = this.clusterDensity[last];
+		this.clusterType[i] = this.clusterType[last];
+		this.clusterId[i] = this.clusterId[last];
+		
+		return this.clusterId[i];
+	}
+
+	public void addZone(int x, int y, int width, int height, float density, int count, float zoneDistanceAvg, float avgWeight)
+	{
+		this.checkNotSealed();
+
+		if(this.zoneCount == this.zoneX.length)
 		{
-			cluster.draw(this, renderer, g);
+			int capacity = this.zoneCount * 2;
+
+			this.zoneX = Arrays.copyOf(this.zoneX, capacity);
+			this.zoneY = Arrays.copyOf(this.zoneY, capacity);
+			this.zoneWidth = Arrays.copyOf(this.zoneWidth, capacity);
+			this.zoneHeight = Arrays.copyOf(this.zoneHeight, capacity);
+			this.zoneEntityCount = Arrays.copyOf(this.zoneEntityCount, capacity);
+			this.zoneDensity = Arrays.copyOf(this.zoneDensity, capacity);
+			this.zoneDistanceAvg = Arrays.copyOf(this.zoneDistanceAvg, capacity);
+			this.zoneAvgWeight = Arrays.copyOf(this.zoneAvgWeight, capacity);
 		}
+
+		int i = this.zoneCount++;
+
+		this.zoneX[i] = x;
+		this.zoneY[i] = y;
+		this.zoneWidth[i] = width;
+		this.zoneHeight[i] = height;
+		this.zoneEntityCount[i] = count;
+		this.zoneDensity[i] = density;
+		this.zoneDistanceAvg[i] = zoneDistanceAvg;
+		this.zoneAvgWeight[i] = avgWeight;
 		
-		for(PlayerSnapshot player : getPlayers())
+		this.maxZoneWidth = Math.max(this.maxZoneWidth, width);
+		this.maxZoneHeight = Math.max(this.maxZoneHeight, height);
+		
+		long hash = this.zoneChecksum;
+		hash = hash * 31 + x;
+		hash = hash * 31 + y;
+		hash = hash * 31 + width;
+		hash = hash * 31 + height;
+		this.zoneChecksum = hash;
+	}
+
+	public int getPlayerCount()
+	{
+		return this.playerCount;
+	}
+
+	public float getPlayerX(int i)
+	{
+		return this.playerX[i];
+	}
+
+	public float getPlayerY(int i)
+	{
+		return this.playerY[i];
+	}
+
+	public float getPlayerZ(int i)
+	{
+		return this.playerZ[i];
+	}
+
+	public float[] getPlayerXs()
+	{
+		return this.playerX;
+	}
+
+	public float[] getPlayerZs()
+	{
+		return this.playerZ;
+	}
+
+	public int getPlayerGamestage(int i)
+	{
+		return this.playerGamestage[i];
+	}
+
+	public String getPlayerBiome(int i)
+	{
+		return this.playerBiome[i];
+	}
+
+	public int getClusterCount()
+	{
+		return this.clusterCount;
+	}
+
+	public float getClusterX(int i)
+	{
+		return this.clusterX[i];
+	}
+
+	public float getClusterY(int i)
+	{
+		return this.clusterY[i];
+	}
+
+	public float getClusterZ(int i)
+	{
+		return this.clusterZ[i];
+	}
+
+	public float getClusterDensity(int i)
+	{
+		return this.clusterDensity[i];
+	}
+
+	public float[] getClusterXs()
+	{
+		return this.clusterX;
+	}
+
+	public float[] getClusterZs()
+	{
+		return this.clusterZ;
+	}
+
+	public int getClusterId(int i)
+	{
+		return this.clusterId[i];
+	}
+
+	public int getClusterType(int i)
+	{
+		return this.clusterType[i];
+	}
+
+	public String getClusterTypeName(int i)
+	{
+		return this.clusterTypes[this.clusterType[i]];
+	}
+
+	public int getClusterTypeCount()
+	{
+		return this.clusterTypeCount;
+	}
+
+	public String getClusterTypeNameByOrdinal(int type)
+	{
+		return this.clusterTypes[type];
+	}
+
+	public HordeTypeStyle getClusterStyle(int i)
+	{
+		return this.clusterTypeStyles[this.clusterType[i]];
+	}
+
+	public HordeTypeStyle getClusterTypeStyle(int type)
+	{
+		return this.clusterTypeStyles[type];
+	}
+
+	public int getZoneCount()
+	{
+		return this.zoneCount;
+	}
+
+	public long getZoneChecksum()
+	{
+		return this.zoneChecksum;
+	}
+
+	public int getZoneX(int i)
+	{
+		return this.zoneX[i];
+	}
+
+	public int getZoneY(int i)
+	{
+		return this.zoneY[i];
+	}
+
+	public int getZoneWidth(int i)
+	{
+		return this.zoneWidth[i];
+	}
+
+	public int getZoneHeight(int i)
+	{
+		return this.zoneHeight[i];
+	}
+
+	public float getZoneDensity(int i)
+	{
+		return this.zoneDensity[i];
+	}
+
+	public int getZoneEntityCount(int i)
+	{
+		return this.zoneEntityCount[i];
+	}
+
+	public float getZoneDistanceAvg(int i)
+	{
+		return this.zoneDistanceAvg[i];
+	}
+
+	public float getZoneAvgWeight(int i)
+	{
+		return this.zoneAvgWeight[i];
+	}
+
+	public List<PlayerSnapshot> getPlayers()
+	{
+		return new AbstractList<PlayerSnapshot>()
+		{
+			@Override
+			public PlayerSnapshot get(int index)
+			{
+				return new PlayerSnapshot(WorldHordeState.this, index);
+			}
+
+			@Override
+			public int size()
+			{
+				return playerCount;
+			}
+		};
+	}
+
+	public List<ClusterSnapshot> getClusters()
+	{
+		return new AbstractList<ClusterSnapshot>()
+		{
+			@Override
+			public ClusterSnapshot get(int index)
+			{
+				return new ClusterSnapshot(WorldHordeState.this, index);
+			}
+
+			@Override
+			public int size()
+			{
+				return clusterCount;
+			}
+		};
+	}
+
+	public List<POI> getZones()
+	{
+		return new AbstractList<POI>()
+		{
+			@Override
+			public POI get(int index)
+			{
+				return new POI(WorldHordeState.this, index);
+			}
+
+			@Override
+			public int size()
+			{
+				return zoneCount;
+			}
+		};
+	}
+
+	public void draw(IHRenderer renderer, Graphics g)
+	{
+		this.drawBackground(renderer, g);
+		this.drawEntities(renderer, g);
+	}
+
+	public void drawBackground(IHRenderer renderer, Graphics g)
+	{
+		this.drawAxis(renderer, g);
+		this.drawChunks(renderer, g);
+		this.drawZones(renderer, g);
+	}
+
+	public void drawEntities(IHRenderer renderer, Graphics g)
+	{
+		this.drawClusters(renderer, g);
+		this.drawPlayers(renderer, g);
+	}
+
+	public void drawClusters(IHRenderer renderer, Graphics g)
+	{
+		// Pad the view by the largest marker so entities straddling the edge are still drawn.
+		float minX = renderer.getViewMinX() - ENTITY_MARGIN, maxX = renderer.getViewMaxX() + ENTITY_MARGIN;
+		float minZ = renderer.getViewMinZ() - ENTITY_MARGIN, maxZ = renderer.getViewMaxZ() + ENTITY_MARGIN;
+
+		SpatialGrid clusterIndex = this.clusterIndex;
+		int minColumn = clusterIndex.getColumn(minX), maxColumn = clusterIndex.getColumn(maxX);
+		int minRow = clusterIndex.getRow(minZ), maxRow = clusterIndex.getRow(maxZ);
+
+		for(int row = minRow; row <= maxRow; row++)
 		{
-			player.draw(this, renderer, g);
+			int end = clusterIndex.getCellEnd(maxColumn, row);
+
+			for(int i = clusterIndex.getCellStart(minColumn, row); i < end; i++)
+			{
+				ClusterSnapshot.draw(this, clusterIndex.getEntry(i), renderer, g);
+			}
 		}
-		
-		for(POI zone : getZones())
+	}
+
+	public void drawPlayers(IHRenderer renderer, Graphics g)
+	{
+		float minX = renderer.getViewMinX() - ENTITY_MARGIN, maxX = renderer.getViewMaxX() + ENTITY_MARGIN;
+		float minZ = renderer.getViewMinZ() - ENTITY_MARGIN, maxZ = renderer.getViewMaxZ() + ENTITY_MARGIN;
+
+		SpatialGrid playerIndex = this.playerIndex;
+		int minColumn = playerIndex.getColumn(minX), maxColumn = playerIndex.getColumn(maxX);
+		int minRow = playerIndex.getRow(minZ), maxRow = playerIndex.getRow(maxZ);
+
+		for(int row = minRow; row <= maxRow; row++)
 		{
-			zone.draw(this, renderer, g);
+			int end = playerIndex.getCellEnd(maxColumn, row);
+
+			for(int i = playerIndex.getCellStart(minColumn, row); i < end; i++)
+			{
+				PlayerSnapshot.draw(this, playerIndex.getEntry(i), renderer, g);
+			}
 		}
 	}
-	
+
 	private void drawAxis(IHRenderer renderer, Graphics g)
 	{
-		Vector2i rescaledAxisThickness = renderer.rescaleBlocksToScreen(32);
-		
+		int axisThickness = renderer.scaleX(32);
+		Vector2i panelSize = renderer.getPanelSize();
+
+		int axisX = renderer.toScreenX(0);
+		int axisY = renderer.toScreenY(0);
+
 		g.setColor(Color.white);
-		g.drawRect(0, 0, renderer.getPanelSize().x, renderer.getPanelSize().y);
-		g.fillRect(4, renderer.getPanelSize().y / 2 - rescaledAxisThickness.x, renderer.getPanelSize().x, rescaledAxisThickness.x);
-		g.fillRect(renderer.getPanelSize().x / 2 - rescaledAxisThickness.x, rescaledAxisThickness.x, rescaledAxisThickness.x, renderer.getPanelSize().y);
+		g.drawRect(0, 0, panelSize.x, panelSize.y);
+		g.fillRect(0, axisY - axisThickness, panelSize.x, axisThickness);
+		g.fillRect(axisX - axisThickness, 0, axisThickness, panelSize.y);
 	}
-	
+
 	private void drawChunks(IHRenderer renderer, Graphics g)
 	{
-		g.setColor(new Color(0, 102, 0, 255));
-		
+		g.setColor(CHUNK_COLOR);
+
 		// Draw chunks.
 		int blockSize = 100;
-		Vector2i rescaledBlocks = renderer.rescaleBlocksToScreen(blockSize);
-	
-		for(int x = -worldSize.x / 2; x <= worldSize.x / 2; x += blockSize)
+		int blocksX = renderer.scaleX(blockSize);
+		int blocksY = renderer.scaleY(blockSize);
+
+		int minX = -worldSize.x / 2, maxX = worldSize.x / 2;
+		int minY = -worldSize.y / 2, maxY = worldSize.y / 2;
+
+		// Only walk the grid intersections that fall inside the view.
+		int startX = minX + Math.max(0, (int)Math.floor((renderer.getViewMinX() - minX) / blockSize)) * blockSize;
+		int endX = Math.min(maxX, (int)Math.ceil(renderer.getViewMaxX()));
+		int startY = minY + Math.max(0, (int)Math.floor((renderer.getViewMinZ() - minY) / blockSize)) * blockSize;
+		int endY = Math.min(maxY, (int)Math.ceil(renderer.getViewMaxZ()));
+
+		for(int x = startX; x <= endX; x += blockSize)
 		{
-			for(int y = -worldSize.y / 2; y <= worldSize.y / 2; y += blockSize)
+			int screenX = renderer.toScreenX(x);
+
+			for(int y = startY; y <= endY; y += blockSize)
 			{
-				ScaledVector rescaled = renderer.rescale(new Vector2i(x, y), new Vector2i(1, 1));
-				
-				if(rescaled.inView())
+				int screenY = renderer.toScreenY(y);
+
+				g.drawLine(screenX - blocksX, screenY, screenX + blocksX, screenY);
+				g.drawLine(screenX, screenY - blocksY, screenX, screenY + blocksY);
+			}
+		}
+	}
+
+	private void drawZones(IHRenderer renderer, Graphics g)
+	{
+		float minX = renderer.getViewMinX(), maxX = renderer.getViewMaxX();
+		float minZ = renderer.getViewMinZ(), maxZ = renderer.getViewMaxZ();
+
+		// Zones are indexed by their minimum corner, so widen the lower bounds by the largest zone.
+		SpatialGrid zoneIndex = this.zoneIndex;
+		int minColumn = zoneIndex.getColumn(minX - this.maxZoneWidth), maxColumn = zoneIndex.getColumn(maxX);
+		int minRow = zoneIndex.getRow(minZ - this.maxZoneHeight), maxRow = zoneIndex.getRow(maxZ);
+
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			int end = zoneIndex.getCellEnd(maxColumn, row);
+
+			for(int i = zoneIndex.getCellStart(minColumn, row); i < end; i++)
+			{
+				int zone = zoneIndex.getEntry(i);
+
+				if(this.zoneX[zone] <= maxX && this.zoneX[zone] + this.zoneWidth[zone] >= minX &&
+						this.zoneY[zone] <= maxZ && this.zoneY[zone] + this.zoneHeight[zone] >= minZ)
 				{
-					g.drawLine(rescaled.scaledPosition.x - rescaledBlocks.x, rescaled.scaledPosition.y, rescaled.scaledPosition.x + rescaledBlocks.x, rescaled.scaledPosition.y);
-					g.drawLine(rescaled.scaledPosition.x, rescaled.scaledPosition.y - rescaledBlocks.y, rescaled.scaledPosition.x, rescaled.scaledPosition.y + rescaledBlocks.y);
+					POI.draw(this, zone, renderer, g);
 				}
 			}
 		}
 	}
-	
+
 	@Override
 	public String toString()
 	{
 		return String.format("World [size: %s]", this.worldSize);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package filunderscore.improvedhordes.world;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Triple buffer handing decoded states from a single writer thread to a single reader thread.
+ * Each state is owned by exactly one of the writer, the exchange or the reader at any time,
+ * so neither side ever waits on the other.
+ */
+public final class WorldHordeStateExchange
+{
+	private final AtomicReference<WorldHordeState> ready;
+	
+	private WorldHordeState back;
+	private WorldHordeState front;
+	
+	private long sequence;
+	private volatile long acquired;
+	
+	public WorldHordeStateExchange()
+	{
+		this.back = new WorldHordeState();
+		this.ready = new AtomicReference<>(new WorldHordeState());
+		this.front = new WorldHordeState();
+	}
+	
+	public WorldHordeState getBack()
+	{
+		return this.back;
+	}
+	
+	/**
+	 * Seals the back state with its timestamp and epoch, and makes it the ready one. Returns true if this replaced a state
+	 * the reader never acquired.
+	 */
+	public boolean publish(long timestamp, int epoch)
+	{
+		this.back.seal(++this.sequence, timestamp, epoch);
+		this.back = this.ready.getAndSet(this.back);
+		
+		return this.back.getSequence() > this.acquired;
+	}
+	
+	public WorldHordeState acquire()
+	{
+		if(this.ready.get().getSequence() > this.front.getSequence())
+		{
+			this.front = this.ready.getAndSet(this.front);
+			this.acquired = this.front.getSequence();
+		}
+		
+		return this.front.getSequence() > 0 ? this.front : null;
+	}
+}
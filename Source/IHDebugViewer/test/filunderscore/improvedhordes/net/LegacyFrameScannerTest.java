@@ -0,0 +1,115 @@
+package filunderscore.improvedhordes.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import filunderscore.improvedhordes.synthetic.LegacyFrameEncoder;
+import filunderscore.improvedhordes.synthetic.SyntheticWorld;
+
+public final class LegacyFrameScannerTest
+{
+	private static byte[] encode(long seed, int clusters)
+	{
+		ByteBuffer frame = new LegacyFrameEncoder().encode(new SyntheticWorld(seed, 6144, 4, clusters, 20));
+		byte[] bytes = new byte[frame.remaining()];
+		frame.get(bytes);
+
+		return bytes;
+	}
+
+	private static WireBuffer channelOf(byte[]... frames)
+	{
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+		for(byte[] frame : frames)
+			stream.writeBytes(frame);
+
+		WireBuffer in = new WireBuffer(Channels.newChannel(new ByteArrayInputStream(stream.toByteArray())), 64);
+		in.beginFrame();
+
+		return in;
+	}
+
+	private static byte[] header(int... values)
+	{
+		ByteBuffer data = ByteBuffer.allocate(values.length * 4 + 64).order(ByteOrder.LITTLE_ENDIAN);
+
+		for(int value : values)
+			data.putInt(value);
+
+		return data.array();
+	}
+
+	@Test
+	public void findsBackToBackFrames() throws IOException
+	{
+		byte[] first = encode(1, 300), second = encode(2, 0), third = encode(3, 1000);
+		WireBuffer in = channelOf(first, second, third);
+
+		assertEquals(first.length, LegacyFrameScanner.scan(in, 0, true));
+
+		in.ensure(first.length + second.length + third.length);
+
+		assertEquals(second.length, LegacyFrameScanner.scan(in, first.length, false));
+		assertEquals(third.length, LegacyFrameScanner.scan(in, first.length + second.length, false));
+	}
+
+	@Test
+	public void reportsTruncatedFrames() throws IOException
+	{
+		byte[] first = encode(1, 300), second = encode(2, 300);
+		byte[] stream = Arrays.copyOf(second, second.length - 1);
+
+		WireBuffer in = channelOf(first, stream);
+		in.ensure(first.length + stream.length);
+
+		assertEquals(-1, LegacyFrameScanner.scan(in, first.length, false));
+		assertThrows(EOFException.class, () -> LegacyFrameScanner.scan(channelOf(stream), 0, true));
+	}
+
+	@Test
+	public void rejectsOverflowingStringLength() throws IOException
+	{
+		// One player whose biome name claims nearly 2 GiB, which used to wrap the position negative.
+		byte[] frame = header(6144, 1, 0, 0, 0, 0);
+		ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).put(24, (byte)1).putInt(25, Integer.MAX_VALUE - 2);
+
+		WireBuffer in = channelOf(frame);
+		in.ensure(frame.length);
+
+		assertThrows(IOException.class, () -> LegacyFrameScanner.scan(in, 0, false));
+		assertThrows(IOException.class, () -> LegacyFrameScanner.scan(channelOf(frame), 0, true));
+	}
+
+	@Test
+	public void rejectsFramesPastMaxLength()
+	{
+		// No players, one unnamed type with more clusters than a frame may hold.
+		byte[] clusters = header(6144, 0, 1, 0, Protocol.FRAME_MAX_LENGTH / 16);
+		clusters[12] = 0;
+		ByteBuffer.wrap(clusters).order(ByteOrder.LITTLE_ENDIAN).putInt(13, Protocol.FRAME_MAX_LENGTH / 16);
+
+		// No players or types, and zones whose size overflows an int.
+		byte[] zones = header(6144, 0, 0, 0x08000000);
+
+		assertThrows(IOException.class, () -> LegacyFrameScanner.scan(channelOf(clusters), 0, true));
+		assertThrows(IOException.class, () -> LegacyFrameScanner.scan(channelOf(zones), 0, true));
+	}
+
+	@Test
+	public void rejectsNegativeCounts()
+	{
+		assertThrows(IOException.class, () -> LegacyFrameScanner.scan(channelOf(header(6144, -1)), 0, true));
+	}
+}
@@ -0,0 +1,51 @@
+package filunderscore.improvedhordes.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation.ConnectionStatus;
+
+public final class ViewerConnectionTest
+{
+	@Test
+	public void countsCorruptStreams() throws IOException, InterruptedException
+	{
+		try(ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress()))
+		{
+			ImprovedHordesSimulation simulation = new ImprovedHordesSimulation("test");
+			Thread thread = new ViewerConnection((InetSocketAddress)server.getLocalSocketAddress(), simulation, null, false, false, 0).start();
+
+			try
+			{
+				simulation.requestReconnect();
+
+				// A legacy frame claiming a negative player count.
+				try(Socket client = server.accept(); OutputStream out = client.getOutputStream())
+				{
+					out.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(6144).putInt(-1).array());
+					out.flush();
+
+					simulation.awaitStatus(ConnectionStatus.LOST_CONNECTION);
+				}
+
+				assertEquals(1, simulation.getMetrics().getConnectionErrors());
+				assertEquals(0, simulation.getMetrics().getFramesDecoded());
+			}
+			finally
+			{
+				thread.interrupt();
+			}
+		}
+	}
+}
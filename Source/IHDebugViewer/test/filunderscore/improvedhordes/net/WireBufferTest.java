@@ -0,0 +1,69 @@
+package filunderscore.improvedhordes.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+
+import org.junit.jupiter.api.Test;
+
+public final class WireBufferTest
+{
+	private static WireBuffer channelOf(int capacity, int... values)
+	{
+		ByteBuffer data = ByteBuffer.allocate(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+		for(int value : values)
+			data.putInt(value);
+
+		return new WireBuffer(Channels.newChannel(new ByteArrayInputStream(data.array())), capacity);
+	}
+
+	@Test
+	public void growsPastInitialCapacity() throws IOException
+	{
+		WireBuffer in = channelOf(4, 1, 2, 3, 4, 5);
+
+		in.beginFrame();
+		in.ensure(20);
+
+		for(int i = 1; i <= 5; i++)
+			assertEquals(i, in.readInt());
+	}
+
+	@Test
+	public void rejectsFramesPastMaxLength()
+	{
+		WireBuffer in = channelOf(16, 1);
+
+		in.beginFrame();
+
+		assertThrows(IOException.class, () -> in.ensure(Protocol.FRAME_MAX_LENGTH + 1));
+		assertThrows(IOException.class, () -> in.ensure(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void rejectsCountsThatCannotFit()
+	{
+		assertThrows(IOException.class, () -> channelOf(16, -1).readCount(4));
+		assertThrows(IOException.class, () -> channelOf(16, Integer.MAX_VALUE).readCount(16));
+		assertThrows(IOException.class, () -> channelOf(16, Protocol.FRAME_MAX_LENGTH / 16 + 1).readCount(16));
+	}
+
+	@Test
+	public void acceptsCountsThatFit() throws IOException
+	{
+		assertEquals(0, channelOf(16, 0).readCount(16));
+		assertEquals(Protocol.FRAME_MAX_LENGTH / 16, channelOf(16, Protocol.FRAME_MAX_LENGTH / 16).readCount(16));
+	}
+
+	@Test
+	public void rejectsNegativeStringLengths()
+	{
+		assertThrows(IOException.class, () -> channelOf(16, 0).readString(-1));
+	}
+}
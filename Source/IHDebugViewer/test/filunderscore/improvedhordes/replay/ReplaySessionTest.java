@@ -0,0 +1,252 @@
+package filunderscore.improvedhordes.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import filunderscore.improvedhordes.net.FrameSink;
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.record.CaptureReader;
+import filunderscore.improvedhordes.record.SessionRecorder;
+import filunderscore.improvedhordes.synthetic.DeltaFrameEncoder;
+import filunderscore.improvedhordes.synthetic.Movement;
+import filunderscore.improvedhordes.synthetic.SyntheticWorld;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+public final class ReplaySessionTest
+{
+	private static final int STEPS = 60;
+	private static final int KEYFRAME_INTERVAL = 8;
+
+	@TempDir
+	private Path directory;
+
+	private CaptureReader capture;
+
+	/**
+	 * Records a delta session one message per frame, flagged the way a live connection flags them. Only the first frame
+	 * is a world frame, so every later keyframe depends on it.
+	 */
+	@BeforeEach
+	public void record() throws IOException
+	{
+		SyntheticWorld world = new SyntheticWorld(21, 6144, 4, 2000, 40);
+		world.setMovement(Movement.DRIFT);
+		world.setChurn(200.0f);
+
+		DeltaFrameEncoder encoder = new DeltaFrameEncoder(KEYFRAME_INTERVAL, 1.0f);
+
+		try(SessionRecorder recorder = new SessionRecorder(this.directory.resolve("capture"), 1 << 20, Protocol.DELTA))
+		{
+			for(int step = 0; step < STEPS; step++)
+			{
+				world.step(1.0f);
+
+				ByteBuffer messages = encoder.encode(world).order(ByteOrder.LITTLE_ENDIAN);
+
+				while(messages.hasRemaining())
+				{
+					int position = messages.position();
+					int type = messages.getInt(position);
+					int length = Protocol.MESSAGE_HEADER_SIZE + messages.getInt(position + 4);
+
+					awaitClockTick();
+					recorder.write(messages, position, length, getFlags(type));
+
+					messages.position(position + length);
+				}
+			}
+		}
+
+		this.capture = new CaptureReader(this.directory.resolve("capture"));
+	}
+
+	private static int getFlags(int type)
+	{
+		return type == Protocol.MESSAGE_WORLD ? FrameSink.FLAG_WORLD : type == Protocol.MESSAGE_KEYFRAME ? FrameSink.FLAG_KEYFRAME : 0;
+	}
+
+	/**
+	 * Keeps frame timestamps distinct, so an exact timestamp names exactly one frame.
+	 */
+	private static void awaitClockTick()
+	{
+		long now = System.nanoTime();
+
+		while(System.nanoTime() == now)
+			Thread.onSpinWait();
+	}
+
+	/**
+	 * The state after decoding every frame from the start of the capture up to the target.
+	 */
+	private Map<Integer, String> decodeSequentially(int target) throws IOException
+	{
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation("sequential");
+		simulation.setProtocol(this.capture.getProtocol());
+
+		for(int frame = 0; frame <= target; frame++)
+			simulation.read(WireBuffer.wrap(this.capture.getFrame(frame)));
+
+		return describe(simulation.getWorld());
+	}
+
+	/**
+	 * Everything a seek has to get right, with clusters keyed by id since rows are reordered as clusters come and go.
+	 */
+	private static Map<Integer, String> describe(WorldHordeState world)
+	{
+		assertNotNull(world);
+
+		Map<Integer, String> description = new TreeMap<>();
+		StringBuilder rest = new StringBuilder("size " + world.GetWorldSize().x);
+
+		for(int i = 0; i < world.getPlayerCount(); i++)
+			rest.append(" player ").append(world.getPlayerX(i)).append(',').append(world.getPlayerZ(i)).append(',').append(world.getPlayerBiome(i));
+
+		for(int i = 0; i < world.getZoneCount(); i++)
+			rest.append(" zone ").append(world.getZoneX(i)).append(',').append(world.getZoneY(i)).append(',').append(world.getZoneWidth(i));
+
+		description.put(-1, rest.toString());
+
+		for(int i = 0; i < world.getClusterCount(); i++)
+		{
+			description.put(world.getClusterId(i), world.getClusterTypeName(i) + " " + world.getClusterX(i) + "," + world.getClusterY(i) + ","
+					+ world.getClusterZ(i) + " " + world.getClusterDensity(i));
+		}
+
+		return description;
+	}
+
+	private ImprovedHordesSimulation createReplay()
+	{
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation("replay");
+		simulation.setProtocol(this.capture.getProtocol());
+
+		return simulation;
+	}
+
+	private void assertSeeksTo(ReplaySession session, ImprovedHordesSimulation simulation, int target) throws IOException
+	{
+		session.show(target);
+
+		assertEquals(this.decodeSequentially(target), describe(simulation.getWorld()), "Frame " + target);
+	}
+
+	@Test
+	public void findsFramesByTimestamp()
+	{
+		int frames = this.capture.getFrameCount();
+
+		assertTrue(frames > STEPS);
+		assertEquals(-1, this.capture.findFrame(this.capture.getTimestamp(0) - 1));
+		assertEquals(frames - 1, this.capture.findFrame(Long.MAX_VALUE));
+
+		for(int frame = 0; frame < frames; frame++)
+		{
+			long timestamp = this.capture.getTimestamp(frame);
+
+			assertEquals(frame, this.capture.findFrame(timestamp));
+			assertEquals(frame - 1, this.capture.findFrame(timestamp - 1));
+		}
+	}
+
+	@Test
+	public void findsKeyframesAndWorldFrames()
+	{
+		int keyframe = -1, world = -1;
+
+		for(int frame = 0; frame < this.capture.getFrameCount(); frame++)
+		{
+			if((this.capture.getFlags(frame) & FrameSink.FLAG_KEYFRAME) != 0)
+				keyframe = frame;
+
+			if((this.capture.getFlags(frame) & FrameSink.FLAG_WORLD) != 0)
+				world = frame;
+
+			assertEquals(keyframe, this.capture.findKeyframe(frame), "Frame " + frame);
+			assertEquals(world, this.capture.findWorldFrame(frame), "Frame " + frame);
+		}
+
+		// The world frame comes first, so the frame before the first keyframe has none.
+		assertEquals(-1, this.capture.findKeyframe(0));
+		assertEquals(0, this.capture.findWorldFrame(0));
+	}
+
+	@Test
+	public void seeksBeforeFirstKeyframe() throws IOException
+	{
+		ImprovedHordesSimulation simulation = this.createReplay();
+		ReplaySession session = new ReplaySession(this.capture, simulation);
+
+		// Before any keyframe there are no clusters yet, only the world frame's size and zones.
+		assertSeeksTo(session, simulation, 0);
+		assertEquals(0, simulation.getWorld().getClusterCount());
+	}
+
+	@Test
+	public void seeksToExactTimestampsAndLastFrame() throws IOException
+	{
+		int exact = this.capture.findFrame(this.capture.getTimestamp(17));
+		int last = this.capture.findFrame(Long.MAX_VALUE);
+
+		assertEquals(17, exact);
+		assertEquals(this.capture.getFrameCount() - 1, last);
+
+		for(int target : new int[] { exact, last })
+		{
+			ImprovedHordesSimulation simulation = this.createReplay();
+			assertSeeksTo(new ReplaySession(this.capture, simulation), simulation, target);
+		}
+	}
+
+	@Test
+	public void seeksToKeyframeThatNeedsEarlierWorldFrame() throws IOException
+	{
+		int target = this.capture.getFrameCount() / 2;
+
+		assertTrue(this.capture.findKeyframe(target) > this.capture.findWorldFrame(target));
+
+		ImprovedHordesSimulation simulation = this.createReplay();
+		assertSeeksTo(new ReplaySession(this.capture, simulation), simulation, target);
+	}
+
+	@Test
+	public void seeksBackAndForth() throws IOException
+	{
+		ImprovedHordesSimulation simulation = this.createReplay();
+		ReplaySession session = new ReplaySession(this.capture, simulation);
+		int last = this.capture.getFrameCount() - 1;
+		int previousTarget = -1, previousEpoch = -1;
+
+		// Forward within a keyframe interval, back past keyframes, then forward across several.
+		for(int target : new int[] { 3, 4, 9, last, 5, 30, 31, 12, 0, last })
+		{
+			assertSeeksTo(session, simulation, target);
+
+			int epoch = simulation.getWorld().getEpoch();
+
+			if(target < previousTarget)
+				assertNotEquals(previousEpoch, epoch, "Seeking back to frame " + target + " should start over.");
+			else if(target == previousTarget + 1)
+				assertEquals(previousEpoch, epoch, "Stepping to frame " + target + " should carry on.");
+
+			previousTarget = target;
+			previousEpoch = epoch;
+		}
+	}
+}
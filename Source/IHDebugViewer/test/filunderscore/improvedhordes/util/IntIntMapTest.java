@@ -0,0 +1,114 @@
+package filunderscore.improvedhordes.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public final class IntIntMapTest
+{
+	private static void assertSameMap(Map<Integer, Integer> expected, IntIntMap actual, int keyRange)
+	{
+		assertEquals(expected.size(), actual.size());
+
+		for(int key = -keyRange; key < keyRange; key++)
+		{
+			assertEquals(expected.getOrDefault(key, IntIntMap.NO_VALUE).intValue(), actual.get(key), "Key " + key);
+		}
+	}
+
+	@Test
+	public void missingKeysHaveNoValue()
+	{
+		IntIntMap map = new IntIntMap();
+
+		assertEquals(IntIntMap.NO_VALUE, map.get(0));
+		assertEquals(IntIntMap.NO_VALUE, map.remove(0));
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	public void putReplacesExistingValue()
+	{
+		IntIntMap map = new IntIntMap();
+
+		map.put(7, 1);
+		map.put(7, 2);
+
+		assertEquals(2, map.get(7));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void growsPastInitialCapacity()
+	{
+		IntIntMap map = new IntIntMap(2);
+		Map<Integer, Integer> expected = new HashMap<>();
+
+		for(int key = 0; key < 1000; key++)
+		{
+			map.put(key * 31, key);
+			expected.put(key * 31, key);
+		}
+
+		for(Map.Entry<Integer, Integer> entry : expected.entrySet())
+		{
+			assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+		}
+
+		assertEquals(1000, map.size());
+	}
+
+	@Test
+	public void matchesHashMapUnderRandomOperations()
+	{
+		// A small key range keeps the table crowded, so removals keep shifting probe chains.
+		int keyRange = 200;
+		Random random = new Random(3);
+		IntIntMap map = new IntIntMap(4);
+		Map<Integer, Integer> expected = new HashMap<>();
+
+		for(int i = 0; i < 100000; i++)
+		{
+			int key = random.nextInt(keyRange * 2) - keyRange;
+
+			if(random.nextInt(3) == 0)
+			{
+				Integer removed = expected.remove(key);
+				assertEquals(removed == null ? IntIntMap.NO_VALUE : removed.intValue(), map.remove(key));
+			}
+			else
+			{
+				int value = random.nextInt();
+
+				expected.put(key, value);
+				map.put(key, value);
+			}
+
+			if(i % 5000 == 0)
+				assertSameMap(expected, map, keyRange);
+		}
+
+		assertSameMap(expected, map, keyRange);
+	}
+
+	@Test
+	public void clearRemovesEverything()
+	{
+		IntIntMap map = new IntIntMap();
+
+		for(int key = 0; key < 100; key++)
+			map.put(key, key);
+
+		map.clear();
+
+		assertEquals(0, map.size());
+		assertEquals(IntIntMap.NO_VALUE, map.get(50));
+
+		map.put(50, 1);
+		assertEquals(1, map.get(50));
+	}
+}
@@ -0,0 +1,103 @@
+package filunderscore.improvedhordes.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public final class SymbolTableTest
+{
+	/**
+	 * Places the string's bytes after some padding, in a direct buffer like the wire buffers.
+	 */
+	private static ByteBuffer bufferOf(String padding, String value)
+	{
+		byte[] bytes = (padding + value).getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+
+		buffer.put(bytes).flip();
+		return buffer;
+	}
+
+	private static String intern(SymbolTable symbols, String padding, String value)
+	{
+		ByteBuffer buffer = bufferOf(padding, value);
+		int offset = padding.getBytes(StandardCharsets.UTF_8).length;
+
+		String interned = symbols.intern(buffer, offset, value.getBytes(StandardCharsets.UTF_8).length);
+
+		assertEquals(0, buffer.position());
+		return interned;
+	}
+
+	@Test
+	public void returnsSameInstanceForSameBytes()
+	{
+		SymbolTable symbols = new SymbolTable();
+
+		String first = intern(symbols, "", "WanderingEnemyHorde");
+		String second = intern(symbols, "xyz", "WanderingEnemyHorde");
+
+		assertEquals("WanderingEnemyHorde", first);
+		assertSame(first, second);
+		assertEquals(1, symbols.size());
+	}
+
+	@Test
+	public void distinguishesPrefixesAndEmptyStrings()
+	{
+		SymbolTable symbols = new SymbolTable();
+
+		assertEquals("", intern(symbols, "", ""));
+		assertEquals("snow", intern(symbols, "", "snow"));
+		assertEquals("snow_forest", intern(symbols, "", "snow_forest"));
+		assertEquals("sno", intern(symbols, "", "sno"));
+		assertEquals(4, symbols.size());
+	}
+
+	@Test
+	public void decodesMultiByteCharacters()
+	{
+		SymbolTable symbols = new SymbolTable();
+
+		String value = intern(symbols, "ab", "w\u00fcste_\u00df_\u68ee");
+
+		assertEquals("w\u00fcste_\u00df_\u68ee", value);
+		assertSame(value, intern(symbols, "", "w\u00fcste_\u00df_\u68ee"));
+	}
+
+	@Test
+	public void keepsAllSymbolsThroughGrowth()
+	{
+		SymbolTable symbols = new SymbolTable();
+		String[] interned = new String[1000];
+
+		for(int i = 0; i < interned.length; i++)
+			interned[i] = intern(symbols, "", "biome_" + i);
+
+		assertEquals(interned.length, symbols.size());
+
+		for(int i = 0; i < interned.length; i++)
+			assertSame(interned[i], intern(symbols, "pad", "biome_" + i));
+	}
+
+	@Test
+	public void stopsKeepingPastMaxSymbols()
+	{
+		SymbolTable symbols = new SymbolTable(2);
+
+		String a = intern(symbols, "", "a");
+		intern(symbols, "", "b");
+
+		String c = intern(symbols, "", "c");
+
+		assertEquals("c", c);
+		assertEquals(2, symbols.size());
+		assertNotSame(c, intern(symbols, "", "c"));
+		assertSame(a, intern(symbols, "", "a"));
+	}
+}
@@ -0,0 +1,214 @@
+package filunderscore.improvedhordes.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.synthetic.DeltaFrameEncoder;
+import filunderscore.improvedhordes.synthetic.Movement;
+import filunderscore.improvedhordes.synthetic.SyntheticWorld;
+import filunderscore.improvedhordes.util.SymbolTable;
+
+public final class DeltaDecoderTest
+{
+	private static SyntheticWorld createWorld()
+	{
+		SyntheticWorld world = new SyntheticWorld(11, 6144, 4, 3000, 50);
+		world.setMovement(Movement.DRIFT);
+		world.setChurn(400.0f);
+
+		return world;
+	}
+
+	/**
+	 * Decodes every message of an encoded step and returns the type of the last one.
+	 */
+	private static int readAll(DeltaDecoder decoder, ByteBuffer messages) throws IOException
+	{
+		WireBuffer in = WireBuffer.wrap(messages);
+		int type = -1;
+
+		while(in.isBuffered(Protocol.MESSAGE_HEADER_SIZE))
+		{
+			in.beginFrame();
+			type = decoder.read(in);
+		}
+
+		return type;
+	}
+
+	/**
+	 * Compares by cluster id, since rows are reordered as clusters are removed.
+	 */
+	private static void assertSameWorld(SyntheticWorld expected, WorldHordeState actual)
+	{
+		assertEquals(expected.getWorldSize(), actual.GetWorldSize().x);
+		assertEquals(expected.getPlayerCount(), actual.getPlayerCount());
+		assertEquals(expected.getZoneCount(), actual.getZoneCount());
+
+		for(int i = 0; i < expected.getPlayerCount(); i++)
+		{
+			assertEquals(expected.getPlayerX(i), actual.getPlayerX(i));
+			assertEquals(expected.getPlayerZ(i), actual.getPlayerZ(i));
+			assertEquals(expected.getPlayerBiome(i), actual.getPlayerBiome(i));
+		}
+
+		int alive = 0;
+
+		for(int i = 0; i < expected.getClusterCount(); i++)
+		{
+			if(expected.isClusterAlive(i))
+				alive++;
+		}
+
+		assertEquals(alive, actual.getClusterCount());
+
+		boolean[] seen = new boolean[expected.getClusterCount()];
+
+		for(int row = 0; row < actual.getClusterCount(); row++)
+		{
+			int id = actual.getClusterId(row);
+
+			assertTrue(expected.isClusterAlive(id), "Cluster " + id + " should have been removed.");
+			assertTrue(!seen[id], "Cluster " + id + " has two rows.");
+			seen[id] = true;
+
+			assertEquals(expected.getClusterX(id), actual.getClusterX(row));
+			assertEquals(expected.getClusterZ(id), actual.getClusterZ(row));
+			assertEquals(expected.getClusterDensity(id), actual.getClusterDensity(row));
+			assertEquals(expected.getClusterTypeName(typeOf(expected, id)), actual.getClusterTypeName(row));
+		}
+	}
+
+	private static int typeOf(SyntheticWorld world, int cluster)
+	{
+		int type = 0;
+
+		while(world.getTypeStart(type + 1) <= cluster)
+			type++;
+
+		return type;
+	}
+
+	@Test
+	public void matchesEncodedWorldAcrossDeltasAndKeyframes() throws IOException
+	{
+		SyntheticWorld world = createWorld();
+		DeltaFrameEncoder encoder = new DeltaFrameEncoder(10, 0.0f);
+		DeltaDecoder decoder = new DeltaDecoder(new SymbolTable());
+
+		for(int step = 0; step < 35; step++)
+		{
+			int type = readAll(decoder, encoder.encode(world));
+
+			assertEquals(step % 11 == 0 ? Protocol.MESSAGE_KEYFRAME : Protocol.MESSAGE_DELTA, type);
+			assertSameWorld(world, decoder.getMaster());
+
+			world.step(0.1f);
+		}
+	}
+
+	@Test
+	public void ignoresDeltasUntilKeyframe() throws IOException
+	{
+		SyntheticWorld world = createWorld();
+		DeltaFrameEncoder encoder = new DeltaFrameEncoder(0, 0.0f);
+		DeltaDecoder decoder = new DeltaDecoder(new SymbolTable());
+
+		readAll(decoder, encoder.encode(world));
+		world.step(0.1f);
+
+		// A viewer that joins mid-stream only sees deltas, which must not be applied to an empty state.
+		decoder.reset();
+
+		assertEquals(Protocol.MESSAGE_DELTA, readAll(decoder, encoder.encode(world)));
+		assertEquals(0, decoder.getMaster().getClusterCount());
+
+		world.step(0.1f);
+		encoder.requestKeyframe();
+
+		assertEquals(Protocol.MESSAGE_KEYFRAME, readAll(decoder, encoder.encode(world)));
+		assertEquals(world.getPlayerCount(), decoder.getMaster().getPlayerCount());
+
+		world.step(0.1f);
+		readAll(decoder, encoder.encode(world));
+
+		int alive = 0;
+
+		for(int i = 0; i < world.getClusterCount(); i++)
+		{
+			if(world.isClusterAlive(i))
+				alive++;
+		}
+
+		assertEquals(alive, decoder.getMaster().getClusterCount());
+	}
+
+	@Test
+	public void skipsUnknownMessages() throws IOException
+	{
+		SyntheticWorld world = createWorld();
+		ByteBuffer encoded = new DeltaFrameEncoder(0, 0.0f).encode(world);
+
+		ByteBuffer messages = ByteBuffer.allocate(16 + encoded.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+		messages.putInt(99).putInt(8).putLong(-1L).put(encoded).flip();
+
+		DeltaDecoder decoder = new DeltaDecoder(new SymbolTable());
+		WireBuffer in = WireBuffer.wrap(messages);
+
+		in.beginFrame();
+		assertEquals(99, decoder.read(in));
+
+		while(in.isBuffered(Protocol.MESSAGE_HEADER_SIZE))
+		{
+			in.beginFrame();
+			decoder.read(in);
+		}
+
+		assertSameWorld(world, decoder.getMaster());
+	}
+
+	@Test
+	public void rejectsMessageLongerThanDeclared()
+	{
+		// A world message declaring 4 bytes but holding a world size and a zone count.
+		ByteBuffer message = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		message.putInt(Protocol.MESSAGE_WORLD).putInt(4).putInt(6144).putInt(0).flip();
+
+		DeltaDecoder decoder = new DeltaDecoder(new SymbolTable());
+
+		assertThrows(IOException.class, () -> decoder.read(WireBuffer.wrap(message)));
+	}
+
+	@Test
+	public void rejectsOversizedMessageLength()
+	{
+		ByteBuffer message = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		message.putInt(Protocol.MESSAGE_KEYFRAME).putInt(Protocol.FRAME_MAX_LENGTH + 1).flip();
+
+		DeltaDecoder decoder = new DeltaDecoder(new SymbolTable());
+
+		assertThrows(IOException.class, () -> decoder.read(WireBuffer.wrap(message)));
+	}
+
+	@Test
+	public void rejectsClusterOfUnknownType()
+	{
+		// A keyframe with no players, no types and one cluster of type 0.
+		ByteBuffer message = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+		message.putInt(Protocol.MESSAGE_KEYFRAME).putInt(36).putInt(0).putInt(0).putInt(1);
+		message.putInt(5).putInt(0).putFloat(0.0f).putFloat(0.0f).putFloat(0.0f).putFloat(1.0f).flip();
+
+		DeltaDecoder decoder = new DeltaDecoder(new SymbolTable());
+
+		assertThrows(IOException.class, () -> decoder.read(WireBuffer.wrap(message)));
+	}
+}
@@ -0,0 +1,156 @@
+package filunderscore.improvedhordes.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public final class DensityHeatmapTest
+{
+	private static final long SECOND = 1_000_000_000L;
+	private static final int WORLD_SIZE = 1024;
+	private static final int CELL_SIZE = 16;
+
+	private static WorldHordeState createState(long sequence, long timestamp, float... xs)
+	{
+		return createState(sequence, timestamp, 0, xs);
+	}
+
+	private static WorldHordeState createState(long sequence, long timestamp, int epoch, float... xs)
+	{
+		WorldHordeState world = new WorldHordeState();
+
+		world.clear(WORLD_SIZE);
+		int type = world.addClusterType("WanderingEnemyHorde");
+
+		for(float x : xs)
+			world.addCluster(type, x, 0.0f, 0.0f, 1.0f);
+
+		world.seal(sequence, timestamp, epoch);
+		return world;
+	}
+
+	private static int cellAt(float x)
+	{
+		int columns = WORLD_SIZE / CELL_SIZE;
+		return columns / 2 * columns + (int)((x + WORLD_SIZE / 2) / CELL_SIZE);
+	}
+
+	private static Set<Integer> changedCells(DensityHeatmap.Snapshot snapshot)
+	{
+		Set<Integer> cells = new HashSet<>();
+
+		for(int i = 0; i < snapshot.getChangedCount(); i++)
+			cells.add(snapshot.getChangedCell(i));
+
+		return cells;
+	}
+
+	@Test
+	public void firstSnapshotIsFull()
+	{
+		DensityHeatmap heatmap = new DensityHeatmap(CELL_SIZE, 60.0f);
+		DensityHeatmap.Snapshot snapshot = new DensityHeatmap.Snapshot();
+
+		heatmap.update(createState(1, 0, 0.0f));
+		heatmap.update(createState(2, SECOND, 0.0f));
+		heatmap.copyTo(snapshot);
+
+		assertTrue(snapshot.isFull());
+		assertEquals(WORLD_SIZE / CELL_SIZE, snapshot.getColumns());
+		assertEquals(1.0f, snapshot.getMaxValue(), 1e-4f);
+		assertEquals(heatmap.getValue(cellAt(0.0f)), snapshot.getMaxValue(), 1e-4f);
+	}
+
+	@Test
+	public void snapshotsCollectChangesAcrossUpdates()
+	{
+		DensityHeatmap heatmap = new DensityHeatmap(CELL_SIZE, 60.0f);
+		DensityHeatmap.Snapshot snapshot = new DensityHeatmap.Snapshot();
+
+		heatmap.update(createState(1, 0, 0.0f));
+		heatmap.copyTo(snapshot);
+
+		// Several states decoded between two paints must all reach the next snapshot.
+		heatmap.update(createState(2, SECOND, 100.0f));
+		heatmap.update(createState(3, 2 * SECOND, 200.0f));
+		heatmap.update(createState(4, 3 * SECOND, 200.0f, -300.0f));
+		heatmap.copyTo(snapshot);
+
+		assertFalse(snapshot.isFull());
+		assertEquals(Set.of(cellAt(100.0f), cellAt(200.0f), cellAt(-300.0f)), changedCells(snapshot));
+
+		for(int cell : changedCells(snapshot))
+			assertEquals(heatmap.getValue(cell), snapshot.getRawValue(cell) / snapshot.getRawMaxValue() * snapshot.getMaxValue(), 1e-4f);
+
+		heatmap.copyTo(snapshot);
+
+		assertEquals(0, snapshot.getChangedCount());
+	}
+
+	@Test
+	public void resetMakesNextSnapshotFull()
+	{
+		DensityHeatmap heatmap = new DensityHeatmap(CELL_SIZE, 60.0f);
+		DensityHeatmap.Snapshot snapshot = new DensityHeatmap.Snapshot();
+
+		heatmap.update(createState(1, 0, 0.0f));
+		heatmap.update(createState(2, SECOND, 0.0f));
+		heatmap.copyTo(snapshot);
+
+		heatmap.reset();
+		heatmap.copyTo(snapshot);
+
+		assertTrue(snapshot.isFull());
+		assertEquals(0.0f, snapshot.getRawValue(cellAt(0.0f)));
+	}
+
+	@Test
+	public void weighsStatesByTheirTimestamps()
+	{
+		DensityHeatmap heatmap = new DensityHeatmap(CELL_SIZE, 1e9f);
+
+		// Updates arrive back to back, as when a replay applies frames in a burst, but the states are a second apart.
+		heatmap.update(createState(1, 10 * SECOND, 0.0f));
+		heatmap.update(createState(2, 11 * SECOND, 0.0f));
+		heatmap.update(createState(3, 13 * SECOND, 100.0f));
+
+		assertEquals(1.0f, heatmap.getValue(cellAt(0.0f)), 1e-4f);
+		assertEquals(2.0f, heatmap.getValue(cellAt(100.0f)), 1e-4f);
+	}
+
+	@Test
+	public void newEpochStartsOver()
+	{
+		DensityHeatmap heatmap = new DensityHeatmap(CELL_SIZE, 1e9f);
+		DensityHeatmap.Snapshot snapshot = new DensityHeatmap.Snapshot();
+
+		heatmap.update(createState(1, 50 * SECOND, 0, 0.0f));
+		heatmap.update(createState(2, 51 * SECOND, 0, 0.0f));
+		heatmap.copyTo(snapshot);
+
+		// A seek back restarts from an earlier keyframe: the sequence keeps rising, but the states no longer follow on.
+		heatmap.update(createState(3, 20 * SECOND, 1, 100.0f));
+		heatmap.update(createState(4, 21 * SECOND, 1, 100.0f));
+		heatmap.copyTo(snapshot);
+
+		assertTrue(snapshot.isFull());
+		assertEquals(0.0f, heatmap.getValue(cellAt(0.0f)));
+		assertEquals(1.0f, heatmap.getValue(cellAt(100.0f)), 1e-4f);
+	}
+
+	@Test
+	public void ignoresTimeGoingBackwardsWithinAnEpoch()
+	{
+		DensityHeatmap heatmap = new DensityHeatmap(CELL_SIZE, 1e9f);
+
+		heatmap.update(createState(1, 5 * SECOND, 0.0f));
+		heatmap.update(createState(2, 4 * SECOND, 0.0f));
+
+		assertEquals(0.0f, heatmap.getValue(cellAt(0.0f)));
+	}
+}
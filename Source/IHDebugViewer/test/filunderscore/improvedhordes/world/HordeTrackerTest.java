@@ -0,0 +1,86 @@
+package filunderscore.improvedhordes.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public final class HordeTrackerTest
+{
+	private static final long SECOND = 1_000_000_000L;
+
+	private static WorldHordeState createState(long sequence, long timestamp, float x)
+	{
+		return createState(sequence, timestamp, 0, -1, x);
+	}
+
+	private static WorldHordeState createState(long sequence, long timestamp, int epoch, int id, float x)
+	{
+		WorldHordeState world = new WorldHordeState();
+
+		world.clear(6144);
+		world.addCluster(id, world.addClusterType("WanderingEnemyHorde"), x, 0.0f, 0.0f, 1.0f);
+		world.seal(sequence, timestamp, epoch);
+
+		return world;
+	}
+
+	@Test
+	public void followsClusterAcrossStates()
+	{
+		HordeTracker tracker = new HordeTracker(8, 24.0f);
+
+		for(int i = 0; i < 5; i++)
+			tracker.update(createState(i + 1, i * SECOND, i * 2.0f));
+
+		int slot = tracker.getClusterTrack(0);
+
+		assertEquals(1, tracker.getTrackCount());
+		assertEquals(5, tracker.getTrailSize(slot));
+		assertEquals(2.0f, tracker.getVelocityX(slot), 0.5f);
+	}
+
+	@Test
+	public void startsOverAfterUnseenStates()
+	{
+		HordeTracker tracker = new HordeTracker(8, 24.0f);
+
+		tracker.update(createState(1, 0, 0.0f));
+		tracker.update(createState(2, SECOND, 2.0f));
+
+		// The states in between were never passed in, as while the panel was hidden.
+		tracker.update(createState(500, 2 * SECOND, 4.0f));
+
+		assertEquals(1, tracker.getTrackCount());
+		assertEquals(1, tracker.getTrailSize(tracker.getClusterTrack(0)));
+	}
+
+	@Test
+	public void measuresSpeedByFrameTime()
+	{
+		HordeTracker tracker = new HordeTracker(8, 24.0f);
+
+		// States painted back to back, as when replaying fast, but recorded four seconds apart.
+		tracker.update(createState(1, 0, 0, 7, 0.0f));
+		tracker.update(createState(2, 4 * SECOND, 0, 7, 8.0f));
+
+		assertEquals(1.0f, tracker.getVelocityX(tracker.getClusterTrack(0)), 1e-4f);
+	}
+
+	@Test
+	public void startsOverAfterSeek()
+	{
+		HordeTracker tracker = new HordeTracker(8, 24.0f);
+
+		tracker.update(createState(1, 100 * SECOND, 0, 7, 0.0f));
+		tracker.update(createState(2, 101 * SECOND, 0, 7, 2.0f));
+
+		// A seek back restarts from a keyframe: the sequence keeps rising and the id is the same, but the horde jumped.
+		tracker.update(createState(3, 10 * SECOND, 1, 7, 3000.0f));
+
+		int slot = tracker.getClusterTrack(0);
+
+		assertEquals(1, tracker.getTrackCount());
+		assertEquals(1, tracker.getTrailSize(slot));
+		assertEquals(0.0f, tracker.getVelocityX(slot));
+	}
+}
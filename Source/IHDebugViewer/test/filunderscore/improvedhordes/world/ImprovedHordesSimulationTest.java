@@ -0,0 +1,141 @@
+package filunderscore.improvedhordes.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+
+import org.junit.jupiter.api.Test;
+
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.synthetic.LegacyFrameEncoder;
+import filunderscore.improvedhordes.synthetic.SyntheticWorld;
+
+public final class ImprovedHordesSimulationTest
+{
+	private static WireBuffer channelOf(ByteBuffer frame)
+	{
+		byte[] bytes = new byte[frame.remaining()];
+		frame.get(bytes);
+
+		return new WireBuffer(Channels.newChannel(new ByteArrayInputStream(bytes)), 64);
+	}
+
+	private static ByteBuffer ints(int... values)
+	{
+		ByteBuffer data = ByteBuffer.allocate(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+		for(int value : values)
+			data.putInt(value);
+
+		return data.flip();
+	}
+
+	private static void assertCorrupt(int... frame)
+	{
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation("test");
+		WireBuffer in = channelOf(ints(frame));
+
+		assertThrows(IOException.class, () -> simulation.read(in));
+	}
+
+	@Test
+	public void decodesLegacyFrame() throws IOException
+	{
+		SyntheticWorld synthetic = new SyntheticWorld(7, 6144, 5, 2000, 30);
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation("test");
+
+		simulation.read(channelOf(new LegacyFrameEncoder().encode(synthetic)));
+		WorldHordeState world = simulation.getWorld();
+
+		assertEquals(6144, world.GetWorldSize().x);
+		assertEquals(synthetic.getPlayerCount(), world.getPlayerCount());
+		assertEquals(synthetic.getClusterCount(), world.getClusterCount());
+		assertEquals(synthetic.getZoneCount(), world.getZoneCount());
+
+		for(int i = 0; i < synthetic.getPlayerCount(); i++)
+		{
+			assertEquals(synthetic.getPlayerX(i), world.getPlayerX(i));
+			assertEquals(synthetic.getPlayerBiome(i), world.getPlayerBiome(i));
+		}
+
+		for(int i = 0; i < synthetic.getClusterCount(); i++)
+		{
+			assertEquals(synthetic.getClusterX(i), world.getClusterX(i));
+			assertEquals(synthetic.getClusterDensity(i), world.getClusterDensity(i));
+		}
+	}
+
+	@Test
+	public void rejectsNegativePlayerCount()
+	{
+		assertCorrupt(6144, -1);
+	}
+
+	@Test
+	public void rejectsOversizedClusterCount()
+	{
+		// One unnamed type claiming far more clusters than a frame could hold.
+		ByteBuffer frame = ByteBuffer.allocate(17).order(ByteOrder.LITTLE_ENDIAN);
+		frame.putInt(6144).putInt(0).putInt(1).put((byte)0).putInt(Integer.MAX_VALUE / 8);
+
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation("test");
+		WireBuffer in = channelOf(frame.flip());
+
+		assertThrows(IOException.class, () -> simulation.read(in));
+	}
+
+	@Test
+	public void rejectsOverflowingZoneCount()
+	{
+		// 0x08000000 zones of 32 bytes would wrap to 0 in int arithmetic.
+		assertCorrupt(6144, 0, 0, 0x08000000);
+	}
+
+	@Test
+	public void rejectsNegativeStringLength()
+	{
+		ByteBuffer frame = ByteBuffer.allocate(29).order(ByteOrder.LITTLE_ENDIAN);
+		frame.putInt(6144).putInt(1).putFloat(0.0f).putFloat(0.0f).putFloat(0.0f).putInt(1).put((byte)1).putInt(-5);
+
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation("test");
+		WireBuffer in = channelOf(frame.flip());
+
+		assertThrows(IOException.class, () -> simulation.read(in));
+	}
+
+	@Test
+	public void heatmapStartsOverAfterSeek() throws IOException
+	{
+		long second = 1_000_000_000L;
+		SyntheticWorld synthetic = new SyntheticWorld(3, 6144, 2, 50, 5);
+		LegacyFrameEncoder encoder = new LegacyFrameEncoder();
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation("test");
+		DensityHeatmap.Snapshot snapshot = new DensityHeatmap.Snapshot();
+
+		for(int i = 0; i < 3; i++)
+			simulation.read(channelOf(encoder.encode(synthetic)), i * second);
+
+		simulation.getHeatmap().copyTo(snapshot);
+		float played = snapshot.getMaxValue();
+
+		// Seeking back replays the first frame again from a keyframe.
+		simulation.startOver();
+		simulation.read(channelOf(encoder.encode(synthetic)), 0);
+		simulation.getHeatmap().copyTo(snapshot);
+
+		assertTrue(played > 0.0f);
+		assertTrue(snapshot.isFull());
+		assertEquals(0.0f, snapshot.getMaxValue());
+
+		simulation.read(channelOf(encoder.encode(synthetic)), second);
+		simulation.getHeatmap().copyTo(snapshot);
+
+		assertEquals(played / 2, snapshot.getMaxValue(), played * 1e-3f);
+	}
+}
@@ -0,0 +1,289 @@
+package filunderscore.improvedhordes.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import filunderscore.improvedhordes.metrics.ViewerMetrics;
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.synthetic.LegacyFrameEncoder;
+import filunderscore.improvedhordes.synthetic.SectionedFrameEncoder;
+import filunderscore.improvedhordes.synthetic.SyntheticWorld;
+import filunderscore.improvedhordes.util.SymbolTable;
+
+public final class SectionedDecoderTest
+{
+	private ForkJoinPool pool;
+	private ViewerMetrics metrics;
+
+	@BeforeEach
+	public void setUp()
+	{
+		this.pool = new ForkJoinPool(4);
+		this.metrics = new ViewerMetrics("test");
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		this.pool.shutdown();
+	}
+
+	private SectionedDecoder createDecoder(ForkJoinPool pool)
+	{
+		return new SectionedDecoder(new SymbolTable(), this.metrics, pool);
+	}
+
+	private static byte[] toBytes(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+
+		return bytes;
+	}
+
+	private static byte[] encode(SyntheticWorld world)
+	{
+		return toBytes(new SectionedFrameEncoder().encode(world));
+	}
+
+	private static WireBuffer channelOf(byte[]... frames)
+	{
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+		for(byte[] frame : frames)
+			stream.writeBytes(frame);
+
+		return new WireBuffer(Channels.newChannel(new ByteArrayInputStream(stream.toByteArray())), 64);
+	}
+
+	/**
+	 * Rewrites the checksum after a test edits a frame, so only the edit itself can make it fail.
+	 */
+	private static void updateChecksum(byte[] frame)
+	{
+		CRC32C checksum = new CRC32C();
+		checksum.update(frame, Protocol.FRAME_HEADER_SIZE, frame.length - Protocol.FRAME_HEADER_SIZE);
+
+		ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).putInt(Protocol.FRAME_CHECKSUM_OFFSET, (int)checksum.getValue());
+	}
+
+	private static void putInt(byte[] frame, int offset, int value)
+	{
+		ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+	}
+
+	private static int sectionEntry(byte[] frame, int type)
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+
+		for(int entry = Protocol.SECTION_TABLE_OFFSET; ; entry += Protocol.SECTION_ENTRY_SIZE)
+		{
+			if(buffer.getInt(entry) == type)
+				return entry;
+		}
+	}
+
+	private static WorldHordeState decodeLegacy(SyntheticWorld world) throws IOException
+	{
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation("test");
+		simulation.read(WireBuffer.wrap(new LegacyFrameEncoder().encode(world)));
+
+		return simulation.getWorld();
+	}
+
+	private WorldHordeState decode(SectionedDecoder decoder, WireBuffer in) throws IOException
+	{
+		WorldHordeState world = new WorldHordeState();
+		decoder.read(in, world);
+
+		return world;
+	}
+
+	private static void assertSameWorld(WorldHordeState expected, WorldHordeState actual)
+	{
+		assertEquals(expected.GetWorldSize().x, actual.GetWorldSize().x);
+		assertEquals(expected.getPlayerCount(), actual.getPlayerCount());
+		assertEquals(expected.getClusterCount(), actual.getClusterCount());
+		assertEquals(expected.getClusterTypeCount(), actual.getClusterTypeCount());
+		assertEquals(expected.getZoneCount(), actual.getZoneCount());
+
+		for(int i = 0; i < expected.getPlayerCount(); i++)
+		{
+			assertEquals(expected.getPlayerX(i), actual.getPlayerX(i));
+			assertEquals(expected.getPlayerY(i), actual.getPlayerY(i));
+			assertEquals(expected.getPlayerZ(i), actual.getPlayerZ(i));
+			assertEquals(expected.getPlayerGamestage(i), actual.getPlayerGamestage(i));
+			assertEquals(expected.getPlayerBiome(i), actual.getPlayerBiome(i));
+		}
+
+		for(int i = 0; i < expected.getClusterCount(); i++)
+		{
+			assertEquals(expected.getClusterTypeName(i), actual.getClusterTypeName(i));
+			assertEquals(expected.getClusterX(i), actual.getClusterX(i));
+			assertEquals(expected.getClusterY(i), actual.getClusterY(i));
+			assertEquals(expected.getClusterZ(i), actual.getClusterZ(i));
+			assertEquals(expected.getClusterDensity(i), actual.getClusterDensity(i));
+		}
+
+		for(int i = 0; i < expected.getZoneCount(); i++)
+		{
+			assertEquals(expected.getZoneX(i), actual.getZoneX(i));
+			assertEquals(expected.getZoneY(i), actual.getZoneY(i));
+			assertEquals(expected.getZoneWidth(i), actual.getZoneWidth(i));
+			assertEquals(expected.getZoneHeight(i), actual.getZoneHeight(i));
+		}
+	}
+
+	@Test
+	public void decodesLikeLegacy() throws IOException
+	{
+		for(int clusters : new int[] { 0, 1, 1000 })
+		{
+			SyntheticWorld world = new SyntheticWorld(clusters, 6144, 6, clusters, 40);
+
+			assertSameWorld(decodeLegacy(world), this.decode(this.createDecoder(this.pool), channelOf(encode(world))));
+		}
+	}
+
+	@Test
+	public void parallelDecodeMatchesSerial() throws IOException
+	{
+		// Small frames decode on the calling thread, large ones split their clusters into chunks, the last one partial.
+		for(int clusters : new int[] { 12000, 3 * 16384 + 1 })
+		{
+			SyntheticWorld world = new SyntheticWorld(clusters, 6144, 8, clusters, 200);
+			byte[] frame = encode(world);
+			WorldHordeState expected = decodeLegacy(world);
+			ForkJoinPool single = new ForkJoinPool(1);
+
+			try
+			{
+				assertSameWorld(expected, this.decode(this.createDecoder(single), channelOf(frame)));
+				assertSameWorld(expected, this.decode(this.createDecoder(this.pool), channelOf(frame)));
+			}
+			finally
+			{
+				single.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void resyncsAfterCorruptFrames() throws IOException
+	{
+		byte[][] frames = new byte[6][];
+
+		for(int i = 0; i < frames.length; i++)
+			frames[i] = encode(new SyntheticWorld(i, 2048 + i * 64, 2, 300, 10));
+
+		// A flipped payload bit fails the checksum, a flipped length fails the header, and a zeroed magic hides a frame.
+		frames[1][frames[1].length / 2] ^= 0x10;
+		putInt(frames[3], Protocol.FRAME_LENGTH_OFFSET, Protocol.FRAME_MAX_LENGTH + 1);
+		putInt(frames[4], 0, 0);
+
+		SectionedDecoder decoder = this.createDecoder(this.pool);
+		WireBuffer in = channelOf(frames);
+
+		assertEquals(2048, this.decode(decoder, in).GetWorldSize().x);
+		assertEquals(2048 + 2 * 64, this.decode(decoder, in).GetWorldSize().x);
+		assertEquals(2048 + 5 * 64, this.decode(decoder, in).GetWorldSize().x);
+
+		assertEquals(2, this.metrics.getFramesCorrupt());
+		assertThrows(IOException.class, () -> this.decode(decoder, in));
+	}
+
+	@Test
+	public void resyncsAfterGarbage() throws IOException
+	{
+		byte[] garbage = { 1, 2, 3, 'I', 'H', 4, 5, 6, 7 };
+		byte[] frame = encode(new SyntheticWorld(1, 4096, 2, 100, 5));
+
+		WorldHordeState world = this.decode(this.createDecoder(this.pool), channelOf(garbage, frame));
+
+		assertEquals(4096, world.GetWorldSize().x);
+		assertEquals(1, this.metrics.getFramesCorrupt());
+	}
+
+	@Test
+	public void skipsOtherVersions() throws IOException
+	{
+		byte[] newer = encode(new SyntheticWorld(1, 4096, 2, 100, 5));
+		byte[] current = encode(new SyntheticWorld(2, 2048, 2, 100, 5));
+
+		putInt(newer, 4, Protocol.FRAME_VERSION + 1);
+
+		WorldHordeState world = this.decode(this.createDecoder(this.pool), channelOf(newer, current));
+
+		assertEquals(2048, world.GetWorldSize().x);
+		assertEquals(1, this.metrics.getFramesSkipped());
+		assertEquals(0, this.metrics.getFramesCorrupt());
+	}
+
+	@Test
+	public void dropsFramesWithInvalidSections() throws IOException
+	{
+		SyntheticWorld world = new SyntheticWorld(4, 2048, 3, 500, 20);
+		byte[] next = encode(new SyntheticWorld(5, 4096, 2, 100, 5));
+
+		byte[] pastEnd = encode(world);
+		putInt(pastEnd, sectionEntry(pastEnd, Protocol.SECTION_ZONES) + 8, pastEnd.length);
+		updateChecksum(pastEnd);
+
+		byte[] clusterCount = encode(world);
+		int clusters = ByteBuffer.wrap(clusterCount).order(ByteOrder.LITTLE_ENDIAN).getInt(sectionEntry(clusterCount, Protocol.SECTION_CLUSTERS) + 4);
+		// The first type's count follows the type count and the type's name, a flag, length and the name's bytes.
+		int nameLength = ByteBuffer.wrap(clusterCount).order(ByteOrder.LITTLE_ENDIAN).getInt(clusters + 5);
+		putInt(clusterCount, clusters + 9 + nameLength, Integer.MAX_VALUE);
+		updateChecksum(clusterCount);
+
+		byte[] sectionCount = encode(world);
+		putInt(sectionCount, Protocol.FRAME_HEADER_SIZE + 4, 1 << 20);
+		updateChecksum(sectionCount);
+
+		WorldHordeState decoded = this.decode(this.createDecoder(this.pool), channelOf(pastEnd, clusterCount, sectionCount, next));
+
+		assertEquals(4096, decoded.GetWorldSize().x);
+		assertEquals(3, this.metrics.getFramesCorrupt());
+	}
+
+	@Test
+	public void ignoresUnknownSections() throws IOException
+	{
+		SyntheticWorld world = new SyntheticWorld(6, 2048, 3, 500, 20);
+		byte[] frame = encode(world);
+
+		putInt(frame, sectionEntry(frame, Protocol.SECTION_ZONES), 99);
+		updateChecksum(frame);
+
+		WorldHordeState decoded = this.decode(this.createDecoder(this.pool), channelOf(frame));
+
+		assertEquals(0, decoded.getZoneCount());
+		assertEquals(decodeLegacy(world).getClusterCount(), decoded.getClusterCount());
+	}
+
+	@Test
+	public void failsOnTruncatedStream()
+	{
+		byte[] frame = encode(new SyntheticWorld(7, 2048, 2, 100, 5));
+		byte[] truncated = Arrays.copyOf(frame, frame.length - 10);
+
+		SectionedDecoder decoder = this.createDecoder(this.pool);
+
+		assertThrows(IOException.class, () -> this.decode(decoder, channelOf(truncated)));
+	}
+}
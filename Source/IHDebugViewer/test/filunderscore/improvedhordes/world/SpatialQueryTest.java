@@ -0,0 +1,204 @@
+package filunderscore.improvedhordes.world;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import filunderscore.improvedhordes.util.IntList;
+
+public final class SpatialQueryTest
+{
+	private static final int WORLD_SIZE = 6144;
+
+	/**
+	 * Half the clusters are spread over the world and half packed around a few points, so queries see both sparse and
+	 * crowded cells.
+	 */
+	private static WorldHordeState createWorld(long seed, int players, int clusters)
+	{
+		Random random = new Random(seed);
+		WorldHordeState world = new WorldHordeState();
+
+		world.clear(WORLD_SIZE);
+
+		for(int i = 0; i < players; i++)
+			world.addPlayer(coordinate(random), 0.0f, coordinate(random), 1, "desert");
+
+		int type = world.addClusterType("WanderingEnemyHorde");
+
+		for(int i = 0; i < clusters; i++)
+		{
+			if(i % 2 == 0)
+				world.addCluster(type, coordinate(random), 0.0f, coordinate(random), random.nextFloat());
+			else
+				world.addCluster(type, (i % 5) * 500.0f + (float)random.nextGaussian() * 20.0f, 0.0f, (i % 3) * -700.0f + (float)random.nextGaussian() * 20.0f, random.nextFloat());
+		}
+
+		world.seal(1, 0, 0);
+		return world;
+	}
+
+	private static float coordinate(Random random)
+	{
+		return (random.nextFloat() * 2.0f - 1.0f) * WORLD_SIZE / 2.0f;
+	}
+
+	private static float distanceSquared(float[] xs, float[] zs, int i, float x, float z)
+	{
+		float dx = xs[i] - x, dz = zs[i] - z;
+		return dx * dx + dz * dz;
+	}
+
+	private static int[] bruteForceWithin(float[] xs, float[] zs, int count, float x, float z, float radius)
+	{
+		return IntStream.range(0, count).filter(i -> distanceSquared(xs, zs, i, x, z) <= radius * radius).toArray();
+	}
+
+	private static int[] bruteForceInBox(float[] xs, float[] zs, int count, float minX, float minZ, float maxX, float maxZ)
+	{
+		return IntStream.range(0, count).filter(i -> xs[i] >= minX && xs[i] <= maxX && zs[i] >= minZ && zs[i] <= maxZ).toArray();
+	}
+
+	private static int[] sorted(IntList list)
+	{
+		int[] values = list.toArray();
+		Arrays.sort(values);
+		return values;
+	}
+
+	@Test
+	public void withinMatchesBruteForce()
+	{
+		WorldHordeState world = createWorld(5, 200, 20000);
+		SpatialQuery query = new SpatialQuery();
+		Random random = new Random(6);
+		IntList clusters = new IntList(), players = new IntList();
+
+		for(int q = 0; q < 200; q++)
+		{
+			float x = coordinate(random) * 1.1f, z = coordinate(random) * 1.1f;
+			float radius = q % 10 == 0 ? 3000.0f : random.nextFloat() * 400.0f;
+
+			clusters.clear();
+			players.clear();
+
+			query.clustersWithin(world, x, z, radius, clusters);
+			query.playersWithin(world, x, z, radius, players);
+
+			assertArrayEquals(bruteForceWithin(world.getClusterXs(), world.getClusterZs(), world.getClusterCount(), x, z, radius), sorted(clusters));
+			assertArrayEquals(bruteForceWithin(world.getPlayerXs(), world.getPlayerZs(), world.getPlayerCount(), x, z, radius), sorted(players));
+		}
+	}
+
+	@Test
+	public void boxMatchesBruteForce()
+	{
+		WorldHordeState world = createWorld(3, 0, 20000);
+		SpatialQuery query = new SpatialQuery();
+		Random random = new Random(4);
+		IntList clusters = new IntList();
+
+		float[] xs = world.getClusterXs(), zs = world.getClusterZs();
+
+		for(int q = 0; q < 200; q++)
+		{
+			// Boxes reaching past the world edges too, and every tenth one covering most of the world.
+			float x = coordinate(random) * 1.2f, z = coordinate(random) * 1.2f;
+			float width = q % 10 == 0 ? 5000.0f : random.nextFloat() * 600.0f, height = q % 10 == 0 ? 5000.0f : random.nextFloat() * 600.0f;
+
+			clusters.clear();
+			query.clustersInBox(world, x, z, x + width, z + height, clusters);
+
+			assertArrayEquals(bruteForceInBox(xs, zs, world.getClusterCount(), x, z, x + width, z + height), sorted(clusters));
+		}
+	}
+
+	@Test
+	public void boxIncludesItsEdges()
+	{
+		WorldHordeState world = createWorld(12, 0, 100);
+		IntList clusters = new IntList();
+
+		float x = world.getClusterX(17), z = world.getClusterZ(17);
+		new SpatialQuery().clustersInBox(world, x, z, x, z, clusters);
+
+		assertArrayEquals(bruteForceInBox(world.getClusterXs(), world.getClusterZs(), world.getClusterCount(), x, z, x, z), sorted(clusters));
+		assertTrue(Arrays.binarySearch(sorted(clusters), 17) >= 0);
+	}
+
+	@Test
+	public void nearestMatchesBruteForce()
+	{
+		WorldHordeState world = createWorld(7, 0, 20000);
+		SpatialQuery query = new SpatialQuery();
+		Random random = new Random(8);
+		IntList nearest = new IntList();
+
+		float[] xs = world.getClusterXs(), zs = world.getClusterZs();
+		int count = world.getClusterCount();
+
+		for(int q = 0; q < 300; q++)
+		{
+			// Points outside the world too, where every ring is clipped.
+			float x = coordinate(random) * 1.3f, z = coordinate(random) * 1.3f;
+			int k = 1 + random.nextInt(q % 3 == 0 ? 200 : 12);
+
+			nearest.clear();
+			query.nearestClusters(world, x, z, k, nearest);
+
+			float[] expected = new float[count];
+
+			for(int i = 0; i < count; i++)
+				expected[i] = distanceSquared(xs, zs, i, x, z);
+
+			Arrays.sort(expected);
+
+			assertEquals(k, nearest.size());
+
+			// Compared by distance, since ties may come back in either order.
+			for(int i = 0; i < k; i++)
+				assertEquals(expected[i], distanceSquared(xs, zs, nearest.get(i), x, z), "Query " + q + ", neighbour " + i);
+		}
+	}
+
+	@Test
+	public void nearestReturnsEveryClusterWhenFewerThanK()
+	{
+		WorldHordeState world = createWorld(9, 0, 5);
+		IntList nearest = new IntList();
+
+		new SpatialQuery().nearestClusters(world, 0.0f, 0.0f, 50, nearest);
+
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, sorted(nearest));
+	}
+
+	@Test
+	public void nearestAppendsToExistingResults()
+	{
+		WorldHordeState world = createWorld(10, 0, 100);
+		IntList nearest = new IntList();
+
+		nearest.add(-1);
+		new SpatialQuery().nearestClusters(world, 0.0f, 0.0f, 3, nearest);
+
+		assertEquals(4, nearest.size());
+		assertEquals(-1, nearest.get(0));
+	}
+
+	@Test
+	public void nearestOfEmptyWorldIsEmpty()
+	{
+		WorldHordeState world = createWorld(11, 0, 0);
+		IntList nearest = new IntList();
+
+		new SpatialQuery().nearestClusters(world, 0.0f, 0.0f, 4, nearest);
+
+		assertEquals(0, nearest.size());
+	}
+}
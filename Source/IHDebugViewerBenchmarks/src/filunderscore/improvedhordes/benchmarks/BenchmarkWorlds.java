@@ -0,0 +1,26 @@
+package filunderscore.improvedhordes.benchmarks;
+
+import java.io.IOException;
+
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.synthetic.LegacyFrameEncoder;
+import filunderscore.improvedhordes.synthetic.SyntheticWorld;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+final class BenchmarkWorlds
+{
+	static final long SEED = 7;
+	
+	private BenchmarkWorlds()
+	{
+	}
+	
+	static WorldHordeState decode(int worldSize, int players, int clusters, int zones) throws IOException
+	{
+		ImprovedHordesSimulation simulation = new ImprovedHordesSimulation();
+		simulation.read(WireBuffer.wrap(new LegacyFrameEncoder().encode(new SyntheticWorld(SEED, worldSize, players, clusters, zones))));
+		
+		return simulation.getWorld();
+	}
+}
@@ -0,0 +1,73 @@
+package filunderscore.improvedhordes.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.synthetic.LegacyFrameEncoder;
+import filunderscore.improvedhordes.synthetic.SectionedFrameEncoder;
+import filunderscore.improvedhordes.synthetic.SyntheticWorld;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Decoding a wire frame into the back buffer and publishing it, as the ingest thread does for every frame.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark
+{
+	@Param({ "6144", "16384" })
+	public int worldSize;
+	
+	@Param({ "8" })
+	public int players;
+	
+	@Param({ "1000", "50000" })
+	public int clusters;
+	
+	@Param({ "2000" })
+	public int zones;
+	
+	@Param({ "legacy", "sectioned" })
+	public String protocol;
+	
+	private ImprovedHordesSimulation simulation;
+	private WireBuffer in;
+	
+	@Setup
+	public void setup()
+	{
+		SyntheticWorld world = new SyntheticWorld(BenchmarkWorlds.SEED, this.worldSize, this.players, this.clusters, this.zones);
+		
+		boolean sectioned = this.protocol.equals("sectioned");
+		
+		this.simulation = new ImprovedHordesSimulation();
+		this.simulation.setProtocol(sectioned ? Protocol.SECTIONED : Protocol.LEGACY);
+		this.in = new WireBuffer(new RepeatingChannel(sectioned ? new SectionedFrameEncoder().encode(world) : new LegacyFrameEncoder().encode(world)));
+	}
+	
+	@Benchmark
+	public WorldHordeState decode() throws IOException
+	{
+		this.simulation.read(this.in);
+		return this.simulation.getWorld();
+	}
+}
@@ -0,0 +1,84 @@
+package filunderscore.improvedhordes.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import filunderscore.improvedhordes.net.Protocol;
+import filunderscore.improvedhordes.net.WireBuffer;
+import filunderscore.improvedhordes.synthetic.DeltaFrameEncoder;
+import filunderscore.improvedhordes.synthetic.Movement;
+import filunderscore.improvedhordes.synthetic.SyntheticWorld;
+import filunderscore.improvedhordes.world.ImprovedHordesSimulation;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Applying a delta message to a world of static clusters where only {@code changed} clusters die or respawn per message,
+ * to compare against {@link DecodeBenchmark} decoding the whole world every frame.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DeltaDecodeBenchmark
+{
+	@Param({ "6144" })
+	public int worldSize;
+	
+	@Param({ "8" })
+	public int players;
+	
+	@Param({ "1000", "50000" })
+	public int clusters;
+	
+	@Param({ "2000" })
+	public int zones;
+	
+	@Param({ "10", "1000" })
+	public int changed;
+	
+	private ImprovedHordesSimulation simulation;
+	private WireBuffer in;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		SyntheticWorld world = new SyntheticWorld(BenchmarkWorlds.SEED, this.worldSize, this.players, this.clusters, this.zones);
+		world.setMovement(Movement.STATIC);
+		world.setChurn(this.changed);
+		
+		DeltaFrameEncoder encoder = new DeltaFrameEncoder(0, 0.5f);
+		
+		this.simulation = new ImprovedHordesSimulation();
+		this.simulation.setProtocol(Protocol.DELTA);
+		
+		WireBuffer start = WireBuffer.wrap(encoder.encode(world));
+		
+		while(start.isBuffered(1))
+			this.simulation.read(start);
+		
+		// Repeating one delta removes ids that are already gone and re-adds ids that are already there, which costs the same as fresh ones.
+		world.step(1.0f);
+		this.in = new WireBuffer(new RepeatingChannel(encoder.encode(world)));
+	}
+	
+	@Benchmark
+	public WorldHordeState decode() throws IOException
+	{
+		this.simulation.read(this.in);
+		return this.simulation.getWorld();
+	}
+}
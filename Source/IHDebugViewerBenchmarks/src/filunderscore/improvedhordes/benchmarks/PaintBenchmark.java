@@ -0,0 +1,129 @@
+package filunderscore.improvedhordes.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import filunderscore.improvedhordes.gui.BackgroundLayer;
+import filunderscore.improvedhordes.gui.ClusterAggregateLayer;
+import filunderscore.improvedhordes.gui.IHRenderer;
+import filunderscore.improvedhordes.gui.RasterEntityLayer;
+import filunderscore.improvedhordes.util.Vector2i;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * Off-screen paints into a panel sized image: the uncached background, an uncached full draw, and the layered paint the panel performs,
+ * through {@link java.awt.Graphics} and through the raster entity layer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PaintBenchmark
+{
+	private static final int PANEL_SIZE = 1000;
+	
+	@Param({ "1000", "50000" })
+	public int clusters;
+	
+	@Param({ "2000" })
+	public int zones;
+	
+	@Param({ "1", "8" })
+	public float zoom;
+	
+	private WorldHordeState world;
+	private IHRenderer renderer;
+	private BackgroundLayer backgroundLayer;
+	private ClusterAggregateLayer clusterAggregateLayer;
+	private RasterEntityLayer rasterEntityLayer;
+	
+	private BufferedImage image;
+	private Graphics2D g;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		this.world = BenchmarkWorlds.decode(6144, 8, this.clusters, this.zones);
+		
+		this.renderer = new IHRenderer();
+		this.renderer.setSizes(this.world.GetWorldSize(), new Vector2i(PANEL_SIZE, PANEL_SIZE));
+		this.renderer.zoomAt(PANEL_SIZE / 2, PANEL_SIZE / 2, this.zoom);
+		
+		this.backgroundLayer = new BackgroundLayer();
+		this.clusterAggregateLayer = new ClusterAggregateLayer(ClusterAggregateLayer.DEFAULT_MIN_MARKER_PIXELS);
+		this.rasterEntityLayer = new RasterEntityLayer(ForkJoinPool.commonPool());
+		
+		this.image = new BufferedImage(PANEL_SIZE + 1, PANEL_SIZE + 1, BufferedImage.TYPE_INT_RGB);
+		this.g = this.image.createGraphics();
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		this.g.dispose();
+	}
+	
+	@Benchmark
+	public BufferedImage drawBackground()
+	{
+		this.world.drawBackground(this.renderer, this.g);
+		return this.image;
+	}
+	
+	@Benchmark
+	public BufferedImage drawFull()
+	{
+		this.g.setColor(Color.darkGray);
+		this.g.fillRect(0, 0, PANEL_SIZE + 1, PANEL_SIZE + 1);
+		
+		this.world.draw(this.renderer, this.g);
+		return this.image;
+	}
+	
+	@Benchmark
+	public BufferedImage drawLayered()
+	{
+		this.backgroundLayer.draw(this.world, this.renderer, this.g, Color.darkGray);
+		
+		if(this.clusterAggregateLayer.isActive(this.renderer))
+			this.clusterAggregateLayer.draw(this.world, this.renderer, this.g);
+		else
+			this.world.drawClusters(this.renderer, this.g);
+		
+		this.world.drawPlayers(this.renderer, this.g);
+		return this.image;
+	}
+	
+	@Benchmark
+	public BufferedImage drawLayeredRaster()
+	{
+		this.backgroundLayer.draw(this.world, this.renderer, this.g, Color.darkGray);
+		
+		boolean aggregated = this.clusterAggregateLayer.isActive(this.renderer);
+		
+		if(aggregated)
+			this.clusterAggregateLayer.draw(this.world, this.renderer, this.g);
+		
+		this.rasterEntityLayer.draw(this.world, this.renderer, this.g, !aggregated);
+		return this.image;
+	}
+}
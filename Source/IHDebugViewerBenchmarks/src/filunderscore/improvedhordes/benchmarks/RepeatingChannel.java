@@ -0,0 +1,50 @@
+package filunderscore.improvedhordes.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Channel that endlessly serves the same frame, so decoding runs through the same buffered path as a socket without any I/O.
+ */
+final class RepeatingChannel implements ReadableByteChannel
+{
+	private final ByteBuffer frame;
+	
+	RepeatingChannel(ByteBuffer frame)
+	{
+		this.frame = ByteBuffer.allocateDirect(frame.remaining()).put(frame.duplicate()).flip();
+	}
+	
+	@Override
+	public int read(ByteBuffer destination)
+	{
+		int read = 0;
+		
+		while(destination.hasRemaining())
+		{
+			if(!this.frame.hasRemaining())
+				this.frame.rewind();
+			
+			int length = Math.min(destination.remaining(), this.frame.remaining());
+			
+			destination.put(destination.position(), this.frame, this.frame.position(), length);
+			destination.position(destination.position() + length);
+			this.frame.position(this.frame.position() + length);
+			
+			read += length;
+		}
+		
+		return read;
+	}
+	
+	@Override
+	public boolean isOpen()
+	{
+		return true;
+	}
+	
+	@Override
+	public void close()
+	{
+	}
+}
@@ -0,0 +1,68 @@
+package filunderscore.improvedhordes.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import filunderscore.improvedhordes.gui.IHRenderer;
+import filunderscore.improvedhordes.util.Vector2i;
+import filunderscore.improvedhordes.world.WorldHordeState;
+
+/**
+ * World to screen transforms of every cluster, one coordinate at a time and through the bulk column transform.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformBenchmark
+{
+	@Param({ "1000", "50000" })
+	public int clusters;
+	
+	private WorldHordeState world;
+	private IHRenderer renderer;
+	private int[] screenX, screenY;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		this.world = BenchmarkWorlds.decode(6144, 0, this.clusters, 0);
+		this.renderer = new IHRenderer();
+		this.renderer.setSizes(this.world.GetWorldSize(), new Vector2i(1000, 1000));
+		
+		this.screenX = new int[this.clusters];
+		this.screenY = new int[this.clusters];
+	}
+	
+	@Benchmark
+	public void scalar(Blackhole blackhole)
+	{
+		for(int i = 0; i < this.world.getClusterCount(); i++)
+		{
+			blackhole.consume(this.renderer.toScreenX(this.world.getClusterX(i)));
+			blackhole.consume(this.renderer.toScreenY(this.world.getClusterZ(i)));
+		}
+	}
+	
+	@Benchmark
+	public int[] bulk()
+	{
+		this.renderer.transform(this.world.getClusterXs(), this.world.getClusterZs(), this.world.getClusterCount(), this.screenX, this.screenY);
+		return this.screenX;
+	}
+}
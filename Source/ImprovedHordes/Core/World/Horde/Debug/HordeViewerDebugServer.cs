@@ -36,12 +36,17 @@ namespace ImprovedHordes.Core.World.Horde.Debug
 
             if (this.playerGroups.TryGet(out var playerGroups))
             {
+                // The viewer reads a single player count, so it is the total over every group rather than one per group.
+                int playerCount = 0;
                 foreach (var playerGroup in playerGroups)
                 {
-                    var players = playerGroup.GetPlayers();
+                    playerCount += playerGroup.GetPlayers().Count;
+                }
 
-                    writer.Write(players.Count);
-                    foreach (var player in players)
+                writer.Write(playerCount);
+                foreach (var playerGroup in playerGroups)
+                {
+                    foreach (var player in playerGroup.GetPlayers())
                     {
                         Vector3 location = player.location;
 
@@ -108,8 +113,11 @@ namespace ImprovedHordes.Core.World.Horde.Debug
 
             if (valid)
             {
-                writer.Write(str.Length);
-                writer.Write(Encoding.UTF8.GetBytes(str));
+                // The viewer reads the byte length, which differs from the character count for anything outside ASCII.
+                byte[] bytes = Encoding.UTF8.GetBytes(str);
+
+                writer.Write(bytes.Length);
+                writer.Write(bytes);
             }
         }
     }